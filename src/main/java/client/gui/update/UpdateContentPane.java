@@ -136,8 +136,10 @@ class UpdateContentPane extends JTabbedPane {
 				return;
 			}
 
-			String params = "?s=" + startDate.getTimeInMillis() + "&e=" + endDate.getTimeInMillis();
-			updateDialog.updateRequest(RequestType.retrieve_range, params);
+			// the graph can't show more records than the screen has pixels in width
+			String params = "?s=" + startDate.getTimeInMillis() + "&e=" + endDate.getTimeInMillis() +
+				"&n=" + Toolkit.getDefaultToolkit().getScreenSize().width;
+			updateDialog.updateRequest(RequestType.retrieve_downsampled, params);
 		});
 		bagLayout.setConstraints(requestButton, constraints);
 		requestRangeTab.add(requestButton);
@@ -31,6 +31,23 @@ public class DefaultSettings {
 	public final static int PORT = 53333;
 	public final static String OUTPUT_DESTINATION = System.getProperty("user.home") + File.separator + "flood";
 	public final static int MAX_THREADS = 8;
+	public final static String STORAGE = "text";
+	public final static String SERVER_MODE = "pool";
+	public final static int MAX_CONNECTIONS = 1024;
+	public final static int KEEP_ALIVE_TIMEOUT = 5000; // 5 seconds
+	public final static int KEEP_ALIVE_REQUESTS = 100;
+	public final static long RESPONSE_CACHE_SIZE = 4L * 1024 * 1024; // 4 MiB
+	public final static long FILE_CACHE_SIZE = 32L * 1024 * 1024; // 32 MiB
+	public final static String STATIC_ROOT = null;
+	public final static int PARALLEL_STREAMS = 1;
+	public final static String UPLOAD_URI = null;
+	public final static long UPLOAD_SIZE = 16L * 1024 * 1024; // 16 MiB
+	public final static String LATENCY_URI = null;
+	public final static int LATENCY_PROBES = 20;
+	public final static String TARGETS = null;
+	public final static String MIN_IDLE_TIME = null;
+	public final static String MAX_IDLE_TIME = null;
+	public final static String DATA_BUDGET = null;
 	public final static String PROXY_PROTOCOL = null;
 	public final static String PROXY_URL = null;
 	public final static String PROXY_PORT = null;
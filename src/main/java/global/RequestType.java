@@ -38,5 +38,73 @@ public enum RequestType {
 	 * The example of a request to retrieve all the records from Jan 1st 1970 00:00:00 to Jan 1st 1970 00:01:00<br>
 	 * {@code /retrieve_range?s=0&e=60000}
 	 */
-	retrieve_range
+	retrieve_range,
+
+	/**
+	 * retrieve_latency_last is used to get the round-trip time records of the latency test for the last several of time
+	 * units.<br>
+	 * The parameters are the same as for {@link RequestType#retrieve_last}. The values of the records are in
+	 * microseconds, and their additional information tells the metric: latency_min, latency_avg, latency_p50,
+	 * latency_p99, or latency_jitter.<br>
+	 * The example of a request to retrieve the round-trip times for the last 24 hours:<br>
+	 * {@code /retrieve_latency_last?u=10&t=24}
+	 */
+	retrieve_latency_last,
+
+	/**
+	 * retrieve_latency_range is used to request the round-trip time records of the latency test for the specified
+	 * period of time<br>
+	 * The parameters are the same as for {@link RequestType#retrieve_range}, and the records are the same as for
+	 * {@link RequestType#retrieve_latency_last}.<br>
+	 * The example of a request to retrieve the round-trip times from Jan 1st 1970 00:00:00 to Jan 1st 1970 00:01:00<br>
+	 * {@code /retrieve_latency_range?s=0&e=60000}
+	 */
+	retrieve_latency_range,
+
+	/**
+	 * retrieve_rollup is used to request the records for the specified period of time aggregated into buckets of
+	 * a fixed length<br>
+	 * "s" and "e" parameters are the same as for {@link RequestType#retrieve_range}, and the period is extended to
+	 * the whole buckets it overlaps<br>
+	 * "r" parameter specifies the length of the buckets and is represented via the constants of
+	 * {@link java.util.Calendar}: MINUTE, HOUR or HOUR_OF_DAY, and DATE or DAY_OF_YEAR; the buckets are aligned to
+	 * Jan 1st 1970 UTC<br>
+	 * Every bucket aggregates the records with the same additional information and is a 7-length string array, which
+	 * starts as a record does: the beginning of the bucket in milliseconds since Jan 1st 1970, the average speed in bits
+	 * per second, and the additional information, followed by the amount of the aggregated records, the minimum,
+	 * the maximum, and the last speed in bits per second.<br>
+	 * The example of a request to retrieve the hourly aggregates from Jan 1st 1970 00:00:00 to Jan 2nd 1970 00:00:00<br>
+	 * {@code /retrieve_rollup?s=0&e=86400000&r=10}
+	 */
+	retrieve_rollup,
+
+	/**
+	 * retrieve_downsampled is used to request at most a given amount of records for the specified period of time<br>
+	 * "s" and "e" parameters are the same as for {@link RequestType#retrieve_range}<br>
+	 * "n" parameter specifies the maximum amount of records, which must be a natural number, e.g. the width of the graph
+	 * in pixels<br>
+	 * The records are the same as for {@link RequestType#retrieve_range}, but the server keeps only the ones shaping
+	 * the graph, chosen by the Largest-Triangle-Three-Buckets algorithm for every additional information separately.<br>
+	 * The example of a request to retrieve at most 1000 records from Jan 1st 1970 00:00:00 to Jan 1st 1971 00:00:00<br>
+	 * {@code /retrieve_downsampled?s=0&e=31536000000&n=1000}
+	 */
+	retrieve_downsampled,
+
+	/**
+	 * retrieve_upload_last is used to get the upload speed records for the last several of time units.<br>
+	 * The parameters are the same as for {@link RequestType#retrieve_last}. The additional information of the records
+	 * is upload_speed, and the other requests don't return them.<br>
+	 * The example of a request to retrieve the upload speeds for the last 24 hours:<br>
+	 * {@code /retrieve_upload_last?u=10&t=24}
+	 */
+	retrieve_upload_last,
+
+	/**
+	 * retrieve_upload_range is used to request the upload speed records for the specified period of time<br>
+	 * The parameters are the same as for {@link RequestType#retrieve_range}, and the records are the same as for
+	 * {@link RequestType#retrieve_upload_last}.<br>
+	 * The example of a request to retrieve the upload speeds from Jan 1st 1970 00:00:00 to Jan 1st 1970 00:01:00<br>
+	 * {@code /retrieve_upload_range?s=0&e=60000}
+	 */
+	retrieve_upload_range
 }
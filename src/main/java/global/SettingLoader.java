@@ -22,20 +22,23 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.nio.CharBuffer;
-import java.util.Arrays;
-import java.util.NoSuchElementException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Pattern;
 
 /**
  * SettingLoader is a class to extract Flood properties.
  * First, it reads the configuration in the user's home directory.
  * If the property isn't found in there, it uses the default property in {@link DefaultSettings}.
+ * The configuration is parsed once into an immutable snapshot, which is replaced when the configuration file changes,
+ * so reading a property doesn't touch the file system. The file is checked for changes at most once per second.
  */
 public class SettingLoader {
 	/**
-	 * PROTOCOL contains an internet protocol to test internet bandwidth
+	 * PROTOCOL contains an internet protocol to test internet bandwidth.
+	 * Supported protocols: http, http_upload, latency.
 	 */
 	public final static String PROTOCOL = "PROTOCOL";
 	/**
@@ -64,6 +67,105 @@ public class SettingLoader {
 	 */
 	public final static String MAX_THREADS = "MAX_THREADS";
 
+	/**
+	 * STORAGE contains the format of the bandwidth records storage.
+	 * Supported formats: text, indexed, segmented, binary.
+	 */
+	public final static String STORAGE = "STORAGE";
+
+	/**
+	 * SERVER_MODE contains the way the web server handles the connections.
+	 * Supported modes: pool, selector, virtual.
+	 */
+	public final static String SERVER_MODE = "SERVER_MODE";
+
+	/**
+	 * MAX_CONNECTIONS contains a maximum number of connections processed at the same time in virtual mode
+	 */
+	public final static String MAX_CONNECTIONS = "MAX_CONNECTIONS";
+
+	/**
+	 * KEEP_ALIVE_TIMEOUT contains the time in milliseconds after which an idle persistent connection is closed
+	 */
+	public final static String KEEP_ALIVE_TIMEOUT = "KEEP_ALIVE_TIMEOUT";
+
+	/**
+	 * KEEP_ALIVE_REQUESTS contains a maximum number of requests served through a single connection
+	 */
+	public final static String KEEP_ALIVE_REQUESTS = "KEEP_ALIVE_REQUESTS";
+
+	/**
+	 * RESPONSE_CACHE_SIZE contains a maximum total size of the cached responses of the web server in bytes
+	 */
+	public final static String RESPONSE_CACHE_SIZE = "RESPONSE_CACHE_SIZE";
+
+	/**
+	 * FILE_CACHE_SIZE contains a maximum total size of the files cached by the web server in bytes
+	 */
+	public final static String FILE_CACHE_SIZE = "FILE_CACHE_SIZE";
+
+	/**
+	 * STATIC_ROOT contains the directory which files are served by the web server along with the records.
+	 * The files aren't served if it's not specified.
+	 */
+	public final static String STATIC_ROOT = "STATIC_ROOT";
+
+	/**
+	 * PARALLEL_STREAMS contains the number of connections the download test uses at the same time
+	 */
+	public final static String PARALLEL_STREAMS = "PARALLEL_STREAMS";
+
+	/**
+	 * UPLOAD_URI contains http uri of the endpoint accepting the uploaded data.
+	 * It's required by the upload test, since the file of {@link SettingLoader#HTTP_URI} doesn't accept the data.
+	 */
+	public final static String UPLOAD_URI = "UPLOAD_URI";
+
+	/**
+	 * UPLOAD_SIZE contains the amount of bytes sent by a single upload test
+	 */
+	public final static String UPLOAD_SIZE = "UPLOAD_SIZE";
+
+	/**
+	 * LATENCY_URI contains uri of the host which round-trip time is measured, only its host and port are used.
+	 * {@link SettingLoader#HTTP_URI} is used if it's not specified.
+	 */
+	public final static String LATENCY_URI = "LATENCY_URI";
+
+	/**
+	 * LATENCY_PROBES contains the amount of round trips in a single latency test
+	 */
+	public final static String LATENCY_PROBES = "LATENCY_PROBES";
+
+	/**
+	 * TARGETS contains the tests run by the multi-target scheduler, separated by semicolons.
+	 * Each test is a protocol of {@link SettingLoader#PROTOCOL}, the pause between its runs in milliseconds, and
+	 * the uri of its remote endpoint, separated by commas; the pause and the uri may be empty to use
+	 * {@link SettingLoader#IDLE_TIME} and the default uri of the protocol, e.g.
+	 * {@code http,3600000,https://example.com/file;latency,60000,}.
+	 * The only test is the one of {@link SettingLoader#PROTOCOL} if it's not specified.
+	 */
+	public final static String TARGETS = "TARGETS";
+
+	/**
+	 * MIN_IDLE_TIME contains the minimum time in milliseconds to wait before starting a next bandwidth test.
+	 * If it or {@link SettingLoader#MAX_IDLE_TIME} is specified, the waiting time adapts to the results of the tests
+	 * within these bounds, starting from {@link SettingLoader#IDLE_TIME}, which is used for the missing bound.
+	 */
+	public final static String MIN_IDLE_TIME = "MIN_IDLE_TIME";
+
+	/**
+	 * MAX_IDLE_TIME contains the maximum time in milliseconds to wait before starting a next bandwidth test.
+	 * See {@link SettingLoader#MIN_IDLE_TIME}.
+	 */
+	public final static String MAX_IDLE_TIME = "MAX_IDLE_TIME";
+
+	/**
+	 * DATA_BUDGET contains a maximum amount of bytes the bandwidth tests may transfer per day.
+	 * The amount isn't limited if it's not specified.
+	 */
+	public final static String DATA_BUDGET = "DATA_BUDGET";
+
 	/**
 	 * PROXY_PROTOCOL contains the type of proxy protocol to use to access Flood Backend.
 	 * Supported protocols: SOCKS, HTTP.
@@ -81,14 +183,29 @@ public class SettingLoader {
 	 */
 	public final static String PROXY_PORT = "PROXY_PORT";
 
+	private final static long CHECK_INTERVAL = 1_000_000_000; // 1 second
+	private final static Map<String, String> defaults = loadDefaults();
+	private static volatile Snapshot snapshot = null;
 	private static String configPath = System.getProperty("user.home") + File.separator + ".flood_settings";
 	private SettingLoader() {}
 
+	/**
+	 * Snapshot is the parsed configuration along with the state of the configuration file it was parsed from.
+	 * @param path path to the configuration file
+	 * @param lastModified time of the last modification of the file in milliseconds, or -1 if the file doesn't exist
+	 * @param size size of the file in bytes, or -1 if the file doesn't exist
+	 * @param checked time of the last check of the file in nanoseconds
+	 * @param values properties by their upper case names, defaults included
+	 */
+	private record Snapshot(String path, long lastModified, long size, long checked, Map<String, String> values) {}
+
 	/**
 	 * Parameter contains the available parameters for {@link SettingLoader#getValue(Parameter)}.
 	 */
 	public enum Parameter {
-		PROTOCOL, HTTP_URI, LOG_LIMIT, IDLE_TIME, PORT, OUTPUT_DESTINATION, MAX_THREADS
+		PROTOCOL, HTTP_URI, LOG_LIMIT, IDLE_TIME, PORT, OUTPUT_DESTINATION, MAX_THREADS, STORAGE, SERVER_MODE,
+		MAX_CONNECTIONS, KEEP_ALIVE_TIMEOUT, KEEP_ALIVE_REQUESTS, RESPONSE_CACHE_SIZE,
+		FILE_CACHE_SIZE, PARALLEL_STREAMS, UPLOAD_SIZE, LATENCY_PROBES
 	}
 
 	/**
@@ -100,27 +217,7 @@ public class SettingLoader {
 	public static Optional<String> getValue(String par) {
 		assert par != null;
 
-		CharBuffer buffer = CharBuffer.allocate(8 * 1024);
-		try (BufferedReader br = new BufferedReader(new FileReader(configPath))) {
-		    br.read(buffer);
-			buffer.flip();
-		} catch (IOException ignored) {}
-		String settingConfig = buffer.toString();
-		Optional<String> configLine = settingConfig
-			.lines()
-			.filter(line -> Pattern.compile("(?i)^" + par + "[ \t]").matcher(line).find())
-			.findFirst();
-		if (configLine.isPresent())
-			return Optional.of(configLine.get().split("[ \t]+")[1]);
-
-		Field[] fields = DefaultSettings.class.getFields();
-		Optional<Field> field =
-			Arrays.stream(fields).filter(f -> f.getName().compareToIgnoreCase(par) == 0).findFirst();
-		try {
-			return Optional.of(field.get().get(null).toString());
-		} catch (NoSuchElementException | IllegalAccessException | NullPointerException exception) {
-			return Optional.empty();
-		}
+		return Optional.ofNullable(getSnapshot().values().get(par.toUpperCase(Locale.ROOT)));
 	}
 
 	/**
@@ -134,4 +231,65 @@ public class SettingLoader {
 
 		return getValue(par.toString()).get();
 	}
+
+	/**
+	 * Returns the current snapshot of the configuration.
+	 * The configuration is parsed again if the path to the file has been changed or, at most once per
+	 * {@link SettingLoader#CHECK_INTERVAL}, if the modification time or the size of the file has been changed.
+	 */
+	private static Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		String path = configPath;
+		long now = System.nanoTime();
+		if (current != null && current.path().equals(path) && now - current.checked() < CHECK_INTERVAL) return current;
+
+		synchronized (SettingLoader.class) {
+			current = snapshot;
+			if (current != null && current.path().equals(path) && now - current.checked() < CHECK_INTERVAL) {
+				return current;
+			}
+			File file = new File(path);
+			long lastModified = file.isFile() ? file.lastModified() : -1;
+			long size = file.isFile() ? file.length() : -1;
+			if (
+				current != null && current.path().equals(path) &&
+				current.lastModified() == lastModified && current.size() == size
+			) {
+				snapshot = new Snapshot(path, lastModified, size, now, current.values());
+			} else {
+				snapshot = new Snapshot(path, lastModified, size, now, load(file));
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Parses the configuration file on top of the default properties.
+	 * Each line of the file is a property name followed by spaces or tabs and the value; the first occurrence of
+	 * a property wins.
+	 */
+	private static Map<String, String> load(File file) {
+		Map<String, String> values = new HashMap<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] tokens = line.split("[ \t]+");
+				if (tokens.length < 2 || tokens[0].isEmpty()) continue;
+				values.putIfAbsent(tokens[0].toUpperCase(Locale.ROOT), tokens[1]);
+			}
+		} catch (IOException ignored) {}
+		defaults.forEach(values::putIfAbsent);
+		return Collections.unmodifiableMap(values);
+	}
+
+	private static Map<String, String> loadDefaults() {
+		Map<String, String> defaults = new HashMap<>();
+		for (Field field: DefaultSettings.class.getFields()) {
+			try {
+				Object value = field.get(null);
+				if (value != null) defaults.put(field.getName().toUpperCase(Locale.ROOT), value.toString());
+			} catch (IllegalAccessException ignored) {}
+		}
+		return defaults;
+	}
 }
\ No newline at end of file
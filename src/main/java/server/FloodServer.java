@@ -1,14 +1,58 @@
 package server;
 
+import global.SettingLoader;
 import server.backend.FloodWebServer;
-import server.bandwidth.DefaultFloodScheduler;
+import server.backend.SelectorWebServer;
+import server.backend.WebServer;
+import server.bandwidth.BandwidthStatus;
+import server.bandwidth.BinaryBandwidthStatus;
+import server.bandwidth.DefaultBandwidthStatus;
+import server.bandwidth.IndexedBandwidthStatus;
+import server.bandwidth.MultiTargetFloodScheduler;
+import server.bandwidth.ObservableBandwidthStatus;
+import server.bandwidth.RingBufferBandwidthStatus;
+import server.bandwidth.RollupBandwidthStatus;
+import server.bandwidth.SegmentedBandwidthStatus;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 public class FloodServer {
-	public static void main(String[] args) {
-		DefaultFloodScheduler defaultFloodScheduler = new DefaultFloodScheduler();
-		defaultFloodScheduler.execute();
-		FloodWebServer floodWebServer = new FloodWebServer();
-		floodWebServer.start();
-		while (true);
+	private final static long READY_TIMEOUT = 10_000;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		BandwidthStatus storage = switch (SettingLoader.getValue(SettingLoader.Parameter.STORAGE)) {
+			case "indexed" -> new IndexedBandwidthStatus();
+			case "segmented" -> new SegmentedBandwidthStatus();
+			case "binary" -> new BinaryBandwidthStatus();
+			default -> new DefaultBandwidthStatus();
+		};
+		RingBufferBandwidthStatus memoryTier = new RingBufferBandwidthStatus(storage);
+		memoryTier.warmUp();
+		RollupBandwidthStatus rollupTiers = new RollupBandwidthStatus(memoryTier);
+		rollupTiers.warmUp();
+		ObservableBandwidthStatus bandwidthStatus = new ObservableBandwidthStatus(rollupTiers);
+		MultiTargetFloodScheduler floodScheduler = new MultiTargetFloodScheduler();
+		floodScheduler.setBandwidthStatus(bandwidthStatus);
+		floodScheduler.execute();
+		WebServer webServer = switch (SettingLoader.getValue(SettingLoader.Parameter.SERVER_MODE)) {
+			case "selector" -> new SelectorWebServer();
+			case "virtual" -> new FloodWebServer(true);
+			default -> new FloodWebServer();
+		};
+		webServer.setBandwidthStatus(bandwidthStatus);
+
+		CountDownLatch shutdown = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			floodScheduler.stopExecution();
+			webServer.interrupt();
+			try {
+				bandwidthStatus.flush();
+			} catch (IOException ignored) {}
+			shutdown.countDown();
+		}));
+		webServer.start();
+		if (!webServer.awaitReady(READY_TIMEOUT)) System.exit(1);
+		shutdown.await();
 	}
 }
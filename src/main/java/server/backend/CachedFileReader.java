@@ -17,83 +17,258 @@
 
 package server.backend;
 
+import global.SettingLoader;
+
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.nio.file.attribute.FileTime;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * CachedFileReader keeps the contents of the recently read files in memory.
+ * The cache is shared by all the threads through {@link CachedFileReader#getCachedFileReader()}. The contents are
+ * handed out as read-only {@link ByteBuffer} views of the cached data, so nothing is copied on a hit; the files bigger
+ * than {@link CachedFileReader#MAPPING_THRESHOLD} are mapped to memory instead of being read.
+ * The total size of the cached files is limited by {@link SettingLoader#FILE_CACHE_SIZE}; the least recently used
+ * files are evicted first, and the files that don't fit at all are returned without being cached.
+ * The directories of the cached files are watched through a {@link WatchService}, so a modified, created or deleted file
+ * is dropped from the cache once the change has been reported, without checking the file on every read.
+ * Depending on the platform, the changes may be reported with a delay.
+ */
 public class CachedFileReader {
-	private final CachedFileReader instance = new CachedFileReader();
-	private final HashMap<String, FileInfo> files = new HashMap<>();
+	/**
+	 * MAPPING_THRESHOLD is the size of a file in bytes starting from which the file is mapped to memory
+	 */
+	public final static long MAPPING_THRESHOLD = 1024 * 1024;
+	private final static long ENTRY_OVERHEAD = 128;
+	private final static CachedFileReader instance =
+		new CachedFileReader(Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.FILE_CACHE_SIZE)));
+
+	private final long capacity;
+	private final ConcurrentHashMap<Path, CachedFile> files = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Path, WatchKey> directories = new ConcurrentHashMap<>();
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong generation = new AtomicLong();
+	private final WatchService watchService;
 
-	private CachedFileReader() {}
+	/**
+	 * CachedFile is the cached content of a file along with its metadata.
+	 */
+	public static class CachedFile {
+		private final ByteBuffer content;
+		private final FileTime lastModified;
+		private volatile long lastAccess;
+
+		private CachedFile(ByteBuffer content, FileTime lastModified) {
+			assert content != null && lastModified != null;
+
+			this.content = content;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Returns a read-only view of the content of the file, which position is 0 and limit is the size of the file.
+		 * @return content of the file
+		 */
+		public ByteBuffer getContent() {
+			return content.asReadOnlyBuffer();
+		}
+
+		/**
+		 * Returns the time of the last modification of the file at the moment it was read.
+		 * @return time of the last modification
+		 */
+		public FileTime getLastModified() {
+			return lastModified;
+		}
 
-	public CachedFileReader getCachedFileReader() {
+		/**
+		 * Returns the size of the file at the moment it was read.
+		 * @return size of the file in bytes
+		 */
+		public int getSize() {
+			return content.limit();
+		}
+	}
+
+	CachedFileReader(long capacity) {
+		assert capacity >= 0;
+
+		this.capacity = capacity;
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException exception) {
+			watchService = null;
+		}
+		this.watchService = watchService;
+		if (watchService != null) {
+			Thread watcher = new Thread(this::watch, "CachedFileReader watcher");
+			watcher.setDaemon(true);
+			watcher.start();
+		}
+	}
+
+	/**
+	 * Returns the shared instance of CachedFileReader.
+	 * @return instance of CachedFileReader
+	 */
+	public static CachedFileReader getCachedFileReader() {
 		return instance;
 	}
 
-	public byte[] read(String fileName) throws IOException {
-		assert fileName != null;
+	/**
+	 * Returns the file, reading it if it isn't cached.
+	 * @param path path to the file
+	 * @return cached file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public CachedFile get(Path path) throws IOException {
+		assert path != null;
 
-		if (files.containsKey(fileName)) {
-			if (files.get(fileName).getFileTime().equals(Files.getLastModifiedTime(Path.of(fileName)))) {
-				return files.get(fileName).getContent().clone();
-			}
-			FileInfo fi = getFileInfo(fileName);
-			files.replace(fileName, fi);
-			return fi.getContent().clone();
+		path = path.toAbsolutePath().normalize();
+		CachedFile file = files.get(path);
+		if (file == null) {
+			file = load(path);
 		}
+		file.lastAccess = clock.incrementAndGet();
+		return file;
+	}
 
-		FileInfo fi = getFileInfo(fileName);
-		files.put(fileName, fi);
-		return fi.getContent().clone();
+	/**
+	 * Returns a read-only view of the content of the file.
+	 * @param path path to the file
+	 * @return content of the file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public ByteBuffer read(Path path) throws IOException {
+		return get(path).getContent();
 	}
 
-	public byte[] read(Path path) throws IOException {
-		return read(path.toString());
+	public ByteBuffer read(String fileName) throws IOException {
+		assert fileName != null;
+
+		return read(Path.of(fileName));
 	}
 
-	public byte[] read(File file) throws IOException {
-		return read(file.getAbsolutePath());
+	public ByteBuffer read(File file) throws IOException {
+		assert file != null;
+
+		return read(file.toPath());
 	}
 
-	private FileInfo getFileInfo(String fileName) throws IOException {
-		try(FileInputStream fis = new FileInputStream(fileName)) {
-			byte[] content = fis.readAllBytes();
-			FileTime ft = Files.getLastModifiedTime(Path.of(fileName));
-			return new FileInfo(content, ft);
-		}
+	/**
+	 * Returns the total size of the cached files in bytes.
+	 * @return size in bytes
+	 */
+	long size() {
+		return size.get();
 	}
 
-	private static class FileInfo {
-		private FileTime fileTime;
-		private byte[] content;
+	private CachedFile load(Path path) throws IOException {
+		long generation = this.generation.get();
+		boolean watched = watch(path.getParent());
 
-		public FileInfo(byte[] content, FileTime fileTime) {
-			assert content != null && fileTime != null;
-			this.content = content;
-			this.fileTime = fileTime;
+		CachedFile file;
+		try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+			FileTime lastModified = Files.getLastModifiedTime(path);
+			long fileSize = fc.size();
+			if (fileSize > Integer.MAX_VALUE) throw new IOException("The file is too big: " + path);
+			if (fileSize >= MAPPING_THRESHOLD) {
+				file = new CachedFile(fc.map(FileChannel.MapMode.READ_ONLY, 0, fileSize), lastModified);
+			} else {
+				ByteBuffer content = ByteBuffer.allocate((int) fileSize);
+				while (content.hasRemaining() && fc.read(content) != -1);
+				file = new CachedFile(content.flip(), lastModified);
+			}
 		}
 
-		public FileTime getFileTime() {
-			return fileTime;
+		long cost = file.getSize() + ENTRY_OVERHEAD;
+		if (!watched || cost > capacity) return file;
+		file.lastAccess = clock.incrementAndGet();
+		CachedFile previous = files.put(path, file);
+		if (previous != null) size.addAndGet(-(previous.getSize() + ENTRY_OVERHEAD));
+		size.addAndGet(cost);
+		if (generation != this.generation.get()) invalidate(path);
+		evict();
+		return file;
+	}
+
+	private synchronized void evict() {
+		while (size.get() > capacity) {
+			Map.Entry<Path, CachedFile> leastRecentlyUsed = null;
+			for (Map.Entry<Path, CachedFile> entry: files.entrySet()) {
+				if (leastRecentlyUsed == null || entry.getValue().lastAccess < leastRecentlyUsed.getValue().lastAccess) {
+					leastRecentlyUsed = entry;
+				}
+			}
+			if (leastRecentlyUsed == null) return;
+			remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue());
 		}
+	}
+
+	private void remove(Path path, CachedFile file) {
+		if (files.remove(path, file)) size.addAndGet(-(file.getSize() + ENTRY_OVERHEAD));
+	}
+
+	private void invalidate(Path path) {
+		generation.incrementAndGet();
+		CachedFile file = files.get(path);
+		if (file != null) remove(path, file);
+	}
 
-		public byte[] getContent() {
-			return content;
+	private void invalidateDirectory(Path directory) {
+		generation.incrementAndGet();
+		for (Map.Entry<Path, CachedFile> entry: files.entrySet()) {
+			if (directory.equals(entry.getKey().getParent())) remove(entry.getKey(), entry.getValue());
 		}
+	}
+
+	/**
+	 * Starts watching the directory unless it's watched already.
+	 * @return true if the directory is watched, false otherwise
+	 */
+	private boolean watch(Path directory) {
+		if (watchService == null || directory == null) return false;
 
-		@Override
-		public boolean equals(Object o) {
-			if (o instanceof FileInfo) {
-				return fileTime.equals(((FileInfo) o).fileTime) && Arrays.equals(content, ((FileInfo) o).content);
+		WatchKey key = directories.computeIfAbsent(directory, d -> {
+			try {
+				return d.register(
+					watchService,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY
+				);
+			} catch (IOException | ClosedWatchServiceException exception) {
+				return null;
 			}
+		});
+		return key != null && key.isValid();
+	}
 
-			return false;
-		}
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				Path directory = (Path) key.watchable();
+				for (WatchEvent<?> event: key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						invalidateDirectory(directory);
+					} else {
+						invalidate(directory.resolve((Path) event.context()));
+					}
+				}
+				if (!key.reset()) {
+					directories.remove(directory, key);
+					invalidateDirectory(directory);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException ignored) {}
 	}
 }
@@ -23,6 +23,12 @@ public class DefaultHTTPResponses {
 			HTTP/1.1 400 Bad Request
 			Content-Length: 0
 			
+			""";
+	public static final String _404 =
+		"""
+			HTTP/1.1 404 Not Found
+			Content-Length: 0
+			
 			""";
 	public static final String _500 =
 		"""
@@ -0,0 +1,147 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.backend;
+
+import server.bandwidth.BandwidthRecords;
+
+/**
+ * Downsampler reduces {@link BandwidthRecords} to a given amount of records using the Largest-Triangle-Three-Buckets
+ * algorithm, which keeps the records that shape the graph: the peaks and the drops survive, unlike with averaging.
+ * The records with different additional information are separate series, and the amount of records is split between
+ * the series in proportion to their sizes. Every series keeps its first and last records, and each of its other
+ * buckets keeps the record forming the largest triangle with the record kept from the previous bucket and the average
+ * of the next bucket. The kept records are returned unchanged and in their original order.
+ */
+class Downsampler {
+	private Downsampler() {}
+
+	/**
+	 * Reduces the records.
+	 * @param records records in chronological order
+	 * @param points maximum amount of records to keep
+	 * @return kept records, or the same instance if there are no more records than points
+	 */
+	static BandwidthRecords downsample(BandwidthRecords records, int points) {
+		assert records != null && points > 0;
+
+		int size = records.size();
+		if (size <= points) return records;
+
+		int series = records.getDictionarySize();
+		int[] counts = new int[series];
+		for (int i = 0; i < size; i++) counts[records.getInfoId(i)]++;
+		int[][] indexes = new int[series][];
+		for (int s = 0; s < series; s++) indexes[s] = new int[counts[s]];
+		int[] filled = new int[series];
+		for (int i = 0; i < size; i++) {
+			int s = records.getInfoId(i);
+			indexes[s][filled[s]++] = i;
+		}
+
+		boolean[] kept = new boolean[size];
+		int[] quotas = quotas(counts, size, points);
+		for (int s = 0; s < series; s++) {
+			if (counts[s] > 0) select(records, indexes[s], quotas[s], kept);
+		}
+
+		BandwidthRecords downsampled = new BandwidthRecords(points);
+		for (int i = 0; i < size; i++) {
+			if (kept[i]) downsampled.add(records.getTime(i), records.getSpeed(i), records.getInfo(i));
+		}
+		return downsampled;
+	}
+
+	/**
+	 * Splits the points between the series in proportion to their sizes by the largest remainder method.
+	 */
+	private static int[] quotas(int[] counts, int size, int points) {
+		int[] quotas = new int[counts.length];
+		long[] remainders = new long[counts.length];
+		int assigned = 0;
+		for (int s = 0; s < counts.length; s++) {
+			long share = (long) counts[s] * points;
+			quotas[s] = (int) (share / size);
+			remainders[s] = share % size;
+			assigned += quotas[s];
+		}
+		for (; assigned < points; assigned++) {
+			int largest = 0;
+			for (int s = 1; s < counts.length; s++) {
+				if (remainders[s] > remainders[largest]) largest = s;
+			}
+			quotas[largest]++;
+			remainders[largest] = -1;
+		}
+		return quotas;
+	}
+
+	/**
+	 * Marks the records of the series kept by the Largest-Triangle-Three-Buckets algorithm.
+	 * @param records all the records
+	 * @param series indexes of the records of the series in chronological order
+	 * @param points amount of records of the series to keep
+	 * @param kept marks of the kept records
+	 */
+	private static void select(BandwidthRecords records, int[] series, int points, boolean[] kept) {
+		int size = series.length;
+		if (points >= size) {
+			for (int index: series) kept[index] = true;
+			return;
+		}
+		if (points == 0) return;
+		kept[series[0]] = true;
+		if (points == 1) return;
+		kept[series[size - 1]] = true;
+
+		// the times are taken relative to the first record, so they keep their precision as doubles
+		long origin = records.getTime(series[0]);
+		double every = (double) (size - 2) / (points - 2);
+		int previous = 0;
+		for (int bucket = 0; bucket < points - 2; bucket++) {
+			int nextStart = (int) ((bucket + 1) * every) + 1;
+			int nextEnd = Math.min((int) ((bucket + 2) * every) + 1, size);
+			double averageX = 0;
+			double averageY = 0;
+			for (int i = nextStart; i < nextEnd; i++) {
+				averageX += records.getTime(series[i]) - origin;
+				averageY += records.getSpeed(series[i]);
+			}
+			averageX /= nextEnd - nextStart;
+			averageY /= nextEnd - nextStart;
+
+			double previousX = records.getTime(series[previous]) - origin;
+			double previousY = records.getSpeed(series[previous]);
+			int start = (int) (bucket * every) + 1;
+			int end = nextStart;
+			double largestArea = -1;
+			int largest = start;
+			for (int i = start; i < end; i++) {
+				double area = Math.abs(
+					(previousX - averageX) * (records.getSpeed(series[i]) - previousY) -
+					(previousX - (records.getTime(series[i]) - origin)) * (averageY - previousY)
+				);
+				if (area > largestArea) {
+					largestArea = area;
+					largest = i;
+				}
+			}
+			kept[series[largest]] = true;
+			previous = largest;
+		}
+	}
+}
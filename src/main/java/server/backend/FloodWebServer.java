@@ -20,57 +20,137 @@ package server.backend;
 import global.SettingLoader;
 import server.bandwidth.BandwidthStatus;
 import server.bandwidth.DefaultBandwidthStatus;
+import server.bandwidth.ObservableBandwidthStatus;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /**
  * FloodWebServer is a default implementation of {@link WebServer} interface.
  * FloodWebServer utilizes multi-threading and performs connection listening and packet processing and sending in separate threads.
- * The maximum number of available threads is acquired through {@link SettingLoader#MAX_THREADS}.
+ * By default, the connections are processed by a fixed thread pool, which size is acquired through
+ * {@link SettingLoader#MAX_THREADS}.
+ * Alternatively, every connection can be processed by its own virtual thread, then the number of connections processed
+ * at the same time is limited by {@link SettingLoader#MAX_CONNECTIONS} instead, and the listening thread stops accepting
+ * new connections until a slot becomes available.
+ * The connections are persistent, the idle timeout and the amount of requests per connection are acquired through
+ * {@link SettingLoader#KEEP_ALIVE_TIMEOUT} and {@link SettingLoader#KEEP_ALIVE_REQUESTS}. Since a persistent
+ * connection holds its thread while it's idle, it's closed between two requests as soon as a new connection waits for
+ * a thread of the pool or for a slot.
+ * The responses are cached by {@link ResponseCache} if the instance of {@link BandwidthStatus} is an
+ * {@link ObservableBandwidthStatus}.
+ * The files of the directory specified by {@link SettingLoader#STATIC_ROOT} are served by {@link StaticFiles}.
  * {@link DefaultBandwidthStatus} is the default instance of {@link BandwidthStatus} FloodWebServer uses.
  * The default port is acquired through {@link SettingLoader#PORT}.
  */
 public class FloodWebServer extends Thread implements WebServer {
-	private boolean interrupted = false;
+	private volatile boolean interrupted = false;
+	private final CountDownLatch started = new CountDownLatch(1);
+	private volatile boolean listening = false;
 	private int port;
 	private final ExecutorService threadPool;
+	private final Semaphore connectionLimiter;
+	private final BooleanSupplier saturated;
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+	private final int keepAliveTimeout;
+	private final int keepAliveRequests;
 	private BandwidthStatus bs;
+	private volatile ResponseCache responseCache = null;
+	private volatile StaticFiles staticFiles = StaticFiles.fromSettings();
 
 	public FloodWebServer() {
+		this(false);
+	}
+
+	/**
+	 * Creates the server.
+	 * @param virtualThreads true to process every connection in its own virtual thread, false to use the thread pool
+	 */
+	public FloodWebServer(boolean virtualThreads) {
 		bs = new DefaultBandwidthStatus();
 		port = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.PORT));
-		int availableThreadAmount = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.MAX_THREADS));
-		threadPool = Executors.newFixedThreadPool(availableThreadAmount);
+		keepAliveTimeout = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.KEEP_ALIVE_TIMEOUT));
+		keepAliveRequests = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.KEEP_ALIVE_REQUESTS));
+		if (virtualThreads) {
+			int maxConnections = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.MAX_CONNECTIONS));
+			threadPool = Executors.newVirtualThreadPerTaskExecutor();
+			connectionLimiter = new Semaphore(maxConnections);
+			saturated = connectionLimiter::hasQueuedThreads;
+		} else {
+			int availableThreadAmount = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.MAX_THREADS));
+			LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+			threadPool = new ThreadPoolExecutor(
+				availableThreadAmount,
+				availableThreadAmount,
+				0,
+				TimeUnit.MILLISECONDS,
+				queue
+			);
+			connectionLimiter = null;
+			saturated = () -> !queue.isEmpty();
+		}
 	}
 
 	@Override
 	public void run() {
-		try (ServerSocket socket = new ServerSocket(port)) {
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			ServerSocket socket = serverChannel.socket();
+			socket.bind(new InetSocketAddress(port));
 			socket.setSoTimeout(100);
+			listening = true;
+			started.countDown();
 			while (!interrupted) {
 				try {
 					Socket client = socket.accept();
 					processSocket(client);
 				} catch (Exception ignored) {}
 			}
-		} catch (IOException ignored) { }
+		} catch (IOException ignored) {
+		} finally {
+			listening = false;
+			started.countDown();
+		}
 	}
 
 	@Override
 	public void interrupt() {
 		interrupted = true;
-		threadPool.shutdownNow();
 		try {
-			threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 			join();
+			threadPool.shutdownNow();
+			for (Socket connection: connections) {
+				try {
+					connection.close();
+				} catch (IOException ignored) {}
+			}
+			threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 		} catch (InterruptedException ignored) {}
 	}
 
+	@Override
+	public boolean awaitReady(long timeout) throws InterruptedException {
+		assert timeout >= 0;
+
+		return started.await(timeout, TimeUnit.MILLISECONDS) && listening;
+	}
+
 	@Override
 	public void setPort(int port) {
 		assert port >= 0 && port <= Math.pow(2, 16) - 1;
@@ -89,18 +169,53 @@ public class FloodWebServer extends Thread implements WebServer {
 
 	@Override
 	public void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
-		assert  bandwidthStatus != null;
+		assert bandwidthStatus != null;
 
+		if (responseCache != null) responseCache.release();
 		bs = bandwidthStatus;
+		responseCache = bandwidthStatus instanceof ObservableBandwidthStatus obs ? new ResponseCache(obs) : null;
+	}
+
+	/**
+	 * Sets the directory which files are served along with the records.
+	 * @param root directory to serve, or null to stop serving files
+	 * @throws IOException if the directory doesn't exist
+	 */
+	public void setStaticRoot(Path root) throws IOException {
+		staticFiles = root != null ? new StaticFiles(root) : null;
 	}
 
-	private void processSocket(Socket socket) {
-		threadPool.execute(new HTTPResponse(bs, socket));
+	private void processSocket(Socket socket) throws IOException, InterruptedException {
+		HTTPResponse response =
+			new HTTPResponse(bs, responseCache, staticFiles, socket, keepAliveTimeout, keepAliveRequests, saturated);
+		while (connectionLimiter != null && !connectionLimiter.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+			if (interrupted) {
+				socket.close();
+				return;
+			}
+		}
+
+		connections.add(socket);
+		try {
+			threadPool.execute(() -> {
+				try {
+					response.run();
+				} finally {
+					connections.remove(socket);
+					if (connectionLimiter != null) connectionLimiter.release();
+				}
+			});
+		} catch (RejectedExecutionException exception) {
+			connections.remove(socket);
+			if (connectionLimiter != null) connectionLimiter.release();
+			socket.close();
+		}
 	}
 
 	public static void main(String[] args) throws InterruptedException {
 		FloodWebServer floodWebServer = new FloodWebServer();
+		Runtime.getRuntime().addShutdownHook(new Thread(floodWebServer::interrupt));
 		floodWebServer.start();
-		while (true) {}
+		floodWebServer.join();
 	}
 }
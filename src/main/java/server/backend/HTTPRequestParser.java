@@ -0,0 +1,375 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.backend;
+
+import global.RequestType;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * HTTPRequestParser parses HTTP requests directly from the received bytes.
+ * The parser is fed with the buffer of received data through {@link HTTPRequestParser#parse(ByteBuffer)} every time
+ * more data arrives; the progress is kept between the calls, so the bytes of a request split across several reads
+ * are examined once, and a completed request is consumed from the buffer together with its body.
+ * The request type and the single-letter numeric query parameters are resolved without creating any strings;
+ * only the requests for other paths keep their path and the headers needed to serve a file as strings.
+ * One instance of the parser is meant to be reused for all the requests of a connection.
+ */
+class HTTPRequestParser {
+	private final static RequestType[] REQUEST_TYPES = RequestType.values();
+	private final static byte[][] REQUEST_TYPE_NAMES = new byte[REQUEST_TYPES.length][];
+	private final static byte[] HTTP_1_1 = "http/1.1".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] CONNECTION = "connection".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] CLOSE = "close".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] KEEP_ALIVE = "keep-alive".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] HEAD = "head".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] IF_NONE_MATCH = "if-none-match".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] IF_MODIFIED_SINCE = "if-modified-since".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] ACCEPT_ENCODING = "accept-encoding".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] GZIP = "gzip".getBytes(StandardCharsets.US_ASCII);
+	private final static int MAX_DIGITS = 18;
+
+	static {
+		for (int i = 0; i < REQUEST_TYPES.length; i++) {
+			REQUEST_TYPE_NAMES[i] = REQUEST_TYPES[i].name().getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private boolean complete = false;
+	private int scanned = 0;
+	private int headLength = -1;
+	private int contentLength = 0;
+
+	private RequestType requestType;
+	private final long[] parameters = new long['z' - 'a' + 1];
+	private int parameterMask;
+	private boolean keepAlive;
+	private boolean head;
+	private String path;
+	private String ifNoneMatch;
+	private String ifModifiedSince;
+	private boolean gzipAccepted;
+
+	/**
+	 * Continues parsing the request that begins at the position of the buffer.
+	 * The buffer must contain the received data between its position and limit, and the data examined by the previous
+	 * unsuccessful calls must stay at the same place relative to the position.
+	 * If the request is complete, the position of the buffer is moved past it and its properties become available.
+	 * @param buffer received data
+	 * @return true if the request is complete, false if more data is needed
+	 * @throws ProtocolException if the request can't be delimited
+	 */
+	boolean parse(ByteBuffer buffer) throws ProtocolException {
+		assert buffer != null;
+
+		if (complete) reset();
+		int start = buffer.position();
+		int available = buffer.limit() - start;
+		if (headLength < 0) {
+			for (int i = Math.max(scanned, 1); i < available; i++) {
+				if (buffer.get(start + i) != '\n') continue;
+				if (buffer.get(start + i - 1) == '\n'
+					|| i >= 3 && buffer.get(start + i - 1) == '\r' && buffer.get(start + i - 2) == '\n'
+					&& buffer.get(start + i - 3) == '\r') {
+					headLength = i + 1;
+					break;
+				}
+			}
+			if (headLength < 0) {
+				scanned = available;
+				return false;
+			}
+			parseHead(buffer, start, start + headLength);
+		}
+
+		if (available < headLength + contentLength) return false;
+		buffer.position(start + headLength + contentLength);
+		complete = true;
+		return true;
+	}
+
+	private void reset() {
+		complete = false;
+		scanned = 0;
+		headLength = -1;
+		contentLength = 0;
+		requestType = null;
+		parameterMask = 0;
+		keepAlive = false;
+		head = false;
+		path = null;
+		ifNoneMatch = null;
+		ifModifiedSince = null;
+		gzipAccepted = false;
+	}
+
+	private void parseHead(ByteBuffer buffer, int start, int end) throws ProtocolException {
+		int lineEnd = lineEnd(buffer, start, end);
+		parseRequestLine(buffer, start, lineEnd);
+		for (int line = nextLine(buffer, lineEnd, end); line < end; line = nextLine(buffer, lineEnd, end)) {
+			lineEnd = lineEnd(buffer, line, end);
+			int colon = indexOf(buffer, line, lineEnd, (byte) ':');
+			if (colon < 0) continue;
+			int value = skipSpaces(buffer, colon + 1, lineEnd);
+			if (equalsIgnoreCase(buffer, line, colon, CONTENT_LENGTH)) {
+				long length = parseNumber(buffer, value, trimEnd(buffer, value, lineEnd));
+				if (length < 0 || length > Integer.MAX_VALUE) throw new ProtocolException("Malformed Content-Length");
+				contentLength = (int) length;
+			} else if (equalsIgnoreCase(buffer, line, colon, CONNECTION)) {
+				parseConnection(buffer, value, lineEnd);
+			} else if (path != null && equalsIgnoreCase(buffer, line, colon, IF_NONE_MATCH)) {
+				ifNoneMatch = string(buffer, value, trimEnd(buffer, value, lineEnd));
+			} else if (path != null && equalsIgnoreCase(buffer, line, colon, IF_MODIFIED_SINCE)) {
+				ifModifiedSince = string(buffer, value, trimEnd(buffer, value, lineEnd));
+			} else if (path != null && equalsIgnoreCase(buffer, line, colon, ACCEPT_ENCODING)) {
+				parseAcceptEncoding(buffer, value, lineEnd);
+			}
+		}
+	}
+
+	private void parseRequestLine(ByteBuffer buffer, int start, int end) {
+		int targetStart = indexOf(buffer, start, end, (byte) ' ') + 1;
+		int targetEnd = targetStart > 0 ? indexOf(buffer, targetStart, end, (byte) ' ') : -1;
+		if (targetEnd < 0) return;
+
+		int versionStart = skipSpaces(buffer, targetEnd, end);
+		keepAlive = equalsIgnoreCase(buffer, versionStart, trimEnd(buffer, versionStart, end), HTTP_1_1);
+		head = equalsIgnoreCase(buffer, start, targetStart - 1, HEAD);
+
+		int pathStart = targetStart;
+		if (pathStart < targetEnd && buffer.get(pathStart) == '/') pathStart++;
+		int query = indexOf(buffer, pathStart, targetEnd, (byte) '?');
+		int pathEnd = query < 0 ? targetEnd : query;
+		for (int i = 0; i < REQUEST_TYPE_NAMES.length; i++) {
+			if (equalsIgnoreCase(buffer, pathStart, pathEnd, REQUEST_TYPE_NAMES[i])) requestType = REQUEST_TYPES[i];
+		}
+		if (requestType == null) {
+			path = string(buffer, targetStart, pathEnd);
+			return;
+		}
+		if (query < 0) return;
+
+		int parameter = query + 1;
+		while (parameter < targetEnd) {
+			int parameterEnd = indexOf(buffer, parameter, targetEnd, (byte) '&');
+			if (parameterEnd < 0) parameterEnd = targetEnd;
+			byte name = buffer.get(parameter);
+			if (parameterEnd - parameter > 2 && name >= 'a' && name <= 'z' && buffer.get(parameter + 1) == '=') {
+				long value = parseNumber(buffer, parameter + 2, parameterEnd);
+				if (value >= 0) {
+					parameters[name - 'a'] = value;
+					parameterMask |= 1 << (name - 'a');
+				}
+			}
+			parameter = parameterEnd + 1;
+		}
+	}
+
+	private void parseConnection(ByteBuffer buffer, int start, int end) {
+		int option = start;
+		while (option < end) {
+			int optionEnd = indexOf(buffer, option, end, (byte) ',');
+			if (optionEnd < 0) optionEnd = end;
+			int optionStart = skipSpaces(buffer, option, optionEnd);
+			int trimmedEnd = trimEnd(buffer, optionStart, optionEnd);
+			if (equalsIgnoreCase(buffer, optionStart, trimmedEnd, CLOSE)) keepAlive = false;
+			else if (equalsIgnoreCase(buffer, optionStart, trimmedEnd, KEEP_ALIVE)) keepAlive = true;
+			option = optionEnd + 1;
+		}
+	}
+
+	private void parseAcceptEncoding(ByteBuffer buffer, int start, int end) {
+		int coding = start;
+		while (coding < end) {
+			int codingEnd = indexOf(buffer, coding, end, (byte) ',');
+			if (codingEnd < 0) codingEnd = end;
+			int nameStart = skipSpaces(buffer, coding, codingEnd);
+			int parameters = indexOf(buffer, nameStart, codingEnd, (byte) ';');
+			int nameEnd = trimEnd(buffer, nameStart, parameters < 0 ? codingEnd : parameters);
+			if (equalsIgnoreCase(buffer, nameStart, nameEnd, GZIP)) {
+				gzipAccepted = parameters < 0 || !isZeroQuality(buffer, parameters + 1, codingEnd);
+			}
+			coding = codingEnd + 1;
+		}
+	}
+
+	/**
+	 * Returns whether the parameters of a content coding are "q=0", "q=0.0", and so on.
+	 */
+	private static boolean isZeroQuality(ByteBuffer buffer, int start, int end) {
+		start = skipSpaces(buffer, start, end);
+		end = trimEnd(buffer, start, end);
+		if (end - start < 3 || (buffer.get(start) | 0x20) != 'q' || buffer.get(start + 1) != '=') return false;
+		for (int i = start + 2; i < end; i++) {
+			if (buffer.get(i) != '0' && buffer.get(i) != '.') return false;
+		}
+		return true;
+	}
+
+	private static String string(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Returns the parsed decimal number, or -1 if the bytes are not a non-negative number of at most 18 digits.
+	 */
+	private static long parseNumber(ByteBuffer buffer, int start, int end) {
+		if (start >= end || end - start > MAX_DIGITS) return -1;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			byte digit = buffer.get(i);
+			if (digit < '0' || digit > '9') return -1;
+			value = value * 10 + digit - '0';
+		}
+		return value;
+	}
+
+	private static int lineEnd(ByteBuffer buffer, int start, int end) {
+		int newLine = indexOf(buffer, start, end, (byte) '\n');
+		if (newLine < 0) return end;
+		return newLine > start && buffer.get(newLine - 1) == '\r' ? newLine - 1 : newLine;
+	}
+
+	private static int nextLine(ByteBuffer buffer, int lineEnd, int end) {
+		int newLine = indexOf(buffer, lineEnd, end, (byte) '\n');
+		return newLine < 0 ? end : newLine + 1;
+	}
+
+	private static int indexOf(ByteBuffer buffer, int start, int end, byte value) {
+		for (int i = start; i < end; i++) {
+			if (buffer.get(i) == value) return i;
+		}
+		return -1;
+	}
+
+	private static int skipSpaces(ByteBuffer buffer, int start, int end) {
+		while (start < end && (buffer.get(start) == ' ' || buffer.get(start) == '\t')) start++;
+		return start;
+	}
+
+	private static int trimEnd(ByteBuffer buffer, int start, int end) {
+		while (end > start && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == '\t')) end--;
+		return end;
+	}
+
+	/**
+	 * Compares the bytes with the lower-case ASCII token ignoring the case of the bytes.
+	 */
+	private static boolean equalsIgnoreCase(ByteBuffer buffer, int start, int end, byte[] token) {
+		if (end - start != token.length) return false;
+		for (int i = 0; i < token.length; i++) {
+			byte b = buffer.get(start + i);
+			if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+			if (b != token[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the type of the parsed request.
+	 * @return type of the request, or null if the request doesn't specify a known type
+	 */
+	RequestType getRequestType() {
+		return requestType;
+	}
+
+	/**
+	 * Returns whether the parsed request contains the numeric query parameter.
+	 * @param name single-letter name of the parameter
+	 * @return true if the parameter is present and is a non-negative number, false otherwise
+	 */
+	boolean hasParameter(char name) {
+		assert name >= 'a' && name <= 'z';
+		return (parameterMask & 1 << (name - 'a')) != 0;
+	}
+
+	/**
+	 * Returns the numeric query parameter of the parsed request.
+	 * @param name single-letter name of the parameter
+	 * @return value of the parameter
+	 * @throws NoSuchElementException if the parameter is absent or is not a non-negative number
+	 */
+	long getParameter(char name) {
+		if (!hasParameter(name)) throw new NoSuchElementException("No numeric parameter " + name);
+		return parameters[name - 'a'];
+	}
+
+	/**
+	 * Returns whether the client expects the connection to stay open after the response to the parsed request.
+	 * HTTP/1.1 connections are persistent unless "Connection: close" is sent,
+	 * older versions are persistent only if "Connection: keep-alive" is sent.
+	 * @return true if the connection should stay open, false otherwise
+	 */
+	boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Returns whether the method of the parsed request is HEAD.
+	 * @return true if the method is HEAD, false otherwise
+	 */
+	boolean isHead() {
+		return head;
+	}
+
+	/**
+	 * Returns the path of the parsed request if it doesn't specify a known request type.
+	 * @return raw path of the request, or null if the request specifies a known type
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the value of If-None-Match header of a request for a path.
+	 * @return value of the header, or null if it's absent
+	 */
+	String getIfNoneMatch() {
+		return ifNoneMatch;
+	}
+
+	/**
+	 * Returns the value of If-Modified-Since header of a request for a path.
+	 * @return value of the header, or null if it's absent
+	 */
+	String getIfModifiedSince() {
+		return ifModifiedSince;
+	}
+
+	/**
+	 * Returns whether the client of a request for a path accepts gzip content coding.
+	 * @return true if gzip is accepted, false otherwise
+	 */
+	boolean isGzipAccepted() {
+		return gzipAccepted;
+	}
+
+	/**
+	 * Returns the length of the body of the parsed request.
+	 * @return length of the body in bytes
+	 */
+	int getContentLength() {
+		return contentLength;
+	}
+}
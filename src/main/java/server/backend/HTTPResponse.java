@@ -18,94 +18,379 @@
 package server.backend;
 
 import global.RequestType;
-import org.json.JSONObject;
+import server.bandwidth.AdaptiveIdleTime;
+import server.bandwidth.BandwidthRecords;
+import server.bandwidth.BandwidthRollups;
 import server.bandwidth.BandwidthStatus;
+import server.bandwidth.BudgetedDownloadTest;
+import server.bandwidth.HTTPDownloadTest;
+import server.bandwidth.HTTPUploadTest;
+import server.bandwidth.LatencyProbe;
+import server.bandwidth.TaggedBandwidthStatus;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Calendar;
 import java.util.GregorianCalendar;
-import java.util.LinkedList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.BooleanSupplier;
 
+/**
+ * HTTPResponse serves the requests of a single connection.
+ * The connection is persistent unless the client asks to close it, or it is an HTTP/1.0 client that hasn't asked to keep it
+ * alive. It is closed after it has been idle for the given timeout or has served the given amount of requests, or as soon
+ * as it's idle between two requests while the server is saturated, so it doesn't hold up the waiting connections.
+ * Pipelined requests are answered in the order they were received, and the responses to the requests that arrived together
+ * are sent together.
+ */
 class HTTPResponse implements Runnable {
+	/**
+	 * MAX_REQUEST_SIZE is the maximum size of a request in bytes, the bigger requests are rejected
+	 */
+	final static int MAX_REQUEST_SIZE = 64 * 1024;
+	private final static int INITIAL_BUFFER_SIZE = 1024 * 8;
+	private final static int SATURATION_CHECK_INTERVAL = 100;
+
 	private final Socket clientSocket;
 	private final BandwidthStatus bs;
+	private final ResponseCache cache;
+	private final StaticFiles staticFiles;
+	private final int idleTimeout;
+	private final int maxRequests;
+	private final BooleanSupplier saturated;
 
-	HTTPResponse(BandwidthStatus bandwidthStatus, Socket socket) {
-		assert bandwidthStatus != null && socket != null;
+	/**
+	 * Creates the handler of the connection.
+	 * @param bandwidthStatus instance of {@link BandwidthStatus} to collect the records from
+	 * @param cache cache of the responses, or null if the responses aren't cached
+	 * @param staticFiles files served along with the records, or null if no files are served
+	 * @param socket connection to serve
+	 * @param idleTimeout time in milliseconds after which the idle connection is closed, 0 for no timeout
+	 * @param maxRequests maximum amount of requests served through the connection
+	 * @param saturated tells whether other connections wait for the server
+	 */
+	HTTPResponse(
+		BandwidthStatus bandwidthStatus,
+		ResponseCache cache,
+		StaticFiles staticFiles,
+		Socket socket,
+		int idleTimeout,
+		int maxRequests,
+		BooleanSupplier saturated
+	) {
+		assert bandwidthStatus != null && socket != null && idleTimeout >= 0 && maxRequests > 0 && saturated != null;
 
 		bs = bandwidthStatus;
+		this.cache = cache;
+		this.staticFiles = staticFiles;
 		clientSocket = socket;
+		this.idleTimeout = idleTimeout;
+		this.maxRequests = maxRequests;
+		this.saturated = saturated;
 	}
 
-
 	@Override
 	public void run() {
-		String response = "";
 		try {
+			clientSocket.setSoTimeout(
+				idleTimeout > 0 ? Math.min(idleTimeout, SATURATION_CHECK_INTERVAL) : SATURATION_CHECK_INTERVAL
+			);
 			InputStream cis = clientSocket.getInputStream();
-			StringBuilder mes = new StringBuilder();
-			byte[] buffer = new byte[1024 * 8];
-			int receivedBytes;
-			do {
-				receivedBytes = cis.read(buffer);
-				mes.append(new String(buffer, 0, receivedBytes));
-			} while (receivedBytes == buffer.length);
-
-			String header = mes.substring(0, mes.indexOf("\n"));
-			RequestType rt = RequestType.valueOf(header.substring(header.indexOf("/") + 1, header.indexOf("?")));
-			String params = header.substring(header.indexOf("?") + 1, header.indexOf(" ", header.indexOf("?")));
-			response = buildResponse(rt, params);
-		} catch (IOException exception) {
-			response = DefaultHTTPResponses._500;
-		} catch (Exception exception) {
-			response = DefaultHTTPResponses._400;
+			OutputStream os = new BufferedOutputStream(clientSocket.getOutputStream());
+			ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+			HTTPRequestParser request = new HTTPRequestParser();
+			int served = 0;
+			boolean keepAlive = true;
+			while (keepAlive) {
+				boolean parsed;
+				try {
+					parsed = request.parse(buffer.flip());
+				} catch (ProtocolException exception) {
+					os.write(DefaultHTTPResponses._400.getBytes());
+					break;
+				} finally {
+					buffer.compact();
+				}
+
+				if (!parsed) {
+					if (!buffer.hasRemaining()) {
+						if (buffer.capacity() >= MAX_REQUEST_SIZE) {
+							os.write(DefaultHTTPResponses._400.getBytes());
+							break;
+						}
+						buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+					}
+					os.flush();
+					int receivedBytes = receive(cis, buffer, served > 0 && buffer.position() == 0);
+					if (receivedBytes == -1) break;
+					buffer.position(buffer.position() + receivedBytes);
+					continue;
+				}
+
+				served++;
+				keepAlive = served < maxRequests && request.isKeepAlive();
+				if (staticFiles != null && request.getPath() != null) {
+					StaticFiles.Response response = staticFiles.respond(request, keepAlive);
+					os.write(response.head());
+					if (response.content() != null || response.file() != null) {
+						os.flush();
+						SocketChannel channel = clientSocket.getChannel();
+						response.writeBody(channel != null ? channel : Channels.newChannel(os));
+					}
+				} else {
+					respond(bs, cache, request, os, keepAlive);
+				}
+			}
+			os.flush();
+		} catch (Exception ignored) {
 		} finally {
-			try {
-				clientSocket.getOutputStream().write(response.getBytes());
-			} catch (IOException ignored) {}
 			try {
 				clientSocket.close();
 			} catch (IOException ignored) {}
 		}
 	}
 
-	private String buildResponse(RequestType rq, String params) throws IOException {
-			StringBuilder response = new StringBuilder(
-				"""
-					HTTP/1.1 200 OK
-					Content-Type: text/html
-					"""
-			);
+	/**
+	 * Reads the next bytes of the requests into the buffer, waiting no longer than the idle timeout.
+	 * An idle connection is given up as soon as the server is saturated.
+	 * @param idle whether the connection is between two requests
+	 * @return amount of bytes read, or -1 if the connection is to be closed
+	 */
+	private int receive(InputStream cis, ByteBuffer buffer, boolean idle) throws IOException {
+		long since = System.currentTimeMillis();
+		while (true) {
+			try {
+				return cis.read(buffer.array(), buffer.position(), buffer.remaining());
+			} catch (SocketTimeoutException exception) {
+				if (idle && saturated.getAsBoolean()) return -1;
+				if (idleTimeout > 0 && System.currentTimeMillis() - since >= idleTimeout) throw exception;
+			}
+		}
+	}
 
-			switch (rq) {
-				case retrieve_last -> {
-					int unitAmount = Integer.parseInt(retrieve(params, "t=\\d+").substring("t=".length()));
-					int timeUnit = Integer.parseInt(retrieve(params, "u=\\d+").substring("u=".length()));
+	/**
+	 * Processes the request and writes the response to the output stream.
+	 * If the request is malformed or the records can't be collected, the corresponding error response is written.
+	 * @param bs instance of {@link BandwidthStatus} to collect the records from
+	 * @param cache cache of the responses, or null if the responses aren't cached
+	 * @param request received request
+	 * @param os output stream
+	 * @param keepAlive whether the connection stays open after the response
+	 * @throws IOException if an I/O error occurs while writing the response
+	 */
+	static void respond(
+		BandwidthStatus bs,
+		ResponseCache cache,
+		HTTPRequestParser request,
+		OutputStream os,
+		boolean keepAlive
+	) throws IOException {
+		String connection = keepAlive ? "Connection: keep-alive\n" : "Connection: close\n";
+		Query query;
+		try {
+			query = query(request);
+		} catch (Exception exception) {
+			writeError(DefaultHTTPResponses._400, os, connection);
+			return;
+		}
 
-					GregorianCalendar calendar = new GregorianCalendar();
-					calendar.add(timeUnit, -unitAmount);
-					LinkedList<String[]> records = bs.collect(calendar.toInstant().toEpochMilli());
-					String responseBody = new JSONObject().put("records", records).toString();
-					response.append("Content-Length: " + responseBody.length() + "\n\n" + responseBody);
-				}
-				case retrieve_range -> {
-					long start = Long.parseLong(retrieve(params, "s=\\d+").substring("s=".length()));
-					long end = Long.parseLong(retrieve(params, "e=\\d+").substring("e=".length()));
-					LinkedList<String[]> records = bs.collect(start, end);
-					String responseBody = new JSONObject().put("records", records).toString();
-					response.append("Content-Length: " + responseBody.length() + "\n\n" + responseBody);
+		if (query.resolution() != null) {
+			RollupsJSONWriter rollups;
+			try {
+				rollups = new RollupsJSONWriter(
+					bs.collectRollups(query.from(), query.to(), query.resolution())
+						.filter(Series.SPEED::matches)
+				);
+			} catch (IOException exception) {
+				writeError(DefaultHTTPResponses._500, os, connection);
+				return;
+			}
+			writeHead(rollups.length(), os, connection);
+			rollups.write(os);
+			return;
+		}
+
+		RecordsJSONWriter body = null;
+		ResponseCache.Entry entry = null;
+		try {
+			if (cache != null) entry = cache.get(query.key(), query.from());
+			if (entry == null) {
+				long generation = cache != null ? cache.generation() : 0;
+				BandwidthRecords records = bs.collectRecords(query.from(), query.to())
+					.filter(query.series()::matches);
+				if (query.points() > 0) records = Downsampler.downsample(records, query.points());
+				body = new RecordsJSONWriter(records);
+				if (cache != null && cache.accepts(body.length())) {
+					ByteArrayOutputStream encoded = new ByteArrayOutputStream((int) body.length());
+					body.write(encoded);
+					entry = new ResponseCache.Entry(
+						encoded.toByteArray(),
+						records.size() > 0 ? records.getTime(0) : Long.MAX_VALUE
+					);
+					cache.put(query.key(), entry, generation);
 				}
 			}
+		} catch (IOException exception) {
+			writeError(DefaultHTTPResponses._500, os, connection);
+			return;
+		}
+
+		if (entry != null) {
+			writeHead(entry.body().length, os, connection);
+			os.write(entry.body());
+		} else {
+			writeHead(body.length(), os, connection);
+			body.write(os);
+		}
+	}
+
+	/**
+	 * Series is the kind of records requested by the client.
+	 * The records are matched by their additional information without the tag of {@link TaggedBandwidthStatus}.
+	 */
+	private enum Series {
+		/**
+		 * The download speeds, and the speeds of the other tests without a series of their own
+		 */
+		SPEED,
+		/**
+		 * The upload speeds of {@link HTTPUploadTest}
+		 */
+		UPLOAD,
+		/**
+		 * The round-trip times of {@link LatencyProbe}
+		 */
+		LATENCY;
+
+		boolean matches(String info) {
+			String base = TaggedBandwidthStatus.baseInfo(info);
+			boolean latency = base.startsWith(LatencyProbe.INFO_PREFIX);
+			boolean upload = base.equals(HTTPUploadTest.INFO);
+			return switch (this) {
+				case SPEED -> !latency && !upload
+					&& !base.startsWith(BudgetedDownloadTest.INFO_PREFIX)
+					&& !base.startsWith(HTTPDownloadTest.INFO_PREFIX)
+					&& !base.startsWith(AdaptiveIdleTime.INFO_PREFIX);
+				case UPLOAD -> upload;
+				case LATENCY -> latency;
+			};
+		}
+	}
+
+	/**
+	 * Query is the period of records requested by the client.
+	 * The records of {@link LatencyProbe} are returned only to the latency requests, and only them; the same goes for
+	 * the records of {@link HTTPUploadTest} and the upload requests, so the speeds of both directions don't mix.
+	 * The records of {@link BudgetedDownloadTest} and {@link AdaptiveIdleTime} aren't speeds, and the percentile records
+	 * of {@link HTTPDownloadTest} only detail the download speeds, so they're returned to none of them. The records are
+	 * matched by their additional information without the tag of {@link TaggedBandwidthStatus}, and returned with
+	 * the tag, so the client can tell the targets apart.
+	 * The aggregated records are small and read from memory, so they aren't cached.
+	 * @param key identifier of the request in {@link ResponseCache}
+	 * @param from inclusive absolute time of the beginning of the period in milliseconds since Jan. 1st 1970
+	 * @param to inclusive absolute time of the end of the period in milliseconds since Jan. 1st 1970
+	 * @param series kind of the requested records
+	 * @param resolution length of the buckets the records are aggregated into, or null for the records themselves
+	 * @param points maximum amount of records the records are downsampled to, or 0 for all the records
+	 */
+	private record Query(
+		ResponseCache.Key key,
+		long from,
+		long to,
+		Series series,
+		BandwidthRollups.Resolution resolution,
+		int points
+	) {}
+
+	private static Query query(HTTPRequestParser request) {
+		RequestType rt = request.getRequestType();
+		if (rt == null) throw new IllegalArgumentException("Unknown request type");
+
+		return switch (rt) {
+			case retrieve_last, retrieve_latency_last, retrieve_upload_last -> {
+				int unitAmount = Math.toIntExact(request.getParameter('t'));
+				int timeUnit = Math.toIntExact(request.getParameter('u'));
+
+				GregorianCalendar calendar = new GregorianCalendar();
+				long now = calendar.getTimeInMillis();
+				calendar.add(timeUnit, -unitAmount);
+				yield new Query(
+					new ResponseCache.Key(rt, timeUnit, unitAmount),
+					calendar.getTimeInMillis(),
+					now,
+					switch (rt) {
+						case retrieve_latency_last -> Series.LATENCY;
+						case retrieve_upload_last -> Series.UPLOAD;
+						default -> Series.SPEED;
+					},
+					null,
+					0
+				);
+			}
+			case retrieve_range, retrieve_latency_range, retrieve_upload_range -> {
+				long start = request.getParameter('s');
+				long end = request.getParameter('e');
+				yield new Query(
+					new ResponseCache.Key(rt, start, end),
+					start,
+					end,
+					switch (rt) {
+						case retrieve_latency_range -> Series.LATENCY;
+						case retrieve_upload_range -> Series.UPLOAD;
+						default -> Series.SPEED;
+					},
+					null,
+					0
+				);
+			}
+			case retrieve_rollup -> {
+				long start = request.getParameter('s');
+				long end = request.getParameter('e');
+				BandwidthRollups.Resolution resolution = switch (Math.toIntExact(request.getParameter('r'))) {
+					case Calendar.MINUTE -> BandwidthRollups.Resolution.MINUTE;
+					case Calendar.HOUR, Calendar.HOUR_OF_DAY -> BandwidthRollups.Resolution.HOUR;
+					case Calendar.DATE, Calendar.DAY_OF_YEAR -> BandwidthRollups.Resolution.DAY;
+					default -> throw new IllegalArgumentException("Unsupported resolution");
+				};
+				yield new Query(new ResponseCache.Key(rt, start, end), start, end, Series.SPEED, resolution, 0);
+			}
+			case retrieve_downsampled -> {
+				long start = request.getParameter('s');
+				long end = request.getParameter('e');
+				int points = Math.toIntExact(request.getParameter('n'));
+				if (points == 0) throw new IllegalArgumentException("The amount of records must be a natural number");
+				yield new Query(
+					new ResponseCache.Key(rt, start, end, points),
+					start,
+					end,
+					Series.SPEED,
+					null,
+					points
+				);
+			}
+		};
+	}
 
-			return response.toString();
+	private static void writeHead(long contentLength, OutputStream os, String connection) throws IOException {
+		os.write(
+			"""
+				HTTP/1.1 200 OK
+				Content-Type: application/json
+				Content-Length: %d
+				%s
+				""".formatted(contentLength, connection).getBytes()
+		);
 	}
 
-	private String retrieve(String input, String regex) {
-		Matcher matcher = Pattern.compile(regex).matcher(input);
-		matcher.find();
-		return matcher.group();
+	private static void writeError(String response, OutputStream os, String connection) throws IOException {
+		os.write((response.substring(0, response.length() - 1) + connection + "\n").getBytes());
 	}
 }
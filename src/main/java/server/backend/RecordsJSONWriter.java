@@ -0,0 +1,150 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.backend;
+
+import server.bandwidth.BandwidthRecords;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RecordsJSONWriter serializes {@link BandwidthRecords} into the json object described in {@link WebServer}
+ * straight to an output stream.
+ * The length of the serialized object is calculated beforehand, so it can be sent as the Content-Length header,
+ * and the records are written one by one without building the whole object in memory.
+ * The additional information is encoded once per distinct string.
+ */
+class RecordsJSONWriter {
+	private final static byte[] PREFIX = "{\"records\":[".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] SUFFIX = "]}".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] RECORD_START = "[\"".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] SEPARATOR = "\",\"".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] LAST_SEPARATOR = "\",".getBytes(StandardCharsets.US_ASCII);
+
+	private final BandwidthRecords records;
+	private final byte[][] infos;
+	private final byte[] digits = new byte[20];
+	private final long length;
+
+	RecordsJSONWriter(BandwidthRecords records) {
+		assert records != null;
+
+		this.records = records;
+		infos = new byte[records.getDictionarySize()][];
+		for (int i = 0; i < infos.length; i++) {
+			infos[i] = quote(records.getDictionaryEntry(i));
+		}
+
+		long length = PREFIX.length + SUFFIX.length;
+		for (int i = 0; i < records.size(); i++) {
+			if (i > 0) length++;
+			length += RECORD_START.length + SEPARATOR.length + LAST_SEPARATOR.length + 1;
+			length += stringSize(records.getTime(i)) + stringSize(records.getSpeed(i));
+			length += infos[records.getInfoId(i)].length;
+		}
+		this.length = length;
+	}
+
+	/**
+	 * Returns the length of the serialized records in bytes.
+	 * @return length in bytes
+	 */
+	long length() {
+		return length;
+	}
+
+	/**
+	 * Writes the serialized records to the output stream.
+	 * The output stream is expected to be buffered.
+	 * @param os output stream
+	 * @throws IOException if an I/O error occurs
+	 */
+	void write(OutputStream os) throws IOException {
+		os.write(PREFIX);
+		for (int i = 0; i < records.size(); i++) {
+			if (i > 0) os.write(',');
+			os.write(RECORD_START);
+			writeLong(os, records.getTime(i), digits);
+			os.write(SEPARATOR);
+			writeLong(os, records.getSpeed(i), digits);
+			os.write(LAST_SEPARATOR);
+			os.write(infos[records.getInfoId(i)]);
+			os.write(']');
+		}
+		os.write(SUFFIX);
+	}
+
+	/**
+	 * Writes the decimal representation of the number to the output stream.
+	 * @param os output stream
+	 * @param value number
+	 * @param digits buffer of at least 20 bytes to format the number in
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void writeLong(OutputStream os, long value, byte[] digits) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			os.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+			return;
+		}
+		int position = digits.length;
+		long rest = Math.abs(value);
+		do {
+			digits[--position] = (byte) ('0' + rest % 10);
+			rest /= 10;
+		} while (rest != 0);
+		if (value < 0) digits[--position] = '-';
+		os.write(digits, position, digits.length - position);
+	}
+
+	/**
+	 * Returns the length of the decimal representation of the number.
+	 */
+	static int stringSize(long value) {
+		if (value == Long.MIN_VALUE) return 20;
+		int size = value < 0 ? 2 : 1;
+		for (long rest = Math.abs(value); rest >= 10; rest /= 10) size++;
+		return size;
+	}
+
+	/**
+	 * Returns the UTF-8 encoded json string literal of the given string, quotes included.
+	 */
+	static byte[] quote(String string) {
+		StringBuilder sb = new StringBuilder(string.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			switch (c) {
+				case '"' -> sb.append("\\\"");
+				case '\\' -> sb.append("\\\\");
+				case '\b' -> sb.append("\\b");
+				case '\f' -> sb.append("\\f");
+				case '\n' -> sb.append("\\n");
+				case '\r' -> sb.append("\\r");
+				case '\t' -> sb.append("\\t");
+				default -> {
+					if (c < 0x20) sb.append("\\u%04x".formatted((int) c));
+					else sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,224 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.backend;
+
+import global.RequestType;
+import global.SettingLoader;
+import server.bandwidth.BandwidthStatusListener;
+import server.bandwidth.ObservableBandwidthStatus;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ResponseCache keeps the encoded bodies of the recent responses, so the repeated requests are answered without
+ * collecting and serializing the records again.
+ * The responses are identified by the request type and its parameters: the time unit and the amount of units for
+ * {@link RequestType#retrieve_last}, the beginning and the end of the period for {@link RequestType#retrieve_range}, and
+ * the same for their latency and upload counterparts, along with the amount of records for
+ * {@link RequestType#retrieve_downsampled}.
+ * The cache listens to the {@link ObservableBandwidthStatus} the responses are built from: a saved record invalidates
+ * the responses which period it falls into, and a changed output destination invalidates all of them.
+ * A response to {@link RequestType#retrieve_last} also becomes invalid once its first record leaves the moving period.
+ * The total size of the cached bodies is limited; the least recently used responses are evicted first.
+ */
+class ResponseCache implements BandwidthStatusListener {
+	private final static int ENTRY_OVERHEAD = 128;
+
+	private final ObservableBandwidthStatus bs;
+	private final long capacity;
+	private final long logLimit;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long size = 0;
+	private long generation = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Key identifies the response.
+	 * @param type type of the request
+	 * @param first time unit for {@link RequestType#retrieve_last}, beginning of the period for
+	 *              {@link RequestType#retrieve_range}
+	 * @param second amount of time units for {@link RequestType#retrieve_last}, end of the period for
+	 *               {@link RequestType#retrieve_range}
+	 * @param third maximum amount of records for {@link RequestType#retrieve_downsampled}, 0 for the other requests
+	 */
+	record Key(RequestType type, long first, long second, long third) {
+		Key(RequestType type, long first, long second) {
+			this(type, first, second, 0);
+		}
+	}
+
+	/**
+	 * Entry is a cached response.
+	 * @param body encoded body of the response
+	 * @param firstRecordTime date of the first record in the response, or {@link Long#MAX_VALUE} if there are no records
+	 */
+	record Entry(byte[] body, long firstRecordTime) {}
+
+	/**
+	 * Creates the cache and registers it as a listener of the {@link ObservableBandwidthStatus}.
+	 * The capacity is acquired through {@link SettingLoader#RESPONSE_CACHE_SIZE}.
+	 * @param bandwidthStatus {@link ObservableBandwidthStatus} the cached responses are built from
+	 */
+	ResponseCache(ObservableBandwidthStatus bandwidthStatus) {
+		this(bandwidthStatus, Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.RESPONSE_CACHE_SIZE)));
+	}
+
+	/**
+	 * Creates the cache and registers it as a listener of the {@link ObservableBandwidthStatus}.
+	 * @param bandwidthStatus {@link ObservableBandwidthStatus} the cached responses are built from
+	 * @param capacity maximum total size of the cached responses in bytes
+	 */
+	ResponseCache(ObservableBandwidthStatus bandwidthStatus, long capacity) {
+		assert bandwidthStatus != null && capacity >= 0;
+
+		bs = bandwidthStatus;
+		this.capacity = capacity;
+		logLimit = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.LOG_LIMIT));
+		bs.addListener(this);
+	}
+
+	/**
+	 * Unregisters the cache from the {@link ObservableBandwidthStatus} and drops the cached responses.
+	 */
+	synchronized void release() {
+		bs.removeListener(this);
+		clear();
+	}
+
+	/**
+	 * Returns the cached response.
+	 * @param key identifier of the response
+	 * @param from current beginning of the period of the request
+	 * @return cached response, or null if it's absent or not valid anymore
+	 */
+	synchronized Entry get(Key key, long from) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.firstRecordTime() < from) {
+			remove(key);
+			entry = null;
+		}
+		(entry != null ? hits : misses).incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Returns the current generation of the cache, which changes every time the responses are invalidated.
+	 * The generation has to be acquired before the records of the response are collected and passed to
+	 * {@link ResponseCache#put(Key, Entry, long)}, so a response built from outdated records isn't cached.
+	 * @return generation of the cache
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+
+	/**
+	 * Returns whether a response of the given size fits into the cache.
+	 * @param length size of the encoded body in bytes
+	 * @return true if the response can be cached, false otherwise
+	 */
+	boolean accepts(long length) {
+		return length + ENTRY_OVERHEAD <= capacity;
+	}
+
+	/**
+	 * Caches the response unless the responses have been invalidated since the generation was acquired
+	 * or the response is bigger than the capacity.
+	 * @param key identifier of the response
+	 * @param entry response
+	 * @param generation generation acquired before the records were collected
+	 */
+	synchronized void put(Key key, Entry entry, long generation) {
+		if (generation != this.generation || !accepts(entry.body().length)) return;
+
+		remove(key);
+		entries.put(key, entry);
+		size += cost(entry);
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > capacity) {
+			size -= cost(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	@Override
+	public synchronized void logged(long time, long speed, String additionalInfo) {
+		generation++;
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, Entry> entry = iterator.next();
+			Key key = entry.getKey();
+			boolean range = key.type() == RequestType.retrieve_range ||
+				key.type() == RequestType.retrieve_latency_range ||
+				key.type() == RequestType.retrieve_upload_range ||
+				key.type() == RequestType.retrieve_downsampled;
+			boolean valid = range && key.second() < time && key.first() >= time - logLimit;
+			if (!valid) {
+				size -= cost(entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void outputDestinationChanged(String destination) {
+		generation++;
+		clear();
+	}
+
+	/**
+	 * Returns the amount of requests answered from the cache.
+	 * @return amount of hits
+	 */
+	long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the amount of requests that weren't answered from the cache.
+	 * @return amount of misses
+	 */
+	long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the total size of the cached responses in bytes.
+	 * @return size in bytes
+	 */
+	synchronized long size() {
+		return size;
+	}
+
+	private void remove(Key key) {
+		Entry removed = entries.remove(key);
+		if (removed != null) size -= cost(removed);
+	}
+
+	private void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	private static long cost(Entry entry) {
+		return entry.body().length + ENTRY_OVERHEAD;
+	}
+}
@@ -0,0 +1,106 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.backend;
+
+import global.RequestType;
+import server.bandwidth.BandwidthRollups;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RollupsJSONWriter serializes {@link BandwidthRollups} into the json object described in
+ * {@link RequestType#retrieve_rollup} straight to an output stream, the same way {@link RecordsJSONWriter} does for
+ * the records.
+ */
+class RollupsJSONWriter {
+	private final static byte[] PREFIX = "{\"records\":[".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] SUFFIX = "]}".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] RECORD_START = "[\"".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] SEPARATOR = "\",\"".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] INFO_START = "\",".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] INFO_END = ",\"".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] RECORD_END = "\"]".getBytes(StandardCharsets.US_ASCII);
+
+	private final BandwidthRollups rollups;
+	private final byte[][] infos;
+	private final byte[] digits = new byte[20];
+	private final long length;
+
+	RollupsJSONWriter(BandwidthRollups rollups) {
+		assert rollups != null;
+
+		this.rollups = rollups;
+		infos = new byte[rollups.getDictionarySize()][];
+		for (int i = 0; i < infos.length; i++) {
+			infos[i] = RecordsJSONWriter.quote(rollups.getDictionaryEntry(i));
+		}
+
+		long length = PREFIX.length + SUFFIX.length;
+		for (int i = 0; i < rollups.size(); i++) {
+			if (i > 0) length++;
+			length += RECORD_START.length + SEPARATOR.length * 4 + INFO_START.length + INFO_END.length;
+			length += RECORD_END.length + infos[rollups.getInfoId(i)].length;
+			length += RecordsJSONWriter.stringSize(rollups.getStart(i));
+			length += RecordsJSONWriter.stringSize(rollups.getAverage(i));
+			length += RecordsJSONWriter.stringSize(rollups.getCount(i));
+			length += RecordsJSONWriter.stringSize(rollups.getMin(i));
+			length += RecordsJSONWriter.stringSize(rollups.getMax(i));
+			length += RecordsJSONWriter.stringSize(rollups.getLast(i));
+		}
+		this.length = length;
+	}
+
+	/**
+	 * Returns the length of the serialized buckets in bytes.
+	 * @return length in bytes
+	 */
+	long length() {
+		return length;
+	}
+
+	/**
+	 * Writes the serialized buckets to the output stream.
+	 * The output stream is expected to be buffered.
+	 * @param os output stream
+	 * @throws IOException if an I/O error occurs
+	 */
+	void write(OutputStream os) throws IOException {
+		os.write(PREFIX);
+		for (int i = 0; i < rollups.size(); i++) {
+			if (i > 0) os.write(',');
+			os.write(RECORD_START);
+			RecordsJSONWriter.writeLong(os, rollups.getStart(i), digits);
+			os.write(SEPARATOR);
+			RecordsJSONWriter.writeLong(os, rollups.getAverage(i), digits);
+			os.write(INFO_START);
+			os.write(infos[rollups.getInfoId(i)]);
+			os.write(INFO_END);
+			RecordsJSONWriter.writeLong(os, rollups.getCount(i), digits);
+			os.write(SEPARATOR);
+			RecordsJSONWriter.writeLong(os, rollups.getMin(i), digits);
+			os.write(SEPARATOR);
+			RecordsJSONWriter.writeLong(os, rollups.getMax(i), digits);
+			os.write(SEPARATOR);
+			RecordsJSONWriter.writeLong(os, rollups.getLast(i), digits);
+			os.write(RECORD_END);
+		}
+		os.write(SUFFIX);
+	}
+}
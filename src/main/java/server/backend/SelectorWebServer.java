@@ -0,0 +1,551 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.backend;
+
+import global.SettingLoader;
+import server.bandwidth.BandwidthStatus;
+import server.bandwidth.DefaultBandwidthStatus;
+import server.bandwidth.ObservableBandwidthStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SelectorWebServer is an implementation of {@link WebServer} interface built on non-blocking channels.
+ * The server thread accepts the connections and distributes them among a small number of event loops, where each
+ * event loop is a thread that reads the requests and writes the responses of its connections using a {@link Selector}.
+ * Since no thread waits for a particular client, slow or idle clients don't hold up the others.
+ * The connections are persistent and pipelined requests are answered in order; the idle timeout and the amount of
+ * requests per connection are acquired through {@link SettingLoader#KEEP_ALIVE_TIMEOUT} and
+ * {@link SettingLoader#KEEP_ALIVE_REQUESTS}.
+ * The records are collected and encoded by a virtual thread per request, so the event loops don't wait for the
+ * storage. The encoded response is handed to the event loop in chunks of {@link SelectorWebServer#CHUNK_SIZE} bytes,
+ * and the virtual thread waits while {@link SelectorWebServer#MAX_PENDING_CHUNKS} chunks are yet to be sent, so a big
+ * response is never buffered whole; the following pipelined requests wait until the response is sent.
+ * The responses are cached by {@link ResponseCache} if the instance of {@link BandwidthStatus} is an
+ * {@link ObservableBandwidthStatus}.
+ * The files of the directory specified by {@link SettingLoader#STATIC_ROOT} are served by {@link StaticFiles}; the big
+ * files are transferred to the socket as it becomes writable, and the following pipelined requests wait until the
+ * transfer is over.
+ * {@link DefaultBandwidthStatus} is the default instance of {@link BandwidthStatus} SelectorWebServer uses.
+ * The default port is acquired through {@link SettingLoader#PORT}.
+ */
+public class SelectorWebServer extends Thread implements WebServer {
+	/**
+	 * CHUNK_SIZE is the size of the chunks the responses are handed to the event loops in
+	 */
+	public final static int CHUNK_SIZE = 64 * 1024;
+	/**
+	 * MAX_PENDING_CHUNKS is the maximum amount of chunks of a response waiting to be sent
+	 */
+	public final static int MAX_PENDING_CHUNKS = 2;
+	private final static int INITIAL_REQUEST_BUFFER_SIZE = 1024;
+	private final static long MAX_IDLE_CHECK_INTERVAL = 1000;
+	private final static long CLOSE_CHECK_INTERVAL = 100;
+	private final static ByteBuffer END_OF_RESPONSE = ByteBuffer.allocate(0);
+
+	private volatile boolean interrupted = false;
+	private final CountDownLatch started = new CountDownLatch(1);
+	private volatile boolean listening = false;
+	private int port;
+	private int eventLoopAmount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private EventLoop[] eventLoops = new EventLoop[0];
+	private final int keepAliveTimeout;
+	private final int keepAliveRequests;
+	private volatile BandwidthStatus bs;
+	private volatile ResponseCache responseCache = null;
+	private volatile StaticFiles staticFiles = StaticFiles.fromSettings();
+	private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+	public SelectorWebServer() {
+		bs = new DefaultBandwidthStatus();
+		port = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.PORT));
+		keepAliveTimeout = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.KEEP_ALIVE_TIMEOUT));
+		keepAliveRequests = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.KEEP_ALIVE_REQUESTS));
+	}
+
+	@Override
+	public void run() {
+		try (
+			Selector selector = Selector.open();
+			ServerSocketChannel serverChannel = ServerSocketChannel.open()
+		) {
+			serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			serverChannel.bind(new InetSocketAddress(port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+			eventLoops = new EventLoop[eventLoopAmount];
+			for (int i = 0; i < eventLoops.length; i++) {
+				eventLoops[i] = new EventLoop();
+				eventLoops[i].start();
+			}
+
+			listening = true;
+			started.countDown();
+			int next = 0;
+			while (!interrupted) {
+				selector.select(100);
+				selector.selectedKeys().clear();
+				SocketChannel client;
+				while ((client = serverChannel.accept()) != null) {
+					eventLoops[next].register(client);
+					next = (next + 1) % eventLoops.length;
+				}
+			}
+		} catch (IOException ignored) {
+		} finally {
+			listening = false;
+			started.countDown();
+			for (EventLoop eventLoop: eventLoops) {
+				eventLoop.interrupt();
+			}
+			workers.shutdownNow();
+		}
+	}
+
+	@Override
+	public void interrupt() {
+		interrupted = true;
+		try {
+			join();
+		} catch (InterruptedException ignored) {}
+	}
+
+	@Override
+	public boolean awaitReady(long timeout) throws InterruptedException {
+		assert timeout >= 0;
+
+		return started.await(timeout, TimeUnit.MILLISECONDS) && listening;
+	}
+
+	@Override
+	public void setPort(int port) {
+		assert port >= 0 && port <= Math.pow(2, 16) - 1;
+		this.port = port;
+	}
+
+	@Override
+	public int getPort() {
+		return port;
+	}
+
+	@Override
+	public BandwidthStatus getBandwidthStatus() {
+		return bs;
+	}
+
+	@Override
+	public void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		assert bandwidthStatus != null;
+
+		if (responseCache != null) responseCache.release();
+		bs = bandwidthStatus;
+		responseCache = bandwidthStatus instanceof ObservableBandwidthStatus obs ? new ResponseCache(obs) : null;
+	}
+
+	/**
+	 * Sets the directory which files are served along with the records.
+	 * @param root directory to serve, or null to stop serving files
+	 * @throws IOException if the directory doesn't exist
+	 */
+	public void setStaticRoot(Path root) throws IOException {
+		staticFiles = root != null ? new StaticFiles(root) : null;
+	}
+
+	/**
+	 * Sets the amount of event loops serving the connections.
+	 * The value is applied when the server starts.
+	 * @param eventLoopAmount amount of event loops
+	 */
+	public void setEventLoopAmount(int eventLoopAmount) {
+		assert eventLoopAmount > 0;
+
+		this.eventLoopAmount = eventLoopAmount;
+	}
+
+	/**
+	 * Returns the amount of event loops serving the connections.
+	 * @return amount of event loops
+	 */
+	public int getEventLoopAmount() {
+		return eventLoopAmount;
+	}
+
+	private static class ResponseBuffer extends ByteArrayOutputStream {
+		private ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	/**
+	 * ChunkedOutput hands the response written by a worker to the event loop of the connection in chunks.
+	 */
+	private static class ChunkedOutput extends OutputStream {
+		private final Connection connection;
+		private final Runnable notifier;
+		private ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+		/**
+		 * @param connection connection the response is sent through
+		 * @param notifier wakes the event loop up once a chunk is handed
+		 */
+		private ChunkedOutput(Connection connection, Runnable notifier) {
+			this.connection = connection;
+			this.notifier = notifier;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!chunk.hasRemaining()) handOver();
+			chunk.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!chunk.hasRemaining()) handOver();
+				int length = Math.min(len, chunk.remaining());
+				chunk.put(b, off, length);
+				off += length;
+				len -= length;
+			}
+		}
+
+		/**
+		 * Hands the rest of the response and marks its end.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (chunk.position() > 0) handOver();
+			handOver(END_OF_RESPONSE);
+		}
+
+		private void handOver() throws IOException {
+			handOver(chunk.flip());
+			chunk = ByteBuffer.allocate(CHUNK_SIZE);
+		}
+
+		/**
+		 * Waits until the event loop has room for the chunk, or throws if the connection has been closed meanwhile.
+		 */
+		private void handOver(ByteBuffer chunk) throws IOException {
+			try {
+				while (!connection.chunks.offer(chunk, CLOSE_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+					if (connection.closed) throw new IOException("The connection has been closed");
+				}
+			} catch (InterruptedException exception) {
+				throw new InterruptedIOException();
+			}
+			notifier.run();
+		}
+	}
+
+	private static class Connection {
+		private ByteBuffer request = ByteBuffer.allocate(INITIAL_REQUEST_BUFFER_SIZE);
+		private ByteBuffer response = null;
+		private boolean working = false;
+		private final ArrayBlockingQueue<ByteBuffer> chunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+		private volatile boolean closed = false;
+		private FileChannel file = null;
+		private long filePosition = 0;
+		private long fileEnd = 0;
+		private final HTTPRequestParser parser = new HTTPRequestParser();
+		private final ResponseBuffer output = new ResponseBuffer();
+		private int served = 0;
+		private boolean closing = false;
+		private long lastActive = System.currentTimeMillis();
+	}
+
+	private class EventLoop extends Thread {
+		private final Selector selector;
+		private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+		private final ConcurrentLinkedQueue<SelectionKey> handed = new ConcurrentLinkedQueue<>();
+		private volatile boolean stopped = false;
+
+		private EventLoop() throws IOException {
+			selector = Selector.open();
+			setDaemon(true);
+		}
+
+		private void register(SocketChannel channel) {
+			pending.add(channel);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			long idleCheckInterval = keepAliveTimeout > 0 ? Math.min(keepAliveTimeout, MAX_IDLE_CHECK_INTERVAL) : 0;
+			long lastIdleCheck = System.currentTimeMillis();
+			try {
+				while (!stopped) {
+					selector.select(idleCheckInterval);
+					SocketChannel channel;
+					while ((channel = pending.poll()) != null) {
+						try {
+							channel.configureBlocking(false);
+							channel.register(selector, SelectionKey.OP_READ, new Connection());
+						} catch (IOException exception) {
+							close(channel);
+						}
+					}
+					SelectionKey handedKey;
+					while ((handedKey = handed.poll()) != null) {
+						try {
+							if (handedKey.isValid()) write(handedKey);
+						} catch (IOException | CancelledKeyException exception) {
+							close(handedKey);
+						}
+					}
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						try {
+							if (key.isReadable()) read(key);
+							else if (key.isWritable()) write(key);
+						} catch (IOException | CancelledKeyException exception) {
+							close(key);
+						}
+					}
+
+					long now = System.currentTimeMillis();
+					if (idleCheckInterval > 0 && now - lastIdleCheck >= idleCheckInterval) {
+						lastIdleCheck = now;
+						for (SelectionKey key: selector.keys()) {
+							Connection connection = (Connection) key.attachment();
+							if (
+								connection.response == null && connection.file == null && !connection.working &&
+								now - connection.lastActive > keepAliveTimeout
+							) {
+								close(key);
+							}
+						}
+					}
+				}
+			} catch (IOException ignored) {
+			} finally {
+				for (SelectionKey key: selector.keys()) {
+					close(key);
+				}
+				try {
+					selector.close();
+				} catch (IOException ignored) {}
+			}
+		}
+
+		private void read(SelectionKey key) throws IOException {
+			SocketChannel channel = (SocketChannel) key.channel();
+			Connection connection = (Connection) key.attachment();
+			if (!connection.request.hasRemaining()) {
+				if (connection.request.capacity() >= HTTPResponse.MAX_REQUEST_SIZE) {
+					respond(key, DefaultHTTPResponses._400);
+					return;
+				}
+				ByteBuffer grown = ByteBuffer.allocate(connection.request.capacity() * 2);
+				connection.request = grown.put(connection.request.flip());
+			}
+			if (channel.read(connection.request) == -1) {
+				close(key);
+				return;
+			}
+			connection.lastActive = System.currentTimeMillis();
+			process(key);
+		}
+
+		/**
+		 * Answers the buffered requests until a file transfer is pending or no complete request is left.
+		 */
+		private void process(SelectionKey key) throws IOException {
+			Connection connection = (Connection) key.attachment();
+			ResponseBuffer response = connection.output;
+			response.reset();
+			connection.request.flip();
+			while (!connection.closing) {
+				try {
+					if (!connection.parser.parse(connection.request)) break;
+				} catch (ProtocolException exception) {
+					connection.closing = true;
+					response.write(DefaultHTTPResponses._400.getBytes());
+					break;
+				}
+
+				connection.served++;
+				boolean keepAlive = connection.served < keepAliveRequests && connection.parser.isKeepAlive();
+				connection.closing = !keepAlive;
+				StaticFiles staticFiles = SelectorWebServer.this.staticFiles;
+				if (staticFiles != null && connection.parser.getPath() != null) {
+					StaticFiles.Response file = staticFiles.respond(connection.parser, keepAlive);
+					response.write(file.head());
+					if (file.content() != null) {
+						byte[] content = new byte[file.content().remaining()];
+						file.content().get(content);
+						response.write(content);
+					}
+					if (file.file() != null) {
+						connection.file = FileChannel.open(file.file(), StandardOpenOption.READ);
+						connection.filePosition = 0;
+						connection.fileEnd = file.length();
+						break;
+					}
+				} else {
+					submit(key, keepAlive);
+					break;
+				}
+			}
+			connection.request.compact();
+
+			if (response.size() > 0 || connection.file != null || connection.working) {
+				connection.response = response.toByteBuffer();
+				key.interestOps(SelectionKey.OP_WRITE);
+				write(key);
+			}
+		}
+
+		/**
+		 * Answers the parsed request of the connection by a worker, which hands the response back in chunks.
+		 * The connection isn't read until the response is over, since the worker uses its parser.
+		 */
+		private void submit(SelectionKey key, boolean keepAlive) {
+			Connection connection = (Connection) key.attachment();
+			BandwidthStatus bs = SelectorWebServer.this.bs;
+			ResponseCache responseCache = SelectorWebServer.this.responseCache;
+			connection.working = true;
+			try {
+				workers.execute(() -> {
+					ChunkedOutput output = new ChunkedOutput(connection, () -> {
+						handed.add(key);
+						selector.wakeup();
+					});
+					try {
+						HTTPResponse.respond(bs, responseCache, connection.parser, output, keepAlive);
+					} catch (IOException | RuntimeException exception) {
+						connection.closing = true;
+					}
+					try {
+						output.close();
+					} catch (IOException ignored) {}
+				});
+			} catch (RejectedExecutionException exception) {
+				connection.working = false;
+				connection.closing = true;
+			}
+		}
+
+		private void respond(SelectionKey key, String response) throws IOException {
+			Connection connection = (Connection) key.attachment();
+			connection.response = ByteBuffer.wrap(response.getBytes());
+			connection.closing = true;
+			key.interestOps(SelectionKey.OP_WRITE);
+			write(key);
+		}
+
+		private void write(SelectionKey key) throws IOException {
+			SocketChannel channel = (SocketChannel) key.channel();
+			Connection connection = (Connection) key.attachment();
+			while (true) {
+				if (connection.response != null) {
+					channel.write(connection.response);
+					if (connection.response.hasRemaining()) {
+						key.interestOps(SelectionKey.OP_WRITE);
+						return;
+					}
+					connection.response = null;
+				}
+				if (!connection.working) break;
+
+				ByteBuffer chunk = connection.chunks.poll();
+				if (chunk == null) {
+					key.interestOps(0);
+					return;
+				}
+				if (chunk == END_OF_RESPONSE) connection.working = false;
+				else connection.response = chunk;
+			}
+			if (connection.file != null) {
+				long transferred = connection.file.transferTo(
+					connection.filePosition,
+					connection.fileEnd - connection.filePosition,
+					channel
+				);
+				if (transferred == 0 && connection.filePosition >= connection.file.size()) {
+					throw new IOException("The file has been truncated");
+				}
+				connection.filePosition += transferred;
+				connection.lastActive = System.currentTimeMillis();
+				if (connection.filePosition < connection.fileEnd) return;
+				close(connection.file);
+				connection.file = null;
+			}
+
+			connection.lastActive = System.currentTimeMillis();
+			if (connection.closing) {
+				close(key);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+				if (connection.request.position() > 0) process(key);
+			}
+		}
+
+		private void close(SelectionKey key) {
+			Connection connection = (Connection) key.attachment();
+			if (connection != null) {
+				connection.closed = true;
+				connection.chunks.clear();
+			}
+			if (connection != null && connection.file != null) {
+				close(connection.file);
+				connection.file = null;
+			}
+			close(key.channel());
+		}
+
+		private void close(Channel channel) {
+			try {
+				channel.close();
+			} catch (IOException ignored) {}
+		}
+
+		@Override
+		public void interrupt() {
+			stopped = true;
+			selector.wakeup();
+			try {
+				join();
+			} catch (InterruptedException ignored) {}
+		}
+	}
+}
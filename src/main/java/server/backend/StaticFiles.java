@@ -0,0 +1,237 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.backend;
+
+import global.SettingLoader;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * StaticFiles serves the files of a directory, so a browser dashboard can be hosted by the web server itself.
+ * The small files are read through {@link CachedFileReader} and sent straight from the cached content, and the files
+ * of at least {@link CachedFileReader#MAPPING_THRESHOLD} bytes bypass the cache and are sent with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets the operating system copy them to
+ * the socket directly.
+ * The responses contain ETag and Last-Modified headers, and the requests with matching If-None-Match or
+ * If-Modified-Since headers are answered with 304 Not Modified.
+ * If the client accepts gzip content coding and the directory contains the file with ".gz" suffix next to the requested
+ * one, the compressed variant is sent instead.
+ * The paths leading outside the directory are rejected. The directory is acquired through
+ * {@link SettingLoader#STATIC_ROOT}.
+ */
+class StaticFiles {
+	private final static String INDEX = "index.html";
+	private final static String GZIP_SUFFIX = ".gz";
+	private final static Map<String, String> CONTENT_TYPES = Map.ofEntries(
+		Map.entry("html", "text/html; charset=utf-8"),
+		Map.entry("htm", "text/html; charset=utf-8"),
+		Map.entry("css", "text/css; charset=utf-8"),
+		Map.entry("js", "text/javascript; charset=utf-8"),
+		Map.entry("mjs", "text/javascript; charset=utf-8"),
+		Map.entry("json", "application/json"),
+		Map.entry("txt", "text/plain; charset=utf-8"),
+		Map.entry("svg", "image/svg+xml"),
+		Map.entry("png", "image/png"),
+		Map.entry("jpg", "image/jpeg"),
+		Map.entry("jpeg", "image/jpeg"),
+		Map.entry("gif", "image/gif"),
+		Map.entry("ico", "image/x-icon"),
+		Map.entry("woff2", "font/woff2"),
+		Map.entry("wasm", "application/wasm")
+	);
+
+	private final Path root;
+	private final CachedFileReader reader = CachedFileReader.getCachedFileReader();
+
+	/**
+	 * Response is a response to a request for a file.
+	 * The head of the response is followed by either the content or the given amount of bytes of the file,
+	 * or by nothing if both are null.
+	 * @param head status line and headers of the response
+	 * @param content content of the file, or null
+	 * @param file file to transfer, or null
+	 * @param length amount of bytes of the file to transfer
+	 */
+	record Response(byte[] head, ByteBuffer content, Path file, long length) {
+		/**
+		 * Writes the body of the response to the channel.
+		 * @param channel channel to write to
+		 * @throws IOException if an I/O error occurs or the file has become shorter
+		 */
+		void writeBody(WritableByteChannel channel) throws IOException {
+			if (content != null) {
+				ByteBuffer remaining = content.duplicate();
+				while (remaining.hasRemaining()) channel.write(remaining);
+			}
+			if (file != null) {
+				try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+					for (long position = 0; position < length; ) {
+						long transferred = fc.transferTo(position, length - position, channel);
+						if (transferred <= 0 && position >= fc.size()) throw new IOException("The file has been truncated");
+						position += transferred;
+					}
+				}
+			}
+		}
+	}
+
+	StaticFiles(Path root) throws IOException {
+		assert root != null;
+
+		this.root = root.toRealPath();
+	}
+
+	/**
+	 * Returns StaticFiles serving the directory specified by {@link SettingLoader#STATIC_ROOT}.
+	 * @return instance of StaticFiles, or null if the directory isn't specified or doesn't exist
+	 */
+	static StaticFiles fromSettings() {
+		try {
+			String root = SettingLoader.getValue(SettingLoader.STATIC_ROOT).orElse(null);
+			return root != null ? new StaticFiles(Path.of(root)) : null;
+		} catch (IOException | InvalidPathException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * Builds the response to the request for a file.
+	 * @param request parsed request which path is not null
+	 * @param keepAlive whether the connection stays open after the response
+	 * @return response
+	 */
+	Response respond(HTTPRequestParser request, boolean keepAlive) {
+		assert request.getPath() != null;
+
+		String connection = keepAlive ? "Connection: keep-alive\n" : "Connection: close\n";
+		Path file = resolve(request.getPath());
+		if (file == null) return error(DefaultHTTPResponses._404, connection);
+
+		try {
+			Path gzipFile = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+			boolean gzipAvailable = Files.isRegularFile(gzipFile);
+			boolean gzip = gzipAvailable && request.isGzipAccepted();
+			Path target = gzip ? gzipFile : file;
+			// the large files are transferred from the disk, so they aren't cached, and the validators are taken from
+			// the same source as the body
+			BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+			CachedFileReader.CachedFile cached = attributes.size() < CachedFileReader.MAPPING_THRESHOLD
+				? reader.get(target)
+				: null;
+			FileTime modified = cached != null ? cached.getLastModified() : attributes.lastModifiedTime();
+			long size = cached != null ? cached.getSize() : attributes.size();
+
+			String eTag = "\"%x-%x%s\"".formatted(modified.toMillis(), size, gzip ? "-gz" : "");
+			ZonedDateTime lastModified = modified.toInstant().atZone(ZoneOffset.UTC);
+			StringBuilder headers = new StringBuilder()
+				.append("ETag: ").append(eTag).append('\n')
+				.append("Last-Modified: ").append(DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified)).append('\n');
+			if (gzipAvailable) headers.append("Vary: Accept-Encoding\n");
+
+			if (notModified(request, eTag, lastModified)) {
+				String head = "HTTP/1.1 304 Not Modified\n" + headers + connection + "\n";
+				return new Response(head.getBytes(StandardCharsets.US_ASCII), null, null, 0);
+			}
+
+			if (gzip) headers.append("Content-Encoding: gzip\n");
+			String head = "HTTP/1.1 200 OK\nContent-Type: %s\nContent-Length: %d\n%s%s\n".formatted(
+				contentType(file),
+				size,
+				headers,
+				connection
+			);
+			byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+			if (request.isHead()) return new Response(headBytes, null, null, 0);
+			if (cached == null) return new Response(headBytes, null, target, size);
+			return new Response(headBytes, cached.getContent(), null, 0);
+		} catch (NoSuchFileException exception) {
+			return error(DefaultHTTPResponses._404, connection);
+		} catch (IOException exception) {
+			return error(DefaultHTTPResponses._500, connection);
+		}
+	}
+
+	/**
+	 * Returns the file the path refers to, or null if it refers to nothing or to something outside the root.
+	 */
+	private Path resolve(String rawPath) {
+		try {
+			String path = URLDecoder.decode(rawPath.replace("+", "%2B"), StandardCharsets.UTF_8);
+			if (path.indexOf('\0') >= 0) return null;
+			while (path.startsWith("/")) path = path.substring(1);
+
+			Path file = root.resolve(path).normalize();
+			if (!file.startsWith(root)) return null;
+			if (Files.isDirectory(file)) file = file.resolve(INDEX);
+			if (!Files.isRegularFile(file)) return null;
+			file = file.toRealPath();
+			return file.startsWith(root) ? file : null;
+		} catch (IllegalArgumentException | IOException exception) {
+			return null;
+		}
+	}
+
+	private static boolean notModified(HTTPRequestParser request, String eTag, ZonedDateTime lastModified) {
+		if (request.getIfNoneMatch() != null) {
+			for (String candidate: request.getIfNoneMatch().split(",")) {
+				candidate = candidate.trim();
+				if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+				if (candidate.equals("*") || candidate.equals(eTag)) return true;
+			}
+			return false;
+		}
+		if (request.getIfModifiedSince() != null) {
+			try {
+				ZonedDateTime since = ZonedDateTime.parse(request.getIfModifiedSince(), DateTimeFormatter.RFC_1123_DATE_TIME);
+				return lastModified.toEpochSecond() <= since.toEpochSecond();
+			} catch (DateTimeParseException exception) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static String contentType(Path file) {
+		String name = file.getFileName().toString();
+		String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+		return CONTENT_TYPES.getOrDefault(extension, "application/octet-stream");
+	}
+
+	private static Response error(String response, String connection) {
+		String head = response.substring(0, response.length() - 1) + connection + "\n";
+		return new Response(head.getBytes(StandardCharsets.US_ASCII), null, null, 0);
+	}
+}
@@ -41,6 +41,14 @@ public interface WebServer {
 	 */
 	void interrupt();
 
+	/**
+	 * Waits until the server starts accepting connections.
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return true if the server accepts connections, false if the time has run out or the server has failed to start
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	boolean awaitReady(long timeout) throws InterruptedException;
+
 	/**
 	 * Sets the listening port of the server.
 	 * @param port listening port of the server
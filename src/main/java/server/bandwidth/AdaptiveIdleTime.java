@@ -0,0 +1,235 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * AdaptiveIdleTime is a scheduling policy that chooses the pause before the next run of a {@link DownloadTest} from
+ * the results of the previous runs.
+ * The policy keeps a baseline of the results: their exponentially weighted moving average and the moving average of
+ * their absolute deviation from it, the same way TCP estimates the round-trip time. A result deviates from the baseline
+ * if it differs from the average by more than {@link AdaptiveIdleTime#DEVIATION_FACTOR} average deviations and by more
+ * than {@link AdaptiveIdleTime#TOLERANCE} of the average. After a deviating result or a run without a result, the pause
+ * drops to the minimum, so short degradations are followed closely; after a stable result, the pause is doubled up to
+ * the maximum, so a stable link isn't tested needlessly. The first {@link AdaptiveIdleTime#WARM_UP} results only build
+ * the baseline and keep the pause. A run skipped on purpose, e.g. by {@link DataBudget}, isn't a failure of the link, so
+ * {@link AdaptiveIdleTime#skip()} backs the pause off to the maximum instead.
+ * The last {@link AdaptiveIdleTime#MAX_DECISIONS} decisions are kept and available through
+ * {@link AdaptiveIdleTime#getDecisions()}; the schedulers also log every decision through the {@link BandwidthStatus} of
+ * the test, see {@link Decision#info()}.
+ */
+public class AdaptiveIdleTime {
+	/**
+	 * DEVIATION_FACTOR is the amount of average deviations a result has to differ from the average by to deviate
+	 */
+	public final static int DEVIATION_FACTOR = 4;
+	/**
+	 * TOLERANCE is the share of the average a result has to differ from the average by to deviate
+	 */
+	public final static double TOLERANCE = 0.1;
+	/**
+	 * WARM_UP is the amount of results which only build the baseline
+	 */
+	public final static int WARM_UP = 3;
+	/**
+	 * MAX_DECISIONS is the amount of the last decisions kept by the policy
+	 */
+	public final static int MAX_DECISIONS = 64;
+	/**
+	 * INFO_PREFIX is the prefix of the additional information of the records of the decisions
+	 */
+	public final static String INFO_PREFIX = "idle_";
+
+	private final long min;
+	private final long max;
+	private final String info;
+	private long delay;
+	private double average = 0;
+	private double deviation = 0;
+	private int results = 0;
+	private final ArrayDeque<Decision> decisions = new ArrayDeque<>();
+
+	/**
+	 * Reason is the cause of a decision.
+	 */
+	public enum Reason {
+		/**
+		 * The result has been used to build the baseline
+		 */
+		WARM_UP,
+		/**
+		 * The result is within the baseline
+		 */
+		STABLE,
+		/**
+		 * The result deviates from the baseline
+		 */
+		DEVIATION,
+		/**
+		 * The run hasn't logged a result
+		 */
+		NO_RESULT,
+		/**
+		 * The run has been skipped on purpose
+		 */
+		SKIPPED
+	}
+
+	/**
+	 * Decision is the pause chosen after a run.
+	 * @param time time of the decision in milliseconds since Jan. 1st 1970
+	 * @param result result of the run, or -1 if there is none
+	 * @param average average of the results after the run
+	 * @param delay chosen pause in milliseconds
+	 * @param reason cause of the decision
+	 */
+	public record Decision(long time, long result, long average, long delay, Reason reason) {
+		/**
+		 * Returns the additional information of the record of the decision, which contains the chosen pause: it's
+		 * {@link AdaptiveIdleTime#INFO_PREFIX} followed by the lower case name of the reason.
+		 * @return additional information
+		 */
+		public String info() {
+			return INFO_PREFIX + reason.name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * Creates the policy.
+	 * @param delay initial pause in milliseconds, it's brought within the bounds
+	 * @param min minimum pause in milliseconds
+	 * @param max maximum pause in milliseconds
+	 * @param info additional information of the records which are the results of the runs, or null to use the first
+	 *             record logged by a run
+	 */
+	public AdaptiveIdleTime(long delay, long min, long max, String info) {
+		assert min > 0 && min <= max;
+
+		this.min = min;
+		this.max = max;
+		this.info = info;
+		this.delay = Math.clamp(delay, min, max);
+	}
+
+	/**
+	 * Chooses the pause after the run, which result has been logged to the {@link BandwidthStatus}.
+	 * @param bandwidthStatus status the run has logged its result to
+	 * @param from time the run has started at in milliseconds since Jan. 1st 1970
+	 * @return pause in milliseconds
+	 */
+	public long next(BandwidthStatus bandwidthStatus, long from) {
+		assert bandwidthStatus != null;
+
+		long result = -1;
+		try {
+			BandwidthRecords records = bandwidthStatus.collectRecords(from);
+			for (int i = 0; i < records.size(); i++) {
+				if (info == null || info.equals(records.getInfo(i))) {
+					result = records.getSpeed(i);
+					break;
+				}
+			}
+		} catch (IOException ignored) {}
+		return next(result);
+	}
+
+	/**
+	 * Chooses the pause after the run.
+	 * @param result result of the run, or -1 if the run hasn't logged a result
+	 * @return pause in milliseconds
+	 */
+	public synchronized long next(long result) {
+		Reason reason;
+		if (result < 0) {
+			reason = Reason.NO_RESULT;
+			delay = min;
+		} else if (results < WARM_UP) {
+			reason = Reason.WARM_UP;
+			average = (average * results + result) / (results + 1);
+			deviation = (deviation * results + Math.abs(result - average)) / (results + 1);
+			results++;
+		} else {
+			double difference = Math.abs(result - average);
+			if (difference > DEVIATION_FACTOR * deviation && difference > TOLERANCE * average) {
+				reason = Reason.DEVIATION;
+				delay = min;
+			} else {
+				reason = Reason.STABLE;
+				delay = Math.min(delay * 2, max);
+			}
+			// a lasting change of the link becomes the new baseline, and the pause grows again
+			deviation += (difference - deviation) / 4;
+			average += (result - average) / 8;
+			results++;
+		}
+
+		return decide(result, reason);
+	}
+
+	/**
+	 * Chooses the pause after a run which has been skipped on purpose.
+	 * The baseline is kept, and the pause is backed off to the maximum.
+	 * @return pause in milliseconds
+	 */
+	public synchronized long skip() {
+		delay = max;
+		return decide(-1, Reason.SKIPPED);
+	}
+
+	private long decide(long result, Reason reason) {
+		if (decisions.size() == MAX_DECISIONS) decisions.removeFirst();
+		decisions.addLast(new Decision(System.currentTimeMillis(), result, Math.round(average), delay, reason));
+		return delay;
+	}
+
+	/**
+	 * Returns the last decisions of the policy.
+	 * @return unmodifiable list of the decisions in chronological order
+	 */
+	public synchronized List<Decision> getDecisions() {
+		return List.copyOf(decisions);
+	}
+
+	/**
+	 * Returns the current pause.
+	 * @return pause in milliseconds
+	 */
+	public synchronized long getDelay() {
+		return delay;
+	}
+
+	/**
+	 * Returns the minimum pause.
+	 * @return pause in milliseconds
+	 */
+	public long getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the maximum pause.
+	 * @return pause in milliseconds
+	 */
+	public long getMax() {
+		return max;
+	}
+}
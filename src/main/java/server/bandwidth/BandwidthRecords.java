@@ -0,0 +1,196 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.function.Predicate;
+
+/**
+ * BandwidthRecords is a compact columnar collection of records returned by
+ * {@link BandwidthStatus#collectRecords(long, long)}.
+ * The dates and the speeds are kept in parallel primitive arrays, and the additional information is dictionary-encoded,
+ * so every distinct string is stored once and the records refer to it by its identifier.
+ * The records are kept in the order they were added, which is the chronological order for the collected records.
+ */
+public class BandwidthRecords {
+	private long[] times;
+	private long[] speeds;
+	private int[] infoIds;
+	private int size = 0;
+	private final ArrayList<String> dictionary = new ArrayList<>();
+	private final HashMap<String, Integer> dictionaryIds = new HashMap<>();
+
+	public BandwidthRecords() {
+		this(16);
+	}
+
+	public BandwidthRecords(int capacity) {
+		assert capacity >= 0;
+
+		times = new long[Math.max(capacity, 1)];
+		speeds = new long[times.length];
+		infoIds = new int[times.length];
+	}
+
+	/**
+	 * Appends the record.
+	 * @param time date of the record in milliseconds since Jan. 1st 1970
+	 * @param speed speed in bits per second
+	 * @param info additional information
+	 */
+	public void add(long time, long speed, String info) {
+		assert info != null;
+
+		Integer infoId = dictionaryIds.get(info);
+		if (infoId == null) {
+			dictionary.add(info);
+			infoId = dictionary.size() - 1;
+			dictionaryIds.put(info, infoId);
+		}
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size * 2);
+			speeds = Arrays.copyOf(speeds, size * 2);
+			infoIds = Arrays.copyOf(infoIds, size * 2);
+		}
+		times[size] = time;
+		speeds[size] = speed;
+		infoIds[size] = infoId;
+		size++;
+	}
+
+	/**
+	 * Parses the record in the text format of {@link DefaultBandwidthStatus} and appends it.
+	 * @param record record, which consists of the date, the speed, and the additional information separated by spaces
+	 * @return the date of the record
+	 * @throws NumberFormatException if the record is malformed
+	 */
+	long addLine(String record) {
+		int dateEnd = record.indexOf(' ');
+		int speedEnd = record.indexOf(' ', dateEnd + 1);
+		if (dateEnd < 0) throw new NumberFormatException("The record has no speed: " + record);
+
+		long time = Long.parseLong(record, 0, dateEnd, 10);
+		long speed = Long.parseLong(record, dateEnd + 1, speedEnd < 0 ? record.length() : speedEnd, 10);
+		add(time, speed, speedEnd < 0 ? "" : record.substring(speedEnd + 1));
+		return time;
+	}
+
+	/**
+	 * Returns the amount of records.
+	 * @return amount of records
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the date of the record.
+	 * @param index index of the record
+	 * @return date of the record in milliseconds since Jan. 1st 1970
+	 */
+	public long getTime(int index) {
+		assert index >= 0 && index < size;
+		return times[index];
+	}
+
+	/**
+	 * Returns the speed of the record.
+	 * @param index index of the record
+	 * @return speed in bits per second
+	 */
+	public long getSpeed(int index) {
+		assert index >= 0 && index < size;
+		return speeds[index];
+	}
+
+	/**
+	 * Returns the identifier of the additional information of the record.
+	 * @param index index of the record
+	 * @return identifier of the additional information in the dictionary
+	 */
+	public int getInfoId(int index) {
+		assert index >= 0 && index < size;
+		return infoIds[index];
+	}
+
+	/**
+	 * Returns the additional information of the record.
+	 * @param index index of the record
+	 * @return additional information
+	 */
+	public String getInfo(int index) {
+		return dictionary.get(getInfoId(index));
+	}
+
+	/**
+	 * Returns the amount of distinct strings of additional information.
+	 * @return size of the dictionary
+	 */
+	public int getDictionarySize() {
+		return dictionary.size();
+	}
+
+	/**
+	 * Returns the additional information associated with the identifier.
+	 * @param infoId identifier of the additional information
+	 * @return additional information
+	 */
+	public String getDictionaryEntry(int infoId) {
+		return dictionary.get(infoId);
+	}
+
+	/**
+	 * Returns the records which additional information matches the predicate, keeping their order.
+	 * The predicate is evaluated once per distinct string of additional information. If all the records match, the same
+	 * instance is returned.
+	 * @param predicate predicate of the additional information
+	 * @return matching records
+	 */
+	public BandwidthRecords filter(Predicate<String> predicate) {
+		assert predicate != null;
+
+		boolean[] matches = new boolean[dictionary.size()];
+		boolean all = true;
+		for (int i = 0; i < matches.length; i++) {
+			matches[i] = predicate.test(dictionary.get(i));
+			all &= matches[i];
+		}
+		if (all) return this;
+
+		BandwidthRecords filtered = new BandwidthRecords(size);
+		for (int i = 0; i < size; i++) {
+			if (matches[infoIds[i]]) filtered.add(times[i], speeds[i], dictionary.get(infoIds[i]));
+		}
+		return filtered;
+	}
+
+	/**
+	 * Returns the records in the format of {@link BandwidthStatus#collect(long, long)}.
+	 * @return linked list of records
+	 */
+	public LinkedList<String[]> toList() {
+		LinkedList<String[]> records = new LinkedList<>();
+		for (int i = 0; i < size; i++) {
+			records.add(new String[] {Long.toString(times[i]), Long.toString(speeds[i]), getInfo(i)});
+		}
+		return records;
+	}
+}
@@ -0,0 +1,369 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * BandwidthRollups is a compact columnar collection of aggregated records returned by
+ * {@link BandwidthStatus#collectRollups(long, long, Resolution)}.
+ * The records are aggregated into buckets of a fixed {@link Resolution}, which are aligned to Jan. 1st 1970 UTC, and
+ * every bucket aggregates the records with the same additional information: their count, the minimum, the maximum,
+ * the sum, and the last of their speeds. The additional information is dictionary-encoded the same way as in
+ * {@link BandwidthRecords}.
+ * The buckets are kept in the order they were opened, which is the chronological order if the records are folded
+ * chronologically. A record older than the last bucket of its additional information is folded into that bucket.
+ */
+public class BandwidthRollups {
+	private final Resolution resolution;
+	private long[] starts;
+	private int[] counts;
+	private long[] mins;
+	private long[] maxes;
+	private long[] sums;
+	private long[] lasts;
+	private int[] infoIds;
+	private int size = 0;
+	private final ArrayList<String> dictionary = new ArrayList<>();
+	private final HashMap<String, Integer> dictionaryIds = new HashMap<>();
+	private int[] lastBuckets = new int[0];
+
+	/**
+	 * Resolution is the length of the buckets.
+	 */
+	public enum Resolution {
+		MINUTE(60_000L),
+		HOUR(60 * 60_000L),
+		DAY(24 * 60 * 60_000L);
+
+		private final long length;
+
+		Resolution(long length) {
+			this.length = length;
+		}
+
+		/**
+		 * Returns the length of a bucket.
+		 * @return length in milliseconds
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns the beginning of the bucket the time falls into.
+		 * The times too close to {@link Long#MIN_VALUE} to have an aligned bucket fall into the bucket beginning at
+		 * {@link Long#MIN_VALUE}.
+		 * @param time time in milliseconds since Jan. 1st 1970
+		 * @return beginning of the bucket in milliseconds since Jan. 1st 1970
+		 */
+		public long bucket(long time) {
+			long offset = Math.floorMod(time, length);
+			return time < Long.MIN_VALUE + offset ? Long.MIN_VALUE : time - offset;
+		}
+	}
+
+	public BandwidthRollups(Resolution resolution) {
+		this(resolution, 16);
+	}
+
+	public BandwidthRollups(Resolution resolution, int capacity) {
+		assert resolution != null && capacity >= 0;
+
+		this.resolution = resolution;
+		starts = new long[Math.max(capacity, 1)];
+		counts = new int[starts.length];
+		mins = new long[starts.length];
+		maxes = new long[starts.length];
+		sums = new long[starts.length];
+		lasts = new long[starts.length];
+		infoIds = new int[starts.length];
+	}
+
+	/**
+	 * Folds the record into the bucket it falls into, opening the bucket if it's not the last one of the additional
+	 * information.
+	 * @param time date of the record in milliseconds since Jan. 1st 1970
+	 * @param speed speed in bits per second
+	 * @param info additional information
+	 */
+	public void fold(long time, long speed, String info) {
+		int infoId = infoId(info);
+		int last = lastBuckets[infoId];
+		if (last != -1 && starts[last] >= resolution.bucket(time)) {
+			counts[last]++;
+			mins[last] = Math.min(mins[last], speed);
+			maxes[last] = Math.max(maxes[last], speed);
+			sums[last] += speed;
+			lasts[last] = speed;
+		} else {
+			add(resolution.bucket(time), 1, speed, speed, speed, speed, infoId);
+		}
+	}
+
+	/**
+	 * Appends the bucket.
+	 * @param start beginning of the bucket in milliseconds since Jan. 1st 1970
+	 * @param count amount of the aggregated records
+	 * @param min minimum speed in bits per second
+	 * @param max maximum speed in bits per second
+	 * @param sum sum of the speeds in bits per second
+	 * @param last speed of the last record in bits per second
+	 * @param info additional information
+	 */
+	public void add(long start, int count, long min, long max, long sum, long last, String info) {
+		assert count > 0;
+
+		add(start, count, min, max, sum, last, infoId(info));
+	}
+
+	private void add(long start, int count, long min, long max, long sum, long last, int infoId) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+			mins = Arrays.copyOf(mins, size * 2);
+			maxes = Arrays.copyOf(maxes, size * 2);
+			sums = Arrays.copyOf(sums, size * 2);
+			lasts = Arrays.copyOf(lasts, size * 2);
+			infoIds = Arrays.copyOf(infoIds, size * 2);
+		}
+		starts[size] = start;
+		counts[size] = count;
+		mins[size] = min;
+		maxes[size] = max;
+		sums[size] = sum;
+		lasts[size] = last;
+		infoIds[size] = infoId;
+		lastBuckets[infoId] = size;
+		size++;
+	}
+
+	private int infoId(String info) {
+		assert info != null;
+
+		Integer infoId = dictionaryIds.get(info);
+		if (infoId == null) {
+			dictionary.add(info);
+			infoId = dictionary.size() - 1;
+			dictionaryIds.put(info, infoId);
+			lastBuckets = Arrays.copyOf(lastBuckets, dictionary.size());
+			lastBuckets[infoId] = -1;
+		}
+		return infoId;
+	}
+
+	/**
+	 * Removes the buckets which begin before the given time.
+	 * The buckets are expected to be in chronological order.
+	 * @param time time in milliseconds since Jan. 1st 1970
+	 */
+	public void removeBefore(long time) {
+		int removed = lowerBound(time);
+		if (removed == 0) return;
+
+		size -= removed;
+		System.arraycopy(starts, removed, starts, 0, size);
+		System.arraycopy(counts, removed, counts, 0, size);
+		System.arraycopy(mins, removed, mins, 0, size);
+		System.arraycopy(maxes, removed, maxes, 0, size);
+		System.arraycopy(sums, removed, sums, 0, size);
+		System.arraycopy(lasts, removed, lasts, 0, size);
+		System.arraycopy(infoIds, removed, infoIds, 0, size);
+		for (int i = 0; i < lastBuckets.length; i++) {
+			lastBuckets[i] = lastBuckets[i] >= removed ? lastBuckets[i] - removed : -1;
+		}
+	}
+
+	/**
+	 * Returns the buckets which overlap the period, keeping their order.
+	 * The buckets are expected to be in chronological order.
+	 * @param from inclusive absolute time of the beginning of the period in milliseconds since Jan. 1st 1970
+	 * @param to inclusive absolute time of the end of the period in milliseconds since Jan. 1st 1970
+	 * @return overlapping buckets
+	 */
+	public BandwidthRollups range(long from, long to) {
+		BandwidthRollups range = new BandwidthRollups(resolution);
+		for (int i = lowerBound(resolution.bucket(from)); i < size && starts[i] <= to; i++) {
+			range.add(starts[i], counts[i], mins[i], maxes[i], sums[i], lasts[i], getInfo(i));
+		}
+		return range;
+	}
+
+	/**
+	 * Returns the buckets which additional information matches the predicate, keeping their order.
+	 * The predicate is evaluated once per distinct string of additional information. If all the buckets match, the same
+	 * instance is returned.
+	 * @param predicate predicate of the additional information
+	 * @return matching buckets
+	 */
+	public BandwidthRollups filter(Predicate<String> predicate) {
+		assert predicate != null;
+
+		boolean[] matches = new boolean[dictionary.size()];
+		boolean all = true;
+		for (int i = 0; i < matches.length; i++) {
+			matches[i] = predicate.test(dictionary.get(i));
+			all &= matches[i];
+		}
+		if (all) return this;
+
+		BandwidthRollups filtered = new BandwidthRollups(resolution, size);
+		for (int i = 0; i < size; i++) {
+			if (matches[infoIds[i]]) filtered.add(starts[i], counts[i], mins[i], maxes[i], sums[i], lasts[i], getInfo(i));
+		}
+		return filtered;
+	}
+
+	/**
+	 * Returns the logical position of the first bucket which beginning is not lower than the given time.
+	 */
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (starts[middle] < time) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the length of the buckets.
+	 * @return resolution of the buckets
+	 */
+	public Resolution getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Returns the amount of buckets.
+	 * @return amount of buckets
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the beginning of the bucket.
+	 * @param index index of the bucket
+	 * @return beginning of the bucket in milliseconds since Jan. 1st 1970
+	 */
+	public long getStart(int index) {
+		assert index >= 0 && index < size;
+		return starts[index];
+	}
+
+	/**
+	 * Returns the amount of records aggregated by the bucket.
+	 * @param index index of the bucket
+	 * @return amount of records
+	 */
+	public int getCount(int index) {
+		assert index >= 0 && index < size;
+		return counts[index];
+	}
+
+	/**
+	 * Returns the minimum speed of the bucket.
+	 * @param index index of the bucket
+	 * @return speed in bits per second
+	 */
+	public long getMin(int index) {
+		assert index >= 0 && index < size;
+		return mins[index];
+	}
+
+	/**
+	 * Returns the maximum speed of the bucket.
+	 * @param index index of the bucket
+	 * @return speed in bits per second
+	 */
+	public long getMax(int index) {
+		assert index >= 0 && index < size;
+		return maxes[index];
+	}
+
+	/**
+	 * Returns the sum of the speeds of the bucket.
+	 * @param index index of the bucket
+	 * @return sum of the speeds in bits per second
+	 */
+	public long getSum(int index) {
+		assert index >= 0 && index < size;
+		return sums[index];
+	}
+
+	/**
+	 * Returns the speed of the last record of the bucket.
+	 * @param index index of the bucket
+	 * @return speed in bits per second
+	 */
+	public long getLast(int index) {
+		assert index >= 0 && index < size;
+		return lasts[index];
+	}
+
+	/**
+	 * Returns the average speed of the bucket.
+	 * @param index index of the bucket
+	 * @return speed in bits per second
+	 */
+	public long getAverage(int index) {
+		return getSum(index) / getCount(index);
+	}
+
+	/**
+	 * Returns the identifier of the additional information of the bucket.
+	 * @param index index of the bucket
+	 * @return identifier of the additional information in the dictionary
+	 */
+	public int getInfoId(int index) {
+		assert index >= 0 && index < size;
+		return infoIds[index];
+	}
+
+	/**
+	 * Returns the additional information of the bucket.
+	 * @param index index of the bucket
+	 * @return additional information
+	 */
+	public String getInfo(int index) {
+		return dictionary.get(getInfoId(index));
+	}
+
+	/**
+	 * Returns the amount of distinct strings of additional information.
+	 * @return size of the dictionary
+	 */
+	public int getDictionarySize() {
+		return dictionary.size();
+	}
+
+	/**
+	 * Returns the additional information associated with the identifier.
+	 * @param infoId identifier of the additional information
+	 * @return additional information
+	 */
+	public String getDictionaryEntry(int infoId) {
+		return dictionary.get(infoId);
+	}
+}
@@ -18,6 +18,10 @@
 package server.bandwidth;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.LinkedList;
 
 /**
@@ -27,12 +31,28 @@ import java.util.LinkedList;
  */
 public interface BandwidthStatus {
 	/**
-	 * Saves the information about the network speed
+	 * Saves the information about the network speed with the current date.
+	 * Invocation of this method is analogous to the invocation of log(System.currentTimeMillis(), speed, additionalInfo).
+	 * The implementations that serialize the logging take the date while holding their lock, so the records logged by
+	 * several threads at once are kept in chronological order.
 	 * @param speed speed in bits per second
 	 * @param additionalInfo appendable information
 	 * @throws IOException if an I/O error occurs
 	 */
-	void log(long speed, String additionalInfo) throws IOException;
+	default void log(long speed, String additionalInfo) throws IOException {
+		log(System.currentTimeMillis(), speed, additionalInfo);
+	}
+
+	/**
+	 * Saves the information about the network speed with the given date.
+	 * The records are expected to be logged in chronological order, so the date is supposed to be taken right before
+	 * the invocation; it lets several {@link BandwidthStatus}es store the same record with the same date.
+	 * @param time date of the record in milliseconds since Jan. 1st 1970
+	 * @param speed speed in bits per second
+	 * @param additionalInfo appendable information
+	 * @throws IOException if an I/O error occurs
+	 */
+	void log(long time, long speed, String additionalInfo) throws IOException;
 
 	/**
 	 * Sets destination of the status file
@@ -40,6 +60,19 @@ public interface BandwidthStatus {
 	 */
 	void setOutputDestination(String destination);
 
+	/**
+	 * Makes sure the logged records are written to the storage device, so they survive the shutdown of the machine.
+	 * The default implementation forces the status file to the storage device if the output destination is a file.
+	 * @throws IOException if an I/O error occurs
+	 */
+	default void flush() throws IOException {
+		Path destination = Path.of(getOutputDestination());
+		if (!Files.isRegularFile(destination)) return;
+		try (FileChannel fc = FileChannel.open(destination, StandardOpenOption.WRITE)) {
+			fc.force(true);
+		}
+	}
+
 	/**
 	 * Returns  destination of the status file
 	 * @return  destination of the file
@@ -64,4 +97,61 @@ public interface BandwidthStatus {
 	 * @throws IOException if an I/O error occurred
 	 */
 	LinkedList<String[]> collect(long from, long to) throws IOException;
+
+	/**
+	 * Invocation of this method is analogous to the invocation of collectRecords(from, System.currentTimeMillis()).
+	 * @param from inclusive absolute time of the beginning of the period in milliseconds since Jan. 1st 1970
+	 * @return columnar collection of records
+	 * @throws IOException if an I/O error occurred
+	 */
+	default BandwidthRecords collectRecords(long from) throws IOException {
+		return collectRecords(from, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the records within a specified time period as a {@link BandwidthRecords} in chronological order.
+	 * The default implementation converts the result of {@link BandwidthStatus#collect(long, long)}; the implementations
+	 * are encouraged to override it, so the records are stored in the columnar form straight away.
+	 * @param from inclusive absolute time of the beginning of the period in milliseconds since Jan. 1st 1970
+	 * @param to inclusive absolute time of the end of the period in milliseconds since Jan. 1st 1970
+	 * @return columnar collection of records
+	 * @throws IOException if an I/O error occurred
+	 */
+	default BandwidthRecords collectRecords(long from, long to) throws IOException {
+		LinkedList<String[]> list = collect(from, to);
+		BandwidthRecords records = new BandwidthRecords(list.size());
+		for (String[] record: list) {
+			records.add(Long.parseLong(record[0]), Long.parseLong(record[1]), record.length > 2 ? record[2] : "");
+		}
+		return records;
+	}
+
+	/**
+	 * Returns the records within a specified time period aggregated into the buckets of the given resolution, as
+	 * a {@link BandwidthRollups} in chronological order.
+	 * The period is extended to the whole buckets it overlaps, so every returned bucket aggregates all of its records.
+	 * The default implementation aggregates the result of {@link BandwidthStatus#collectRecords(long, long)}; the
+	 * implementations are encouraged to override it, so the buckets are maintained as the records are logged.
+	 * @param from inclusive absolute time of the beginning of the period in milliseconds since Jan. 1st 1970
+	 * @param to inclusive absolute time of the end of the period in milliseconds since Jan. 1st 1970
+	 * @param resolution length of the buckets
+	 * @return columnar collection of buckets
+	 * @throws IOException if an I/O error occurred
+	 */
+	default BandwidthRollups collectRollups(
+		long from,
+		long to,
+		BandwidthRollups.Resolution resolution
+	) throws IOException {
+		long end = resolution.bucket(to);
+		BandwidthRecords records = collectRecords(
+			resolution.bucket(from),
+			end > Long.MAX_VALUE - resolution.getLength() ? Long.MAX_VALUE : end + resolution.getLength() - 1
+		);
+		BandwidthRollups rollups = new BandwidthRollups(resolution);
+		for (int i = 0; i < records.size(); i++) {
+			rollups.fold(records.getTime(i), records.getSpeed(i), records.getInfo(i));
+		}
+		return rollups;
+	}
 }
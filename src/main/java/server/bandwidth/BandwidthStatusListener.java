@@ -0,0 +1,39 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+/**
+ * BandwidthStatusListener receives notifications about the changes of an {@link ObservableBandwidthStatus}.
+ */
+public interface BandwidthStatusListener {
+	/**
+	 * Invoked after a record has been saved.
+	 * @param time time in milliseconds since Jan. 1st 1970 taken right before the record was saved,
+	 *             so the date of the saved record is not lower than it
+	 * @param speed speed in bits per second
+	 * @param additionalInfo appendable information
+	 */
+	void logged(long time, long speed, String additionalInfo);
+
+	/**
+	 * Invoked after the destination of the status file has been changed, so all the previously collected records may
+	 * be different.
+	 * @param destination new destination of the status file
+	 */
+	void outputDestinationChanged(String destination);
+}
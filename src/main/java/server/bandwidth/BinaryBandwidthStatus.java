@@ -0,0 +1,274 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * BinaryBandwidthStatus is an implementation of {@link BandwidthStatus} that stores the records in a binary file of
+ * fixed-width records. Every record consists of the date in milliseconds since Jan. 1st 1970, the speed in bits per
+ * second, and the identifier of the additional information.
+ * The additional information is kept in a dictionary file next to the status file, which name is the name of the
+ * status file followed by {@link BinaryBandwidthStatus#DICTIONARY_SUFFIX}, where the line number is the identifier.
+ * Since the records are sorted by the date, {@link BinaryBandwidthStatus#collect(long, long)} maps the status file
+ * to memory, looks for the beginning of the period using binary search, and reads only the matching records.
+ * The capacity is limited by {@link SettingLoader#LOG_LIMIT}; the expired records are removed in batches once they
+ * make up a noticeable part of the file, so some of them may be returned before the removal.
+ * The removal renumbers the additional information, so both files are replaced: the new status file and the new
+ * dictionary are written next to them first, and the replacement of the status file commits the removal. If it's
+ * interrupted, the leftover new dictionary is put in place or discarded on the next load, depending on whether the
+ * status file has been replaced, so the records never refer to the wrong dictionary.
+ * The destination of the status file is acquired through {@link SettingLoader#OUTPUT_DESTINATION} by default.
+ */
+public class BinaryBandwidthStatus implements BandwidthStatus {
+	/**
+	 * RECORD_SIZE is the size of a single record in bytes
+	 */
+	public final static int RECORD_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+	/**
+	 * DICTIONARY_SUFFIX is appended to the name of the status file to get the name of the dictionary file
+	 */
+	public final static String DICTIONARY_SUFFIX = ".info";
+	private final static int PURGE_RATIO = 8;
+	private final static String TMP_SUFFIX = ".tmp";
+
+	private String outputDst = SettingLoader.getValue(SettingLoader.Parameter.OUTPUT_DESTINATION);
+	private ArrayList<String> dictionary = null;
+	private HashMap<String, Integer> dictionaryIds = null;
+
+	@Override
+	public synchronized void log(long speed, String additionalInfo) throws IOException {
+		log(System.currentTimeMillis(), speed, additionalInfo);
+	}
+
+	@Override
+	public synchronized void log(long time, long speed, String additionalInfo) throws IOException {
+		additionalInfo = additionalInfo.replace(System.lineSeparator(), " ").replace("\n", " ").replace("\r", " ");
+
+		int infoId = infoId(additionalInfo);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		record.putLong(time).putLong(speed).putInt(infoId).flip();
+		try (
+			FileChannel fc = FileChannel.open(
+				Path.of(outputDst),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND
+			)
+		) {
+			while (record.hasRemaining()) fc.write(record);
+		}
+
+		purge();
+	}
+
+	private int infoId(String info) throws IOException {
+		loadDictionary(false);
+		Integer id = dictionaryIds.get(info);
+		if (id != null) return id;
+
+		Files.writeString(
+			dictionaryPath(),
+			info + "\n",
+			StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.APPEND
+		);
+		dictionary.add(info);
+		dictionaryIds.put(info, dictionary.size() - 1);
+		return dictionary.size() - 1;
+	}
+
+	private void loadDictionary(boolean force) throws IOException {
+		if (dictionary != null && !force) return;
+
+		recover();
+		dictionary = new ArrayList<>();
+		dictionaryIds = new HashMap<>();
+		if (!Files.exists(dictionaryPath())) return;
+		for (String info: Files.readAllLines(dictionaryPath(), StandardCharsets.UTF_8)) {
+			dictionary.add(info);
+			dictionaryIds.putIfAbsent(info, dictionary.size() - 1);
+		}
+	}
+
+	private String info(int id) throws IOException {
+		if (id >= dictionary.size()) loadDictionary(true);
+		return id < dictionary.size() ? dictionary.get(id) : "";
+	}
+
+	private Path dictionaryPath() {
+		return Path.of(outputDst + DICTIONARY_SUFFIX);
+	}
+
+	/**
+	 * Completes or discards the interrupted removal of the expired records.
+	 * The new dictionary is written after the new status file, so if it exists, the new status file is complete, and
+	 * it's gone only if it has replaced the status file.
+	 */
+	private void recover() throws IOException {
+		Path tmpStatusPath = Path.of(outputDst + TMP_SUFFIX);
+		Path tmpDictionaryPath = Path.of(outputDst + DICTIONARY_SUFFIX + TMP_SUFFIX);
+		if (!Files.exists(tmpDictionaryPath)) {
+			Files.deleteIfExists(tmpStatusPath);
+		} else if (Files.exists(tmpStatusPath)) {
+			Files.delete(tmpDictionaryPath);
+			Files.delete(tmpStatusPath);
+		} else {
+			Files.move(tmpDictionaryPath, dictionaryPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	private void purge() throws IOException {
+		long limit = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.LOG_LIMIT));
+		long now = System.currentTimeMillis();
+		Path statusPath = Path.of(outputDst);
+		Path tmpStatusPath = Path.of(outputDst + TMP_SUFFIX);
+		Path tmpDictionaryPath = Path.of(outputDst + DICTIONARY_SUFFIX + TMP_SUFFIX);
+
+		ArrayList<String> newDictionary = new ArrayList<>();
+		HashMap<String, Integer> newDictionaryIds = new HashMap<>();
+		try (FileChannel fc = FileChannel.open(statusPath, StandardOpenOption.READ)) {
+			MappedByteBuffer records = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			int amount = (int) (fc.size() / RECORD_SIZE);
+			if (amount == 0 || now - records.getLong(0) <= limit) return;
+
+			int firstValid = lowerBound(records, amount, now - limit);
+			if (firstValid < Math.max(1, amount / PURGE_RATIO)) return;
+
+			ByteBuffer tail = ByteBuffer.allocate((amount - firstValid) * RECORD_SIZE);
+			for (int i = firstValid; i < amount; i++) {
+				int position = i * RECORD_SIZE;
+				String info = info(records.getInt(position + 2 * Long.BYTES));
+				Integer id = newDictionaryIds.get(info);
+				if (id == null) {
+					newDictionary.add(info);
+					id = newDictionary.size() - 1;
+					newDictionaryIds.put(info, id);
+				}
+				tail.putLong(records.getLong(position)).putLong(records.getLong(position + Long.BYTES)).putInt(id);
+			}
+			tail.flip();
+
+			StringBuilder lines = new StringBuilder();
+			for (String info: newDictionary) lines.append(info).append('\n');
+			writeDurably(tmpStatusPath, tail);
+			writeDurably(tmpDictionaryPath, ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8)));
+		}
+
+		Files.move(tmpStatusPath, statusPath, StandardCopyOption.ATOMIC_MOVE);
+		// the dictionary is reloaded, and the removal completed, if the replacement of the dictionary fails
+		dictionary = null;
+		dictionaryIds = null;
+		Files.move(tmpDictionaryPath, dictionaryPath(), StandardCopyOption.ATOMIC_MOVE);
+		dictionary = newDictionary;
+		dictionaryIds = newDictionaryIds;
+	}
+
+	private static void writeDurably(Path path, ByteBuffer content) throws IOException {
+		try (
+			FileChannel fc = FileChannel.open(
+				path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING
+			)
+		) {
+			while (content.hasRemaining()) fc.write(content);
+			fc.force(true);
+		}
+	}
+
+	private static int lowerBound(ByteBuffer records, int amount, long time) {
+		int low = 0;
+		int high = amount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (records.getLong(middle * RECORD_SIZE) < time) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	@Override
+	public synchronized void setOutputDestination(String destination) {
+		assert destination != null;
+
+		outputDst = destination;
+		dictionary = null;
+		dictionaryIds = null;
+	}
+
+	@Override
+	public String getOutputDestination() {
+		return outputDst;
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from) throws IOException {
+		return collect(from, System.currentTimeMillis());
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from, long to) throws IOException {
+		return collectRecords(from, to).toList();
+	}
+
+	@Override
+	public synchronized BandwidthRecords collectRecords(long from, long to) throws IOException {
+		if (!Files.exists(Path.of(outputDst))) return new BandwidthRecords();
+
+		loadDictionary(false);
+		try (FileChannel fc = FileChannel.open(Path.of(outputDst), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			int amount = (int) (fc.size() / RECORD_SIZE);
+			int first = lowerBound(buffer, amount, from);
+			BandwidthRecords records = new BandwidthRecords(Math.min(amount - first, 1024));
+			for (int i = first; i < amount; i++) {
+				int position = i * RECORD_SIZE;
+				long date = buffer.getLong(position);
+				if (date > to) break;
+				records.add(date, buffer.getLong(position + Long.BYTES), info(buffer.getInt(position + 2 * Long.BYTES)));
+			}
+			return records;
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof BinaryBandwidthStatus bbs) {
+			return outputDst.equals(bbs.getOutputDestination());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return outputDst.hashCode();
+	}
+}
@@ -0,0 +1,151 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.TimerTask;
+
+/**
+ * BudgetedDownloadTest is an implementation of {@link DownloadTest} that runs another test within a {@link DataBudget}.
+ * Before every run, the budget decides whether the test runs in full, runs with its transfer limited, or is skipped;
+ * a full run is expected to transfer as much as the last full run did. The decision is logged through the
+ * {@link BandwidthStatus} of the test with the additional information starting with
+ * {@link BudgetedDownloadTest#INFO_PREFIX} followed by the lower case name of {@link DataBudget.State}: the record of
+ * a run contains the amount of bytes the run has transferred, and the record of a skipped run contains the amount of
+ * bytes left for the day.
+ */
+public class BudgetedDownloadTest extends TimerTask implements DownloadTest {
+	/**
+	 * INFO_PREFIX is the prefix of the additional information of the records logged by the test
+	 */
+	public final static String INFO_PREFIX = "budget_";
+
+	private final DownloadTest test;
+	private final DataBudget budget;
+	private Exception e = null;
+	private volatile long expected = 0;
+	private volatile long transferred = 0;
+	private volatile long total = 0;
+	private volatile DataBudget.State state = null;
+
+	/**
+	 * Creates the test.
+	 * @param test test to run
+	 * @param budget budget the test runs within, which may be shared with other tests
+	 */
+	public BudgetedDownloadTest(DownloadTest test, DataBudget budget) {
+		assert test != null && budget != null;
+
+		this.test = test;
+		this.budget = budget;
+	}
+
+	@Override
+	public void run() {
+		DataBudget.Allowance allowance = budget.acquire(expected);
+		state = allowance.state();
+		try {
+			if (allowance.state() == DataBudget.State.SKIPPED) {
+				transferred = 0;
+				getBandwidthStatus().log(budget.getRemaining(), info(allowance.state()));
+				return;
+			}
+
+			long limit = test.getTransferLimit();
+			test.setTransferLimit(limit == -1 ? allowance.limit() : Math.min(limit, allowance.limit()));
+			try {
+				test.toTimerTask().run();
+			} finally {
+				test.setTransferLimit(limit);
+				transferred = test.getTransferredBytes();
+				total += transferred;
+				budget.release(allowance, transferred);
+			}
+			if (allowance.state() == DataBudget.State.FULL && transferred > 0) expected = transferred;
+			getBandwidthStatus().log(transferred, info(allowance.state()));
+		} catch (IOException exception) {
+			e = exception;
+		}
+	}
+
+	private static String info(DataBudget.State state) {
+		return INFO_PREFIX + state.name().toLowerCase(Locale.ROOT);
+	}
+
+	@Override
+	public void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		test.setBandwidthStatus(bandwidthStatus);
+	}
+
+	@Override
+	public BandwidthStatus getBandwidthStatus() {
+		return test.getBandwidthStatus();
+	}
+
+	/**
+	 * Returns the exception occurred during the run of the test or logging the decision of the budget.
+	 * @return the exception occurred during the run of the test or logging the decision of the budget
+	 */
+	@Override
+	public Exception getException() {
+		return e != null ? e : test.getException();
+	}
+
+	@Override
+	public long getTransferredBytes() {
+		return transferred;
+	}
+
+	@Override
+	public TimerTask toTimerTask() {
+		return this;
+	}
+
+	/**
+	 * Returns the decision of the budget about the last run.
+	 * @return kind of the last run, or null if the test hasn't run yet
+	 */
+	public DataBudget.State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the amount of bytes the test has transferred since it has been created.
+	 * @return amount of bytes
+	 */
+	public long getTotalTransferredBytes() {
+		return total;
+	}
+
+	/**
+	 * Returns the test run within the budget.
+	 * @return instance of {@link DownloadTest}
+	 */
+	public DownloadTest getDownloadTest() {
+		return test;
+	}
+
+	/**
+	 * Returns the budget the test runs within.
+	 * @return instance of {@link DataBudget}
+	 */
+	public DataBudget getDataBudget() {
+		return budget;
+	}
+}
@@ -0,0 +1,213 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * DataBudget is the amount of bytes the tests may transfer per day.
+ * Before a run, a test asks for an {@link Allowance}, which is reserved until the run reports the bytes it has actually
+ * transferred, so the tests running at the same time share the budget. A run is allowed to use the whole remaining
+ * budget if it's expected to fit in it and the budget isn't tight, i.e. no less than {@link DataBudget#TIGHT_SHARE} of it
+ * remains. Otherwise, the run is reduced to {@link DataBudget#REDUCED_SHARE} of the daily budget, and if less than
+ * {@link DataBudget#MIN_RUN_BYTES} remains, the run is skipped. The budget is renewed at the local midnight.
+ * The budget is kept in memory, so after a restart the bytes used today are recounted by
+ * {@link DataBudget#restore(Collection)} from the records logged by {@link BudgetedDownloadTest}.
+ * The daily budget is acquired through {@link SettingLoader#DATA_BUDGET}.
+ */
+public class DataBudget {
+	/**
+	 * TIGHT_SHARE is the share of the daily budget below which the remaining budget is tight
+	 */
+	public final static double TIGHT_SHARE = 0.25;
+	/**
+	 * REDUCED_SHARE is the share of the daily budget a reduced run may use
+	 */
+	public final static double REDUCED_SHARE = 0.01;
+	/**
+	 * MIN_RUN_BYTES is the minimum amount of bytes a run may be reduced to
+	 */
+	public final static long MIN_RUN_BYTES = 1024 * 1024; // 1 MiB
+
+	private final long daily;
+	private final Clock clock;
+	private LocalDate day;
+	private long used = 0;
+	private long reserved = 0;
+
+	/**
+	 * State is the kind of run allowed by the budget.
+	 */
+	public enum State {
+		/**
+		 * The run may use the whole remaining budget
+		 */
+		FULL,
+		/**
+		 * The run is reduced to a small share of the budget
+		 */
+		REDUCED,
+		/**
+		 * The run is skipped
+		 */
+		SKIPPED
+	}
+
+	/**
+	 * Allowance is the permission to run a test.
+	 * @param state kind of the run
+	 * @param limit maximum amount of bytes the run may transfer
+	 * @param reserved amount of bytes reserved for the run
+	 */
+	public record Allowance(State state, long limit, long reserved) {}
+
+	public DataBudget() {
+		this(Long.parseLong(SettingLoader.getValue(SettingLoader.DATA_BUDGET).orElseThrow()));
+	}
+
+	/**
+	 * Creates the budget.
+	 * @param daily amount of bytes the tests may transfer per day
+	 */
+	public DataBudget(long daily) {
+		this(daily, Clock.systemDefaultZone());
+	}
+
+	DataBudget(long daily, Clock clock) {
+		assert daily >= 0 && clock != null;
+
+		this.daily = daily;
+		this.clock = clock;
+		day = LocalDate.now(clock);
+	}
+
+	/**
+	 * Allows the next run of a test.
+	 * The allowance has to be returned through {@link DataBudget#release(Allowance, long)} after the run.
+	 * @param expected amount of bytes the run is expected to transfer, or 0 if it's unknown
+	 * @return allowance of the run
+	 */
+	public synchronized Allowance acquire(long expected) {
+		assert expected >= 0;
+
+		long remaining = getRemaining();
+		Allowance allowance;
+		if (remaining < MIN_RUN_BYTES) {
+			allowance = new Allowance(State.SKIPPED, 0, 0);
+		} else if (remaining < daily * TIGHT_SHARE || expected > remaining) {
+			long limit = Math.min(remaining, Math.max((long) (daily * REDUCED_SHARE), MIN_RUN_BYTES));
+			allowance = new Allowance(State.REDUCED, limit, limit);
+		} else {
+			allowance = new Allowance(State.FULL, remaining, expected);
+		}
+		reserved += allowance.reserved();
+		return allowance;
+	}
+
+	/**
+	 * Returns the allowance and charges the budget with the bytes the run has transferred.
+	 * @param allowance allowance of the run
+	 * @param transferred amount of bytes the run has transferred
+	 */
+	public synchronized void release(Allowance allowance, long transferred) {
+		assert allowance != null && transferred >= 0;
+
+		roll();
+		reserved = Math.max(reserved - allowance.reserved(), 0);
+		used += transferred;
+	}
+
+	/**
+	 * Returns the amount of bytes left for today, excluding the reservations of the running tests.
+	 * @return amount of bytes
+	 */
+	public synchronized long getRemaining() {
+		roll();
+		return Math.max(daily - used - reserved, 0);
+	}
+
+	/**
+	 * Returns the amount of bytes the tests have transferred today.
+	 * @return amount of bytes
+	 */
+	public synchronized long getUsed() {
+		roll();
+		return used;
+	}
+
+	/**
+	 * Returns the amount of bytes the tests may transfer per day.
+	 * @return amount of bytes
+	 */
+	public long getDaily() {
+		return daily;
+	}
+
+	/**
+	 * Recounts the bytes the tests have transferred today from the records of the runs, which have been logged by
+	 * {@link BudgetedDownloadTest} through the given statuses, whether they are tagged or not. The reservations are kept.
+	 * @param bandwidthStatuses statuses the runs have logged their records to, the statuses with the same output
+	 *                          destination are counted once
+	 * @throws IOException if an I/O error occurred
+	 */
+	public void restore(Collection<BandwidthStatus> bandwidthStatuses) throws IOException {
+		assert bandwidthStatuses != null;
+
+		LocalDate today = LocalDate.now(clock);
+		long from = today.atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+		long to = clock.millis();
+		String full = BudgetedDownloadTest.INFO_PREFIX + State.FULL.name().toLowerCase(Locale.ROOT);
+		String reduced = BudgetedDownloadTest.INFO_PREFIX + State.REDUCED.name().toLowerCase(Locale.ROOT);
+		long transferred = 0;
+		HashSet<String> destinations = new HashSet<>();
+		for (BandwidthStatus bandwidthStatus: bandwidthStatuses) {
+			if (!destinations.add(bandwidthStatus.getOutputDestination())) continue;
+			BandwidthRecords records = bandwidthStatus.collectRecords(from, to);
+			for (int i = 0; i < records.size(); i++) {
+				String info = TaggedBandwidthStatus.baseInfo(records.getInfo(i));
+				if (full.equals(info) || reduced.equals(info)) {
+					transferred += records.getSpeed(i);
+				}
+			}
+		}
+
+		synchronized (this) {
+			day = today;
+			used = transferred;
+		}
+	}
+
+	/**
+	 * Renews the budget if the day has changed.
+	 * The reservations are kept, since they belong to the runs which haven't finished yet.
+	 */
+	private void roll() {
+		LocalDate today = LocalDate.now(clock);
+		if (!today.equals(day)) {
+			day = today;
+			used = 0;
+		}
+	}
+}
@@ -36,7 +36,12 @@ public class DefaultBandwidthStatus implements BandwidthStatus{
 	private String outputDst = SettingLoader.getValue(SettingLoader.Parameter.OUTPUT_DESTINATION);
 
 	@Override
-	public void log(long speed, String additionalInfo) throws IOException {
+	public synchronized void log(long speed, String additionalInfo) throws IOException {
+		log(System.currentTimeMillis(), speed, additionalInfo);
+	}
+
+	@Override
+	public synchronized void log(long time, long speed, String additionalInfo) throws IOException {
 		additionalInfo = additionalInfo.replace(System.lineSeparator(), " ");
 
 		File outputDstFile = new File(outputDst);
@@ -51,7 +56,7 @@ public class DefaultBandwidthStatus implements BandwidthStatus{
 			fileContent.flip();
 
 			buffer = new StringBuilder(fileContent);
-			buffer.append(System.currentTimeMillis() + " " + speed + " " + additionalInfo + System.lineSeparator());
+			buffer.append(time + " " + speed + " " + additionalInfo + System.lineSeparator());
 			String firstRecord = buffer.substring(0, buffer.indexOf(System.lineSeparator()));
 			long firstRecordDate = parseLong(firstRecord.split(" ")[0]);
 			if (
@@ -86,16 +91,20 @@ public class DefaultBandwidthStatus implements BandwidthStatus{
 
 	@Override
 	public LinkedList<String[]> collect(long from, long to) throws IOException{
-		LinkedList<String[]> records = new LinkedList<>();
+		return collectRecords(from, to).toList();
+	}
+
+	@Override
+	public synchronized BandwidthRecords collectRecords(long from, long to) throws IOException {
+		BandwidthRecords records = new BandwidthRecords();
 		String recordString;
 		try (BufferedReader br = new BufferedReader(new FileReader(new File(outputDst)))){
 			while ((recordString = br.readLine()) != null && !recordString.isEmpty()) {
-				long date = Long.parseLong(recordString.substring(0, recordString.indexOf(' ')));
+				long date = Long.parseLong(recordString, 0, recordString.indexOf(' '), 10);
 				if (date > to) {
 					return records;
 				} else if (date >= from) {
-					String[] record = recordString.split(" ", 3);
-					records.add(record);
+					records.addLine(recordString);
 				}
 			}
 		}
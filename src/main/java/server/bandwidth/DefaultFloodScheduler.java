@@ -19,32 +19,205 @@ package server.bandwidth;
 
 import global.SettingLoader;
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
 import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * DefaultFloodScheduler is a default implementation of {@link FloodScheduler}.
  * The pause time is acquired through {@link SettingLoader#IDLE_TIME}.
  * The default {@link DownloadTest} instance is chosen according to a protocol, which is acquired though {@link SettingLoader#PROTOCOL}.
+ * If {@link SettingLoader#MIN_IDLE_TIME} or {@link SettingLoader#MAX_IDLE_TIME} is specified, the pause is chosen after
+ * every run by {@link AdaptiveIdleTime}, starting from the pause of the scheduler, and the decisions are logged along
+ * with the results of the test.
+ * If {@link SettingLoader#DATA_BUDGET} is specified, the test is run within a {@link DataBudget} by
+ * {@link BudgetedDownloadTest}, unless it doesn't honor the transfer limit, e.g. {@link LatencyProbe}; the bytes used
+ * today are recounted from the records of the test when the execution starts.
  */
 public class DefaultFloodScheduler implements FloodScheduler {
+	/**
+	 * STOP_TIMEOUT is the maximum time in milliseconds {@link DefaultFloodScheduler#stopExecution()} waits for
+	 * the running test
+	 */
+	public final static long STOP_TIMEOUT = 10_000;
 	private final Timer timer = new Timer();
 	private long delay;
 	private DownloadTest dt;
+	private long minDelay;
+	private long maxDelay;
+	private volatile AdaptiveIdleTime adaptiveIdleTime = null;
+	private DataBudget dataBudget;
 	public DefaultFloodScheduler() {
 		delay = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.IDLE_TIME));
-		dt = switch (SettingLoader.getValue(SettingLoader.Parameter.PROTOCOL)) {
-			case "http" -> new HTTPDownloadTest();
+		dt = newDownloadTest(SettingLoader.getValue(SettingLoader.Parameter.PROTOCOL), null);
+		minDelay = SettingLoader.getValue(SettingLoader.MIN_IDLE_TIME).map(Long::parseLong).orElse(-1L);
+		maxDelay = SettingLoader.getValue(SettingLoader.MAX_IDLE_TIME).map(Long::parseLong).orElse(-1L);
+		dataBudget = SettingLoader.getValue(SettingLoader.DATA_BUDGET).isPresent() ? new DataBudget() : null;
+	}
+
+	/**
+	 * Creates the {@link DownloadTest} for the protocol listed in {@link SettingLoader#PROTOCOL}.
+	 * @param protocol name of the protocol
+	 * @param uri URI of the remote endpoint, or null for the default one of the test
+	 * @return instance of {@link DownloadTest}, or null if the protocol isn't supported or its endpoint isn't specified
+	 */
+	static DownloadTest newDownloadTest(String protocol, URI uri) {
+		assert protocol != null;
+
+		switch (protocol) {
+			case "http" -> {
+				HTTPDownloadTest test = new HTTPDownloadTest();
+				if (uri != null) test.setUri(uri);
+				return test;
+			}
+			case "http_upload" -> {
+				HTTPUploadTest test = new HTTPUploadTest();
+				if (uri != null) test.setUri(uri);
+				return test.getUri() != null ? test : null;
+			}
+			case "latency" -> {
+				LatencyProbe test = new LatencyProbe();
+				if (uri != null) test.setUri(uri);
+				return test;
+			}
+			default -> {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Creates the {@link AdaptiveIdleTime} for the test.
+	 * The results of the test are the records of its main metric: the speed for the download and upload tests, and
+	 * the 50th percentile of the round-trip time for {@link LatencyProbe}. If the records of the test are tagged by
+	 * {@link TaggedBandwidthStatus}, only the records of its tag are the results.
+	 * @param test test which runs are scheduled
+	 * @param delay initial pause in milliseconds
+	 * @param min minimum pause in milliseconds, or -1 to use the initial pause
+	 * @param max maximum pause in milliseconds, or -1 to use the initial pause
+	 * @return instance of {@link AdaptiveIdleTime}
+	 */
+	static AdaptiveIdleTime newAdaptiveIdleTime(DownloadTest test, long delay, long min, long max) {
+		assert test != null && delay >= 0;
+
+		String info = switch (test) {
+			case HTTPDownloadTest ignored -> "download_speed";
+			case HTTPUploadTest ignored -> HTTPUploadTest.INFO;
+			case LatencyProbe ignored -> LatencyProbe.INFO_PREFIX + "p50";
 			default -> null;
 		};
+		if (info != null && test.getBandwidthStatus() instanceof TaggedBandwidthStatus tagged) info = tagged.tagged(info);
+		long lower = Math.max(Math.min(min == -1 ? delay : min, max == -1 ? delay : max), 1);
+		long upper = Math.max(max == -1 ? delay : max, lower);
+		return new AdaptiveIdleTime(delay, lower, upper, info);
+	}
+
+	/**
+	 * Wraps the test into {@link BudgetedDownloadTest} if it honors the transfer limit.
+	 * @param test test to run
+	 * @param budget budget the test runs within, or null if there is none
+	 * @return the budgeted test, or the test itself if there is no budget or the test doesn't honor the limit
+	 */
+	static DownloadTest budgeted(DownloadTest test, DataBudget budget) {
+		assert test != null;
+
+		return budget == null || !test.supportsTransferLimit() ? test : new BudgetedDownloadTest(test, budget);
+	}
+
+	/**
+	 * Recounts the bytes used today from the records the tests have logged.
+	 * If the records can't be read, the budget is kept as it is.
+	 * @param budget budget to restore, or null if there is none
+	 * @param tests tests run within the budget
+	 */
+	static void restore(DataBudget budget, List<DownloadTest> tests) {
+		if (budget == null) return;
+		try {
+			budget.restore(tests.stream().map(DownloadTest::getBandwidthStatus).toList());
+		} catch (IOException ignored) {}
+	}
+
+	/**
+	 * Chooses the pause after the run of the test, and logs the decision through the {@link BandwidthStatus} of the test.
+	 * A run skipped by {@link DataBudget} backs the pause off instead of being treated as a run without a result.
+	 * @param test test which has run
+	 * @param policy policy of the test
+	 * @param start time the run has started at in milliseconds since Jan. 1st 1970
+	 * @return pause in milliseconds
+	 */
+	static long nextPause(DownloadTest test, AdaptiveIdleTime policy, long start) {
+		assert test != null && policy != null;
+
+		boolean skipped = test instanceof BudgetedDownloadTest budgeted
+			&& budgeted.getState() == DataBudget.State.SKIPPED;
+		long pause = skipped ? policy.skip() : policy.next(test.getBandwidthStatus(), start);
+		AdaptiveIdleTime.Decision decision = policy.getDecisions().getLast();
+		try {
+			test.getBandwidthStatus().log(decision.delay(), decision.info());
+		} catch (IOException ignored) {}
+		return pause;
 	}
+
 	@Override
 	public void execute() {
-		timer.scheduleAtFixedRate(dt.toTimerTask(), 0, delay);
+		DownloadTest test = budgeted(dt, dataBudget);
+		if (test != dt) restore(dataBudget, List.of(dt));
+		if (minDelay == -1 && maxDelay == -1) {
+			timer.scheduleAtFixedRate(test.toTimerTask(), 0, delay);
+			return;
+		}
+
+		adaptiveIdleTime = newAdaptiveIdleTime(dt, delay, minDelay, maxDelay);
+		timer.schedule(adaptiveRun(test, adaptiveIdleTime), 0);
 	}
 
+	/**
+	 * Returns the task which runs the test once and schedules the next run after the pause chosen by the policy.
+	 */
+	private TimerTask adaptiveRun(DownloadTest test, AdaptiveIdleTime policy) {
+		return new TimerTask() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				test.toTimerTask().run();
+				long pause = nextPause(test, policy, start);
+				try {
+					timer.schedule(adaptiveRun(test, policy), pause);
+				} catch (IllegalStateException ignored) {
+					// the scheduler has been stopped
+				}
+			}
+		};
+	}
+
+	/**
+	 * Stops execution of {@link DownloadTest}, waiting up to {@link DefaultFloodScheduler#STOP_TIMEOUT} for the running
+	 * test to finish.
+	 * The waiting is done by queueing a task which cancels the timer, since the timer runs its tasks one by one.
+	 */
 	@Override
 	public void stopExecution() {
-		timer.cancel();
+		CountDownLatch stopped = new CountDownLatch(1);
+		try {
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					timer.cancel();
+					stopped.countDown();
+				}
+			}, 0);
+			stopped.await(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (IllegalStateException ignored) {
+			// the timer has been cancelled already
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		} finally {
+			timer.cancel();
+		}
 	}
 
 	@Override
@@ -58,6 +231,46 @@ public class DefaultFloodScheduler implements FloodScheduler {
 		return delay;
 	}
 
+	/**
+	 * Sets the bounds of the pause, which make the pause adapt to the results of the tests.
+	 * The change is applied on the next start of the scheduler.
+	 * @param min minimum pause in milliseconds, or -1 to use the pause of the scheduler
+	 * @param max maximum pause in milliseconds, or -1 to use the pause of the scheduler; if both are -1, the pause
+	 *            doesn't adapt
+	 */
+	public void setDelayBounds(long min, long max) {
+		assert min >= -1 && max >= -1;
+
+		minDelay = min;
+		maxDelay = max;
+	}
+
+	/**
+	 * Returns the policy choosing the pauses, which keeps the decisions it has made.
+	 * @return instance of {@link AdaptiveIdleTime}, or null if the pause doesn't adapt or the scheduler hasn't been
+	 * started
+	 */
+	public AdaptiveIdleTime getAdaptiveIdleTime() {
+		return adaptiveIdleTime;
+	}
+
+	/**
+	 * Sets the budget the test runs within.
+	 * The change is applied on the next start of the scheduler.
+	 * @param dataBudget instance of {@link DataBudget}, or null to run the test without a budget
+	 */
+	public void setDataBudget(DataBudget dataBudget) {
+		this.dataBudget = dataBudget;
+	}
+
+	/**
+	 * Returns the budget the test runs within.
+	 * @return instance of {@link DataBudget}, or null if the test runs without a budget
+	 */
+	public DataBudget getDataBudget() {
+		return dataBudget;
+	}
+
 	@Override
 	public DownloadTest getDownloadTest() {
 		return dt;
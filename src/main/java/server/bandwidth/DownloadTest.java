@@ -44,6 +44,40 @@ public interface DownloadTest {
 	 */
 	Exception getException();
 
+	/**
+	 * Returns the amount of bytes the last run has transferred, whether it has succeeded or not.
+	 * The default implementation returns 0, which suits the tests which traffic is negligible.
+	 * @return amount of bytes
+	 */
+	default long getTransferredBytes() {
+		return 0;
+	}
+
+	/**
+	 * Limits the amount of bytes transferred by the next runs. Once the limit is reached, the test stops transferring
+	 * and measures the bytes transferred so far; the limit may be exceeded by the size of a read or write buffer.
+	 * The default implementation ignores the limit.
+	 * @param limit amount of bytes, or -1 for no limit
+	 */
+	default void setTransferLimit(long limit) {}
+
+	/**
+	 * Returns the limit of the amount of bytes transferred by a run.
+	 * @return amount of bytes, or -1 for no limit
+	 */
+	default long getTransferLimit() {
+		return -1;
+	}
+
+	/**
+	 * Returns whether the test honors the limit set through {@link DownloadTest#setTransferLimit(long)}.
+	 * The default implementation returns false, since it ignores the limit.
+	 * @return true if the test honors the limit, false otherwise
+	 */
+	default boolean supportsTransferLimit() {
+		return false;
+	}
+
 	/**
 	 * Returns the runnable instance to {@link TimerTask}.
 	 * @return runnable instance to {@link TimerTask}
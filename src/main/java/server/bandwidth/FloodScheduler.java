@@ -30,6 +30,7 @@ public interface FloodScheduler {
 
 	/**
 	 * Stops execution of {@link DownloadTest}.
+	 * The test which is running at the moment is allowed to finish.
 	 */
 	void stopExecution();
 
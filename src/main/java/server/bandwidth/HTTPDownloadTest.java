@@ -21,66 +21,166 @@ import global.SettingLoader;
 import server.ProxySettings;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.*;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * HTTPDownloadTest is an implementation of {@link DownloadTest} that uses http protocol.
  * The link to the remote file uses {@link URI} format.
  * The default URI is acquired through {@link SettingLoader#HTTP_URI}.
+ * The body of the response is read into a reusable buffer and the bytes actually received are counted, with the times
+ * measured by {@link System#nanoTime()}. The received bytes are sampled every {@link HTTPDownloadTest#DEFAULT_SAMPLE_INTERVAL}
+ * milliseconds by default, and the logged speed is the steady-state speed of {@link Measurement}, which excludes
+ * the ramp-up of the connections. The details of the last download are available as a {@link Measurement}, and its
+ * 10th, 50th and 90th percentiles of the steady-state interval speeds are logged as separate records after the speed,
+ * with the additional information starting with {@link HTTPDownloadTest#INFO_PREFIX}.
+ * To saturate fast links, the file can be downloaded through several connections at the same time, each of them
+ * served by its own virtual thread; the number of connections is acquired through {@link SettingLoader#PARALLEL_STREAMS}.
+ * If the transfer limit is set, all the connections stop reading once the limit has been received altogether.
  * The default implementation of {@link BandwidthStatus} is {@link DefaultBandwidthStatus}.
  */
 public class HTTPDownloadTest extends TimerTask implements DownloadTest {
+	/**
+	 * INFO_PREFIX is the prefix of the additional information of the percentile records logged by the test
+	 */
+	public final static String INFO_PREFIX = "download_percentile_";
+	/**
+	 * DEFAULT_SAMPLE_INTERVAL is the default interval in milliseconds the received bytes are sampled at
+	 */
+	public final static long DEFAULT_SAMPLE_INTERVAL = 100;
+	private final static int BUFFER_SIZE = 64 * 1024;
+	private final static int[] PERCENTILES = {10, 50, 90};
+
 	private URI uri;
 	private BandwidthStatus bs = new DefaultBandwidthStatus();
 	private Exception e = null;
+	private volatile Measurement lastMeasurement = null;
+	private int streams;
+	private byte[][] buffers;
+	private long sampleInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SAMPLE_INTERVAL);
+	private volatile long transferLimit = -1;
+	private volatile long transferred = 0;
 
 	public HTTPDownloadTest() {
 		uri = URI.create(SettingLoader.getValue(SettingLoader.Parameter.HTTP_URI));
+		streams = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.PARALLEL_STREAMS));
+		assert streams > 0;
+		buffers = new byte[streams][BUFFER_SIZE];
 	}
 
 	@Override
 	public void run() {
-		HttpURLConnection connection = null;
+		e = null;
 		try {
-			connection = buildConnection(uri.toURL());
-			String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
-			String getMes = buildGetRequest(uri.getRawPath() + query);
-
-			long startTime = System.currentTimeMillis() / 1000;
-			try (OutputStream os = connection.getOutputStream()) {
-				os.write(getMes.getBytes());
+			Measurement measurement = download(buffers, sampleInterval);
+			if (measurement == null) return;
+			lastMeasurement = measurement;
+			bs.log(measurement.getSpeed(), "download_speed");
+			for (int percentile: PERCENTILES) {
+				bs.log(measurement.getPercentile(percentile), INFO_PREFIX + "p" + percentile);
 			}
-			long timeToDownload = System.currentTimeMillis() / 1000 - startTime;
-
-			if (connection.getResponseCode() != 200) return;
-			long responseBodySize = connection.getContentLengthLong();
-			if (timeToDownload == 0) timeToDownload++;
-			bs.log(responseBodySize * 8 / timeToDownload, "download_speed");
 		} catch (IOException exception) {
 			e = exception;
 		}
-		finally {
-			if (connection != null) connection.disconnect();
+	}
+
+	/**
+	 * Downloads the file through every stream at the same time, while the calling thread samples the amount of
+	 * received bytes at fixed intervals.
+	 * The results are combined over the common time window, which starts before the first connection is opened and
+	 * ends when the last body has been received; the last incomplete interval isn't sampled.
+	 * @param buffers buffers to read the bodies into, one per stream
+	 * @param sampleInterval sampling interval in nanoseconds
+	 * @return combined measurement, or null if any of the responses isn't successful
+	 */
+	private Measurement download(byte[][] buffers, long sampleInterval) throws IOException {
+		int streams = buffers.length;
+		long[] timesToFirstByte = new long[streams];
+		IOException[] exceptions = new IOException[streams];
+		Thread[] threads = new Thread[streams];
+		AtomicLong received = new AtomicLong();
+		CountDownLatch finished = new CountDownLatch(streams);
+		long limit = transferLimit;
+		long start = System.nanoTime();
+		for (int i = 0; i < streams; i++) {
+			int stream = i;
+			threads[i] = Thread.ofVirtual().start(() -> {
+				try {
+					timesToFirstByte[stream] = download(buffers[stream], start, received, limit);
+				} catch (IOException exception) {
+					exceptions[stream] = exception;
+				} catch (RuntimeException exception) {
+					// the failed stream mustn't pass for a successful one
+					exceptions[stream] = new IOException("The stream has failed", exception);
+				} finally {
+					finished.countDown();
+				}
+			});
 		}
 
+		IntervalSampler sampler = new IntervalSampler(start, sampleInterval);
+		try {
+			while (!finished.await(sampler.getNextSample() - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				sampler.sample(System.nanoTime(), received.get());
+			}
+		} catch (InterruptedException exception) {
+			for (Thread thread: threads) thread.interrupt();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("The download has been interrupted");
+		} finally {
+			transferred = received.get();
+		}
+		long duration = System.nanoTime() - start;
+
+		long timeToFirstByte = Long.MAX_VALUE;
+		for (int i = 0; i < streams; i++) {
+			if (exceptions[i] != null) throw exceptions[i];
+			if (timesToFirstByte[i] < 0) return null;
+			timeToFirstByte = Math.min(timeToFirstByte, timesToFirstByte[i]);
+		}
+		return new Measurement(received.get(), timeToFirstByte, duration, sampler.getIntervalSpeeds());
 	}
 
-	private HttpURLConnection buildConnection(URL url) throws IOException {
-		URLConnection urlConnection = url.openConnection(ProxySettings.getProxy());
-		urlConnection.setDoInput(true);
-		urlConnection.setDoOutput(true);
-		urlConnection.setConnectTimeout(60_000);
-		urlConnection.connect();
+	/**
+	 * Downloads the file through a single connection.
+	 * @param buffer buffer to read the body into
+	 * @param start time the measurement starts from in nanoseconds
+	 * @param received counter of the received bytes shared by the streams
+	 * @param limit amount of bytes received by all the streams after which the reading stops, or -1 for no limit
+	 * @return time to the first byte in nanoseconds, or -1 if the response isn't successful
+	 */
+	private long download(byte[] buffer, long start, AtomicLong received, long limit) throws IOException {
+		HttpURLConnection connection = null;
+		try {
+			connection = buildConnection(uri.toURL());
+			if (connection.getResponseCode() != 200) return -1;
+			long timeToFirstByte = System.nanoTime() - start;
 
-		return (HttpURLConnection) urlConnection;
+			try (InputStream is = connection.getInputStream()) {
+				for (int read; (read = is.read(buffer)) != -1; ) {
+					if (received.addAndGet(read) >= limit && limit != -1) break;
+				}
+			}
+			return timeToFirstByte;
+		} finally {
+			if (connection != null) connection.disconnect();
+		}
 	}
 
-	private String buildGetRequest(String request) {
-		return """
-			GET %s HTTP/1.1
-			""".formatted(request);
+	private HttpURLConnection buildConnection(URL url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection(ProxySettings.getProxy());
+		connection.setRequestMethod("GET");
+		connection.setUseCaches(false);
+		connection.setConnectTimeout(60_000);
+		connection.setReadTimeout(60_000);
+		connection.connect();
+
+		return connection;
 	}
 
 	@Override
@@ -104,6 +204,74 @@ public class HTTPDownloadTest extends TimerTask implements DownloadTest {
 		return this;
 	}
 
+	@Override
+	public long getTransferredBytes() {
+		return transferred;
+	}
+
+	@Override
+	public void setTransferLimit(long limit) {
+		assert limit >= -1;
+
+		transferLimit = limit;
+	}
+
+	@Override
+	public long getTransferLimit() {
+		return transferLimit;
+	}
+
+	@Override
+	public boolean supportsTransferLimit() {
+		return true;
+	}
+
+	/**
+	 * Returns the measurement of the last successful download.
+	 * @return measurement, or null if no download has succeeded yet
+	 */
+	public Measurement getLastMeasurement() {
+		return lastMeasurement;
+	}
+
+	/**
+	 * Sets the number of connections used at the same time.
+	 * Every connection downloads the whole file, and the bytes received through all of them are measured together.
+	 * @param streams number of connections
+	 */
+	public void setStreams(int streams) {
+		assert streams > 0;
+
+		this.streams = streams;
+		buffers = new byte[streams][BUFFER_SIZE];
+	}
+
+	/**
+	 * Returns the number of connections used at the same time.
+	 * @return number of connections
+	 */
+	public int getStreams() {
+		return streams;
+	}
+
+	/**
+	 * Sets the interval the received bytes are sampled at.
+	 * @param sampleInterval interval in milliseconds
+	 */
+	public void setSampleInterval(long sampleInterval) {
+		assert sampleInterval > 0;
+
+		this.sampleInterval = TimeUnit.MILLISECONDS.toNanos(sampleInterval);
+	}
+
+	/**
+	 * Returns the interval the received bytes are sampled at.
+	 * @return interval in milliseconds
+	 */
+	public long getSampleInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(sampleInterval);
+	}
+
 	/**
 	 * Sets URI of the remote file.
 	 * @param uri URI of the remote file
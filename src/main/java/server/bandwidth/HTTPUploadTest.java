@@ -0,0 +1,238 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+import server.ProxySettings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Random;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTPUploadTest is an implementation of {@link DownloadTest} that measures the upload speed using http protocol.
+ * The test sends a chunked POST request to the remote endpoint, which body consists of generated bytes, and the speed
+ * is logged with "upload_speed" additional information.
+ * The body is written from a single preallocated buffer of random bytes, so nothing is allocated per chunk and
+ * compressing proxies can't shrink it. The sent bytes are sampled every {@link HTTPUploadTest#DEFAULT_SAMPLE_INTERVAL}
+ * milliseconds by default, and the logged speed is the steady-state speed of {@link Measurement}.
+ * The default URI is acquired through {@link SettingLoader#UPLOAD_URI}; if it isn't specified, the URI has to be set
+ * through {@link HTTPUploadTest#setUri(URI)}, otherwise the runs fail. The amount of bytes to send is acquired through
+ * {@link SettingLoader#UPLOAD_SIZE}, and the transfer limit, if it's set, reduces it.
+ * The default implementation of {@link BandwidthStatus} is {@link DefaultBandwidthStatus}.
+ */
+public class HTTPUploadTest extends TimerTask implements DownloadTest {
+	/**
+	 * DEFAULT_SAMPLE_INTERVAL is the default interval in milliseconds the sent bytes are sampled at
+	 */
+	public final static long DEFAULT_SAMPLE_INTERVAL = 100;
+	/**
+	 * INFO is the additional information of the speed records logged by the test
+	 */
+	public final static String INFO = "upload_speed";
+	private final static int BUFFER_SIZE = 64 * 1024;
+	private final static int DRAIN_SIZE = 1024;
+
+	private URI uri;
+	private long size;
+	private BandwidthStatus bs = new DefaultBandwidthStatus();
+	private Exception e = null;
+	private volatile Measurement lastMeasurement = null;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final byte[] drain = new byte[DRAIN_SIZE];
+	private long sampleInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SAMPLE_INTERVAL);
+	private volatile long transferLimit = -1;
+	private volatile long transferred = 0;
+
+	public HTTPUploadTest() {
+		uri = SettingLoader.getValue(SettingLoader.UPLOAD_URI).map(URI::create).orElse(null);
+		size = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.UPLOAD_SIZE));
+		new Random().nextBytes(buffer);
+	}
+
+	@Override
+	public void run() {
+		if (uri == null) {
+			e = new IllegalStateException("The upload endpoint isn't specified through " + SettingLoader.UPLOAD_URI);
+			return;
+		}
+		try {
+			Measurement measurement = upload();
+			if (measurement == null) return;
+			lastMeasurement = measurement;
+			bs.log(measurement.getSpeed(), INFO);
+		} catch (IOException exception) {
+			e = exception;
+		}
+	}
+
+	/**
+	 * Sends the generated bytes to the endpoint.
+	 * The time to the first byte of the measurement is the time until the response has been received, which happens
+	 * after the whole body has been sent.
+	 * @return measurement, or null if the response isn't successful
+	 */
+	private Measurement upload() throws IOException {
+		HttpURLConnection connection = null;
+		try {
+			long start = System.nanoTime();
+			connection = (HttpURLConnection) uri.toURL().openConnection(ProxySettings.getProxy());
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setChunkedStreamingMode(BUFFER_SIZE);
+			connection.setRequestProperty("Content-Type", "application/octet-stream");
+			connection.setUseCaches(false);
+			connection.setConnectTimeout(60_000);
+			connection.setReadTimeout(60_000);
+
+			IntervalSampler sampler = new IntervalSampler(start, sampleInterval);
+			long size = transferLimit == -1 ? this.size : Math.min(this.size, transferLimit);
+			long sent = 0;
+			transferred = 0;
+			try (OutputStream os = connection.getOutputStream()) {
+				while (sent < size) {
+					int length = (int) Math.min(buffer.length, size - sent);
+					os.write(buffer, 0, length);
+					sent += length;
+					transferred = sent;
+					long now = System.nanoTime();
+					if (now >= sampler.getNextSample()) sampler.sample(now, sent);
+				}
+			}
+			int responseCode = connection.getResponseCode();
+			long duration = System.nanoTime() - start;
+			if (responseCode / 100 != 2) return null;
+			try (InputStream is = connection.getInputStream()) {
+				// the generated bytes are kept intact, so the response is read into a separate buffer
+				while (is.read(drain) != -1);
+			}
+			return new Measurement(sent, duration, duration, sampler.getIntervalSpeeds());
+		} finally {
+			if (connection != null) connection.disconnect();
+		}
+	}
+
+	@Override
+	public void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		assert bandwidthStatus != null;
+		bs = bandwidthStatus;
+	}
+
+	@Override
+	public BandwidthStatus getBandwidthStatus() {
+		return bs;
+	}
+
+	@Override
+	public Exception getException() {
+		return e;
+	}
+
+	@Override
+	public TimerTask toTimerTask() {
+		return this;
+	}
+
+	@Override
+	public long getTransferredBytes() {
+		return transferred;
+	}
+
+	@Override
+	public void setTransferLimit(long limit) {
+		assert limit >= -1;
+
+		transferLimit = limit;
+	}
+
+	@Override
+	public long getTransferLimit() {
+		return transferLimit;
+	}
+
+	@Override
+	public boolean supportsTransferLimit() {
+		return true;
+	}
+
+	/**
+	 * Returns the measurement of the last successful upload.
+	 * @return measurement, or null if no upload has succeeded yet
+	 */
+	public Measurement getLastMeasurement() {
+		return lastMeasurement;
+	}
+
+	/**
+	 * Sets the interval the sent bytes are sampled at.
+	 * @param sampleInterval interval in milliseconds
+	 */
+	public void setSampleInterval(long sampleInterval) {
+		assert sampleInterval > 0;
+
+		this.sampleInterval = TimeUnit.MILLISECONDS.toNanos(sampleInterval);
+	}
+
+	/**
+	 * Returns the interval the sent bytes are sampled at.
+	 * @return interval in milliseconds
+	 */
+	public long getSampleInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(sampleInterval);
+	}
+
+	/**
+	 * Sets the amount of bytes sent by a single test.
+	 * @param size amount of bytes
+	 */
+	public void setSize(long size) {
+		assert size >= 0;
+
+		this.size = size;
+	}
+
+	/**
+	 * Returns the amount of bytes sent by a single test.
+	 * @return amount of bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets URI of the remote endpoint.
+	 * @param uri URI of the remote endpoint
+	 */
+	public void setUri(URI uri) {
+		assert uri != null;
+		this.uri = uri;
+	}
+
+	/**
+	 * Returns URI of the remote endpoint.
+	 * @return URI of the remote endpoint, or null if it isn't specified
+	 */
+	public URI getUri() {
+		return uri;
+	}
+}
@@ -0,0 +1,399 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * IndexedBandwidthStatus is an implementation of {@link BandwidthStatus} that keeps the status file in the same
+ * human-readable format as {@link DefaultBandwidthStatus} and maintains a sparse index next to it.
+ * The index file, which name is the name of the status file followed by {@link IndexedBandwidthStatus#INDEX_SUFFIX},
+ * contains the date and the byte offset of every n-th record, so {@link IndexedBandwidthStatus#collect(long, long)}
+ * starts reading the status file right before the requested period instead of its beginning.
+ * The records are appended to the status file, and the index is updated incrementally. If the status file is
+ * modified by someone else, for example by {@link DefaultBandwidthStatus}, the index is caught up or rebuilt on the
+ * next access: the dates of the first and the last indexed records are compared with the status file on every access,
+ * so a rewritten status file is noticed even if it hasn't shrunk.
+ * The capacity is limited by {@link SettingLoader#LOG_LIMIT}; the expired records are removed in batches of indexed
+ * blocks, so some of them may be returned before the removal.
+ * The destination of the status file is acquired through {@link SettingLoader#OUTPUT_DESTINATION} by default.
+ */
+public class IndexedBandwidthStatus implements BandwidthStatus {
+	/**
+	 * INDEX_SUFFIX is appended to the name of the status file to get the name of the index file
+	 */
+	public final static String INDEX_SUFFIX = ".idx";
+	/**
+	 * DEFAULT_INDEX_INTERVAL is the default amount of records between two index entries
+	 */
+	public final static int DEFAULT_INDEX_INTERVAL = 64;
+	private final static int ENTRY_SIZE = Long.BYTES + Long.BYTES;
+	private final static int PURGE_RATIO = 8;
+
+	private String outputDst = SettingLoader.getValue(SettingLoader.Parameter.OUTPUT_DESTINATION);
+	private int indexInterval = DEFAULT_INDEX_INTERVAL;
+	private long[] indexTimes = new long[16];
+	private long[] indexOffsets = new long[16];
+	private int indexSize = -1;
+	private long scannedLength = 0;
+	private int recordsSinceIndex = 0;
+
+	@Override
+	public synchronized void log(long speed, String additionalInfo) throws IOException {
+		log(System.currentTimeMillis(), speed, additionalInfo);
+	}
+
+	@Override
+	public synchronized void log(long time, long speed, String additionalInfo) throws IOException {
+		additionalInfo = additionalInfo.replace(System.lineSeparator(), " ");
+
+		synchronize();
+		String record = time + " " + speed + " " + additionalInfo + System.lineSeparator();
+		try (
+			FileChannel fc = FileChannel.open(
+				Path.of(outputDst),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND
+			)
+		) {
+			ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) fc.write(buffer);
+		}
+		synchronize();
+
+		purge();
+	}
+
+	/**
+	 * Brings the index up to date with the status file.
+	 */
+	private void synchronize() throws IOException {
+		Path statusPath = Path.of(outputDst);
+		long length = 0;
+		boolean rewritten = false;
+		if (Files.exists(statusPath)) {
+			try (FileChannel fc = FileChannel.open(statusPath, StandardOpenOption.READ)) {
+				length = fc.size();
+				rewritten = indexSize > 0 && !matches(fc);
+			}
+		}
+		if (indexSize < 0 || length < scannedLength || rewritten) loadIndex(length);
+		if (length > scannedLength) scan(length);
+	}
+
+	/**
+	 * Returns whether the first and the last index entries point to the records with their dates.
+	 */
+	private boolean matches(FileChannel fc) throws IOException {
+		return
+			indexOffsets[0] == 0 &&
+			readDate(fc, indexOffsets[0]) == indexTimes[0] &&
+			readDate(fc, indexOffsets[indexSize - 1]) == indexTimes[indexSize - 1];
+	}
+
+	private void loadIndex(long length) throws IOException {
+		indexSize = 0;
+		scannedLength = 0;
+		recordsSinceIndex = 0;
+
+		Path indexPath = Path.of(outputDst + INDEX_SUFFIX);
+		if (Files.exists(indexPath)) {
+			ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+			while (entries.remaining() >= ENTRY_SIZE) {
+				addEntry(entries.getLong(), entries.getLong());
+			}
+		}
+
+		boolean valid = false;
+		if (indexSize > 0 && indexOffsets[indexSize - 1] < length) {
+			try (FileChannel fc = FileChannel.open(Path.of(outputDst), StandardOpenOption.READ)) {
+				valid = matches(fc);
+			}
+		}
+		if (!valid) {
+			indexSize = 0;
+			Files.write(indexPath, new byte[0]);
+			return;
+		}
+		scannedLength = indexOffsets[indexSize - 1];
+	}
+
+	private static long readDate(FileChannel fc, long offset) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(20);
+		fc.read(buffer, offset);
+		buffer.flip();
+		long date = 0;
+		int digits = 0;
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+			if (b < '0' || b > '9') break;
+			date = date * 10 + (b - '0');
+			digits++;
+		}
+		return digits == 0 ? -1 : date;
+	}
+
+	/**
+	 * Reads the unscanned part of the status file and indexes every n-th complete record.
+	 */
+	private void scan(long length) throws IOException {
+		ByteBuffer newEntries = ByteBuffer.allocate(ENTRY_SIZE * 16);
+		try (FileChannel fc = FileChannel.open(Path.of(outputDst), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+			long position = scannedLength;
+			long lineStart = scannedLength;
+			long date = 0;
+			boolean readingDate = true;
+			int digits = 0;
+			fc.position(position);
+			while (position < length && fc.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					byte b = buffer.get();
+					position++;
+					if (b == '\n') {
+						if (digits > 0) {
+							if (indexSize == 0 || recordsSinceIndex >= indexInterval) {
+								addEntry(date, lineStart);
+								if (newEntries.remaining() < ENTRY_SIZE) {
+									newEntries = ByteBuffer.allocate(newEntries.capacity() * 2).put(newEntries.flip());
+								}
+								newEntries.putLong(date).putLong(lineStart);
+								recordsSinceIndex = 0;
+							}
+							recordsSinceIndex++;
+						}
+						scannedLength = position;
+						lineStart = position;
+						date = 0;
+						digits = 0;
+						readingDate = true;
+					} else if (readingDate && b >= '0' && b <= '9') {
+						date = date * 10 + (b - '0');
+						digits++;
+					} else {
+						readingDate = false;
+					}
+				}
+				buffer.clear();
+			}
+		}
+
+		newEntries.flip();
+		if (!newEntries.hasRemaining()) return;
+		try (
+			FileChannel fc = FileChannel.open(
+				Path.of(outputDst + INDEX_SUFFIX),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND
+			)
+		) {
+			while (newEntries.hasRemaining()) fc.write(newEntries);
+		}
+	}
+
+	private void addEntry(long time, long offset) {
+		if (indexSize == indexTimes.length) {
+			indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+			indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+		}
+		indexTimes[indexSize] = time;
+		indexOffsets[indexSize] = offset;
+		indexSize++;
+	}
+
+	/**
+	 * Returns the position of the first index entry which date is not lower than the given date.
+	 */
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = indexSize;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (indexTimes[middle] < time) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	private void purge() throws IOException {
+		long limit = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.LOG_LIMIT));
+		long threshold = System.currentTimeMillis() - limit;
+		int lastExpired = lowerBound(threshold) - 1;
+		if (lastExpired < 0 || lastExpired < indexSize / PURGE_RATIO) return;
+
+		long[] firstKept = findRecord(indexOffsets[lastExpired], threshold);
+		long base = firstKept[0];
+		Path statusPath = Path.of(outputDst);
+		Path tmpPath = Path.of(outputDst + ".tmp");
+		try (
+			FileChannel src = FileChannel.open(statusPath, StandardOpenOption.READ);
+			FileChannel dst = FileChannel.open(
+				tmpPath,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING
+			)
+		) {
+			long position = base;
+			long size = src.size();
+			while (position < size) {
+				position += src.transferTo(position, size - position, dst);
+			}
+		}
+
+		ByteBuffer entries = ByteBuffer.allocate((indexSize - lastExpired) * ENTRY_SIZE);
+		if (base < scannedLength) entries.putLong(firstKept[1]).putLong(0);
+		for (int i = lastExpired + 1; i < indexSize; i++) {
+			entries.putLong(indexTimes[i]).putLong(indexOffsets[i] - base);
+		}
+		Files.move(tmpPath, statusPath, StandardCopyOption.REPLACE_EXISTING);
+		Files.write(Path.of(outputDst + INDEX_SUFFIX), Arrays.copyOf(entries.array(), entries.position()));
+		indexSize = -1;
+		synchronize();
+	}
+
+	/**
+	 * Returns the offset and the date of the first record starting from the given offset which date is not lower than
+	 * the given date, or the offset of the end of the scanned part of the status file if there is no such record.
+	 */
+	private long[] findRecord(long offset, long time) throws IOException {
+		try (FileChannel fc = FileChannel.open(Path.of(outputDst), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+			long position = offset;
+			long date = 0;
+			boolean readingDate = true;
+			int digits = 0;
+			fc.position(position);
+			while (position < scannedLength && fc.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining() && position < scannedLength) {
+					byte b = buffer.get();
+					if (readingDate && b >= '0' && b <= '9') {
+						date = date * 10 + (b - '0');
+						digits++;
+					} else if (readingDate) {
+						if (digits > 0 && date >= time) return new long[] {position - digits, date};
+						readingDate = false;
+					}
+					position++;
+					if (b == '\n') {
+						date = 0;
+						digits = 0;
+						readingDate = true;
+					}
+				}
+				buffer.clear();
+			}
+		}
+		return new long[] {scannedLength, 0};
+	}
+
+	@Override
+	public synchronized void setOutputDestination(String destination) {
+		assert destination != null;
+
+		outputDst = destination;
+		indexSize = -1;
+	}
+
+	@Override
+	public String getOutputDestination() {
+		return outputDst;
+	}
+
+	/**
+	 * Sets the amount of records between two index entries.
+	 * The entries that have already been written keep their positions.
+	 * @param indexInterval amount of records
+	 */
+	public synchronized void setIndexInterval(int indexInterval) {
+		assert indexInterval > 0;
+
+		this.indexInterval = indexInterval;
+	}
+
+	/**
+	 * Returns the amount of records between two index entries.
+	 * @return amount of records
+	 */
+	public int getIndexInterval() {
+		return indexInterval;
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from) throws IOException {
+		return collect(from, System.currentTimeMillis());
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from, long to) throws IOException {
+		return collectRecords(from, to).toList();
+	}
+
+	@Override
+	public synchronized BandwidthRecords collectRecords(long from, long to) throws IOException {
+		BandwidthRecords records = new BandwidthRecords();
+		if (!Files.exists(Path.of(outputDst))) return records;
+
+		synchronize();
+		int entry = lowerBound(from) - 1;
+		long offset = entry >= 0 ? indexOffsets[entry] : 0;
+		String recordString;
+		try (
+			FileChannel fc = FileChannel.open(Path.of(outputDst), StandardOpenOption.READ);
+			BufferedReader br = new BufferedReader(Channels.newReader(fc.position(offset), StandardCharsets.UTF_8))
+		) {
+			while ((recordString = br.readLine()) != null && !recordString.isEmpty()) {
+				long date = Long.parseLong(recordString, 0, recordString.indexOf(' '), 10);
+				if (date > to) {
+					return records;
+				} else if (date >= from) {
+					records.addLine(recordString);
+				}
+			}
+		}
+
+		return records;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof IndexedBandwidthStatus ibs) {
+			return outputDst.equals(ibs.getOutputDestination());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return outputDst.hashCode();
+	}
+}
@@ -0,0 +1,73 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.util.Arrays;
+
+/**
+ * IntervalSampler turns the samples of a growing amount of transferred bytes into the speeds of the intervals between
+ * the samples, which are used by {@link Measurement}.
+ * The samples are expected to be taken once {@link IntervalSampler#getNextSample()} is reached.
+ */
+class IntervalSampler {
+	private final long interval;
+	private long sampleStart;
+	private long sampleBytes = 0;
+	private long[] speeds = new long[16];
+	private int size = 0;
+
+	/**
+	 * Creates the sampler.
+	 * @param start time of the beginning of the transfer in nanoseconds
+	 * @param interval sampling interval in nanoseconds
+	 */
+	IntervalSampler(long start, long interval) {
+		assert interval > 0;
+
+		sampleStart = start;
+		this.interval = interval;
+	}
+
+	/**
+	 * Returns the time the next sample is due.
+	 * @return time in nanoseconds
+	 */
+	long getNextSample() {
+		return sampleStart + interval;
+	}
+
+	/**
+	 * Ends the current interval.
+	 * @param now current time in nanoseconds
+	 * @param bytes amount of bytes transferred since the beginning of the transfer
+	 */
+	void sample(long now, long bytes) {
+		if (size == speeds.length) speeds = Arrays.copyOf(speeds, size * 2);
+		speeds[size++] = (long) ((bytes - sampleBytes) * 8 * 1e9 / Math.max(now - sampleStart, 1));
+		sampleStart = now;
+		sampleBytes = bytes;
+	}
+
+	/**
+	 * Returns the speeds of the completed intervals.
+	 * @return speeds in bits per second
+	 */
+	long[] getIntervalSpeeds() {
+		return Arrays.copyOf(speeds, size);
+	}
+}
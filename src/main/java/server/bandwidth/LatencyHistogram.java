@@ -0,0 +1,140 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram counts non-negative values in log-linear buckets, so recording a value and querying a percentile
+ * allocate nothing.
+ * The values below {@link LatencyHistogram#EXACT_LIMIT} are counted exactly; above it, every power of two is split into
+ * {@link LatencyHistogram#SUB_BUCKETS} buckets of equal width, so a value is reported with the relative error of less
+ * than 1 / {@link LatencyHistogram#SUB_BUCKETS}. The values above {@link LatencyHistogram#MAX_VALUE} are counted as
+ * the maximum value. The minimum, the maximum, and the average are exact.
+ * LatencyHistogram isn't thread-safe.
+ */
+public class LatencyHistogram {
+	/**
+	 * SUB_BUCKETS is the amount of buckets every power of two is split into
+	 */
+	public final static int SUB_BUCKETS = 32;
+	/**
+	 * EXACT_LIMIT is the value below which the values are counted exactly
+	 */
+	public final static long EXACT_LIMIT = 2 * SUB_BUCKETS;
+	/**
+	 * MAX_VALUE is the largest value counted in its own bucket
+	 */
+	public final static long MAX_VALUE = (1L << 40) - 1;
+	private final static int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+	private final long[] counts = new long[index(MAX_VALUE) + 1];
+	private long count = 0;
+	private long sum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	/**
+	 * Counts the value.
+	 * @param value non-negative value
+	 */
+	public void record(long value) {
+		assert value >= 0;
+
+		counts[index(Math.min(value, MAX_VALUE))]++;
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Removes all the values.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Returns the amount of the counted values.
+	 * @return amount of values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the smallest value.
+	 * @return smallest value, or 0 if there are no values
+	 */
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Returns the largest value.
+	 * @return largest value, or 0 if there are no values
+	 */
+	public long getMax() {
+		return count == 0 ? 0 : max;
+	}
+
+	/**
+	 * Returns the average of the values rounded down.
+	 * @return average, or 0 if there are no values
+	 */
+	public long getAverage() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns the given percentile of the values using the nearest-rank method.
+	 * The result is the largest value of the bucket containing the percentile, limited by the largest counted value.
+	 * @param percentile percentile from 0 to 100
+	 * @return percentile, or 0 if there are no values
+	 */
+	public long getPercentile(double percentile) {
+		assert percentile >= 0 && percentile <= 100;
+
+		if (count == 0) return 0;
+		long rank = Math.max((long) Math.ceil(percentile * count / 100), 1);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) return i == counts.length - 1 ? max : Math.max(Math.min(highestValue(i), max), min);
+		}
+		return max;
+	}
+
+	private static int index(long value) {
+		if (value < EXACT_LIMIT) return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	private static long highestValue(int index) {
+		if (index < EXACT_LIMIT) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index - shift * SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
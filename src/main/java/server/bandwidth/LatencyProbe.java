@@ -0,0 +1,241 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+import server.ProxySettings;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LatencyProbe is an implementation of {@link DownloadTest} that measures the round-trip time to the remote host instead
+ * of the bandwidth.
+ * Every run is a burst of TCP connects to the host, {@link LatencyProbe#DEFAULT_PROBE_INTERVAL} milliseconds apart by
+ * default; the time a connect takes is a single round trip. The round-trip times are counted in a reused
+ * {@link LatencyHistogram}, so a burst allocates nothing per probe. The host is resolved once before the burst, and
+ * the probes that fail or exceed {@link LatencyProbe#CONNECT_TIMEOUT} are counted as lost.
+ * The minimum, the average, the 50th and the 99th percentiles of the round-trip time and the jitter are logged as
+ * separate records in microseconds, with the additional information starting with {@link LatencyProbe#INFO_PREFIX}.
+ * The jitter is the average absolute difference between the consecutive round-trip times.
+ * The default URI is acquired through {@link SettingLoader#LATENCY_URI}, or {@link SettingLoader#HTTP_URI} if
+ * the former isn't specified, and the amount of probes through {@link SettingLoader#LATENCY_PROBES}. A SOCKS proxy
+ * from the proxy settings is used, other proxies can't relay plain TCP connects and are ignored.
+ * The default implementation of {@link BandwidthStatus} is {@link DefaultBandwidthStatus}.
+ */
+public class LatencyProbe extends TimerTask implements DownloadTest {
+	/**
+	 * INFO_PREFIX is the prefix of the additional information of the records logged by the probe
+	 */
+	public final static String INFO_PREFIX = "latency_";
+	/**
+	 * DEFAULT_PROBE_INTERVAL is the default pause in milliseconds between the probes of a burst
+	 */
+	public final static long DEFAULT_PROBE_INTERVAL = 50;
+	/**
+	 * CONNECT_TIMEOUT is the time in milliseconds after which a probe is counted as lost
+	 */
+	public final static int CONNECT_TIMEOUT = 2_000;
+
+	private URI uri;
+	private int probes;
+	private long probeInterval = DEFAULT_PROBE_INTERVAL;
+	private BandwidthStatus bs = new DefaultBandwidthStatus();
+	private Exception e = null;
+	private volatile Result lastResult = null;
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	/**
+	 * Result is the summary of a burst of probes.
+	 * @param min minimum round-trip time in microseconds
+	 * @param average average round-trip time in microseconds
+	 * @param p50 50th percentile of the round-trip time in microseconds
+	 * @param p99 99th percentile of the round-trip time in microseconds
+	 * @param jitter average absolute difference between the consecutive round-trip times in microseconds
+	 * @param received amount of successful probes
+	 * @param lost amount of failed probes
+	 */
+	public record Result(long min, long average, long p50, long p99, long jitter, int received, int lost) {}
+
+	public LatencyProbe() {
+		uri = URI.create(
+			SettingLoader.getValue(SettingLoader.LATENCY_URI)
+				.orElse(SettingLoader.getValue(SettingLoader.Parameter.HTTP_URI))
+		);
+		probes = Integer.parseInt(SettingLoader.getValue(SettingLoader.Parameter.LATENCY_PROBES));
+	}
+
+	@Override
+	public void run() {
+		try {
+			Result result = probe();
+			if (result == null) return;
+			lastResult = result;
+			bs.log(result.min(), INFO_PREFIX + "min");
+			bs.log(result.average(), INFO_PREFIX + "avg");
+			bs.log(result.p50(), INFO_PREFIX + "p50");
+			bs.log(result.p99(), INFO_PREFIX + "p99");
+			bs.log(result.jitter(), INFO_PREFIX + "jitter");
+		} catch (IOException exception) {
+			e = exception;
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sends the burst of probes.
+	 * @return summary of the burst, or null if all the probes have been lost
+	 */
+	private Result probe() throws IOException, InterruptedException {
+		InetSocketAddress address = new InetSocketAddress(uri.getHost(), port(uri));
+		if (address.isUnresolved()) throw new UnknownHostException(uri.getHost());
+		Proxy proxy = ProxySettings.getProxy();
+		if (proxy.type() != Proxy.Type.SOCKS) proxy = Proxy.NO_PROXY;
+
+		histogram.reset();
+		long previous = -1;
+		long differences = 0;
+		int lost = 0;
+		IOException lastFailure = null;
+		for (int i = 0; i < probes; i++) {
+			if (i > 0) TimeUnit.MILLISECONDS.sleep(probeInterval);
+			long rtt;
+			try (Socket socket = new Socket(proxy)) {
+				long start = System.nanoTime();
+				socket.connect(address, CONNECT_TIMEOUT);
+				rtt = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+			} catch (IOException exception) {
+				lost++;
+				lastFailure = exception;
+				continue;
+			}
+			histogram.record(rtt);
+			if (previous >= 0) differences += Math.abs(rtt - previous);
+			previous = rtt;
+		}
+
+		int received = (int) histogram.getCount();
+		if (received == 0) {
+			if (lastFailure != null) throw lastFailure;
+			return null;
+		}
+		return new Result(
+			histogram.getMin(),
+			histogram.getAverage(),
+			histogram.getPercentile(50),
+			histogram.getPercentile(99),
+			received > 1 ? differences / (received - 1) : 0,
+			received,
+			lost
+		);
+	}
+
+	private static int port(URI uri) {
+		if (uri.getPort() != -1) return uri.getPort();
+		return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+	}
+
+	@Override
+	public void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		assert bandwidthStatus != null;
+		bs = bandwidthStatus;
+	}
+
+	@Override
+	public BandwidthStatus getBandwidthStatus() {
+		return bs;
+	}
+
+	@Override
+	public Exception getException() {
+		return e;
+	}
+
+	@Override
+	public TimerTask toTimerTask() {
+		return this;
+	}
+
+	/**
+	 * Returns the summary of the last burst in which at least one probe has succeeded.
+	 * @return summary of the burst, or null if no probe has succeeded yet
+	 */
+	public Result getLastResult() {
+		return lastResult;
+	}
+
+	/**
+	 * Sets the amount of probes in a burst.
+	 * @param probes amount of probes
+	 */
+	public void setProbes(int probes) {
+		assert probes > 0;
+
+		this.probes = probes;
+	}
+
+	/**
+	 * Returns the amount of probes in a burst.
+	 * @return amount of probes
+	 */
+	public int getProbes() {
+		return probes;
+	}
+
+	/**
+	 * Sets the pause between the probes of a burst.
+	 * @param probeInterval pause in milliseconds
+	 */
+	public void setProbeInterval(long probeInterval) {
+		assert probeInterval >= 0;
+
+		this.probeInterval = probeInterval;
+	}
+
+	/**
+	 * Returns the pause between the probes of a burst.
+	 * @return pause in milliseconds
+	 */
+	public long getProbeInterval() {
+		return probeInterval;
+	}
+
+	/**
+	 * Sets URI of the remote host, only the host and the port of which are used.
+	 * @param uri URI of the remote host
+	 */
+	public void setUri(URI uri) {
+		assert uri != null;
+		this.uri = uri;
+	}
+
+	/**
+	 * Returns URI of the remote host.
+	 * @return URI of the remote host
+	 */
+	public URI getUri() {
+		return uri;
+	}
+}
@@ -0,0 +1,115 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.util.Arrays;
+
+/**
+ * Measurement is the result of a single transfer made by a {@link DownloadTest}.
+ * The times are measured with {@link System#nanoTime()} from the moment the connection starts to be established.
+ * Along with the totals, the measurement keeps the speeds of the consecutive sampling intervals of the transfer.
+ * The leading intervals slower than {@link Measurement#RAMP_UP_RATIO} of the 90th percentile of all the intervals are
+ * considered the ramp-up of the connection, such as TCP slow start, and the rest are considered the steady state.
+ * @param bytes amount of bytes of the body actually transferred
+ * @param timeToFirstByte time in nanoseconds until the status line and the headers of the response have been received
+ * @param duration time in nanoseconds until the whole body has been transferred
+ * @param intervalSpeeds speeds of the sampling intervals in bits per second, in chronological order
+ */
+public record Measurement(long bytes, long timeToFirstByte, long duration, long[] intervalSpeeds) {
+	/**
+	 * RAMP_UP_RATIO is the part of the 90th percentile of the interval speeds the ramp-up intervals don't reach
+	 */
+	public final static double RAMP_UP_RATIO = 0.5;
+
+	public Measurement {
+		assert bytes >= 0 && timeToFirstByte >= 0 && duration >= timeToFirstByte && intervalSpeeds != null;
+
+		intervalSpeeds = intervalSpeeds.clone();
+	}
+
+	/**
+	 * Creates the measurement without sampling intervals.
+	 */
+	public Measurement(long bytes, long timeToFirstByte, long duration) {
+		this(bytes, timeToFirstByte, duration, new long[0]);
+	}
+
+	/**
+	 * Returns the speeds of the sampling intervals.
+	 * @return copy of the interval speeds in bits per second
+	 */
+	@Override
+	public long[] intervalSpeeds() {
+		return intervalSpeeds.clone();
+	}
+
+	/**
+	 * Returns the steady-state speed of the transfer, which is the average speed of the intervals after the ramp-up.
+	 * If there are no such intervals, the speed over the whole duration is returned.
+	 * @return speed in bits per second
+	 */
+	public long getSpeed() {
+		int rampUp = getRampUpIntervals();
+		if (rampUp == intervalSpeeds.length) return getAverageSpeed();
+		long sum = 0;
+		for (int i = rampUp; i < intervalSpeeds.length; i++) sum += intervalSpeeds[i];
+		return sum / (intervalSpeeds.length - rampUp);
+	}
+
+	/**
+	 * Returns the speed of the transfer over the whole duration.
+	 * @return speed in bits per second
+	 */
+	public long getAverageSpeed() {
+		return (long) (bytes * 8 * 1e9 / Math.max(duration, 1));
+	}
+
+	/**
+	 * Returns the given percentile of the steady-state interval speeds using the nearest-rank method.
+	 * If there are no steady-state intervals, the speed over the whole duration is returned.
+	 * @param percentile percentile from 0 to 100
+	 * @return speed in bits per second
+	 */
+	public long getPercentile(double percentile) {
+		assert percentile >= 0 && percentile <= 100;
+
+		int rampUp = getRampUpIntervals();
+		if (rampUp == intervalSpeeds.length) return getAverageSpeed();
+		return percentile(Arrays.copyOfRange(intervalSpeeds, rampUp, intervalSpeeds.length), percentile);
+	}
+
+	/**
+	 * Returns the amount of the leading intervals which belong to the ramp-up.
+	 * If hardly any data has been transferred during the sampled intervals, all of them belong to the ramp-up.
+	 * @return amount of intervals
+	 */
+	public int getRampUpIntervals() {
+		if (intervalSpeeds.length == 0) return 0;
+		double threshold = RAMP_UP_RATIO * percentile(intervalSpeeds.clone(), 90);
+		if (threshold <= 0) return intervalSpeeds.length;
+		int rampUp = 0;
+		while (rampUp < intervalSpeeds.length && intervalSpeeds[rampUp] < threshold) rampUp++;
+		return rampUp;
+	}
+
+	private static long percentile(long[] values, double percentile) {
+		Arrays.sort(values);
+		int rank = (int) Math.ceil(percentile / 100 * values.length);
+		return values[Math.max(rank - 1, 0)];
+	}
+}
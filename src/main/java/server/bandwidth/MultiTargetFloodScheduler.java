@@ -0,0 +1,333 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MultiTargetFloodScheduler is an implementation of {@link FloodScheduler} that runs several independent
+ * {@link DownloadTest}s, the targets, each with its own pause.
+ * Every target is run by its own virtual thread of a {@link ScheduledThreadPoolExecutor}, so a slow test doesn't delay
+ * the others. The pause is counted from the end of the previous run of the target, so the runs missed during a slow test
+ * are coalesced instead of being run in a burst afterwards. The first run of every target is delayed by a random time up
+ * to its pause, but no more than {@link MultiTargetFloodScheduler#MAX_START_JITTER}, so the targets don't load the link
+ * at the same instant.
+ * The targets are acquired through {@link SettingLoader#TARGETS}; if it isn't specified, the only target is the test of
+ * {@link SettingLoader#PROTOCOL}. The default pause is acquired through {@link SettingLoader#IDLE_TIME}.
+ * If {@link SettingLoader#MIN_IDLE_TIME} or {@link SettingLoader#MAX_IDLE_TIME} is specified, the pause of every target
+ * without its own pause is chosen after every run by its own {@link AdaptiveIdleTime}. If
+ * {@link SettingLoader#DATA_BUDGET} is specified, all the targets which honor the transfer limit are run within
+ * a shared {@link DataBudget} by {@link BudgetedDownloadTest}, see {@link DefaultFloodScheduler}.
+ * If there are several targets, the additional information of the records of every target is tagged with its host by
+ * {@link TaggedBandwidthStatus}, and the adaptive pause of a target is chosen from its own records.
+ * {@link FloodScheduler#getDownloadTest()} returns the test of the first target, and
+ * {@link FloodScheduler#setDownloadTest(DownloadTest)} replaces all the targets with the given test.
+ */
+public class MultiTargetFloodScheduler implements FloodScheduler {
+	/**
+	 * MAX_START_JITTER is the maximum random delay in milliseconds of the first run of a target
+	 */
+	public final static long MAX_START_JITTER = 60_000;
+	/**
+	 * STOP_TIMEOUT is the maximum time in milliseconds {@link MultiTargetFloodScheduler#stopExecution()} waits for
+	 * the running tests
+	 */
+	public final static long STOP_TIMEOUT = DefaultFloodScheduler.STOP_TIMEOUT;
+	private final List<Target> targets = new ArrayList<>();
+	private long delay;
+	private long minDelay;
+	private long maxDelay;
+	private ScheduledThreadPoolExecutor executor = null;
+	private DataBudget dataBudget;
+	private final Map<DownloadTest, AdaptiveIdleTime> adaptiveIdleTimes = new ConcurrentHashMap<>();
+
+	/**
+	 * Target is a test run by the scheduler.
+	 * @param test test to run
+	 * @param delay pause between the runs in milliseconds, or -1 for the default pause of the scheduler
+	 */
+	public record Target(DownloadTest test, long delay) {
+		public Target {
+			assert test != null && delay >= -1;
+		}
+	}
+
+	public MultiTargetFloodScheduler() {
+		delay = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.IDLE_TIME));
+		minDelay = SettingLoader.getValue(SettingLoader.MIN_IDLE_TIME).map(Long::parseLong).orElse(-1L);
+		maxDelay = SettingLoader.getValue(SettingLoader.MAX_IDLE_TIME).map(Long::parseLong).orElse(-1L);
+		dataBudget = SettingLoader.getValue(SettingLoader.DATA_BUDGET).isPresent() ? new DataBudget() : null;
+		String targets = SettingLoader.getValue(SettingLoader.TARGETS).orElse(null);
+		if (targets == null) {
+			DownloadTest test = DefaultFloodScheduler.newDownloadTest(
+				SettingLoader.getValue(SettingLoader.Parameter.PROTOCOL),
+				null
+			);
+			if (test != null) this.targets.add(new Target(test, -1));
+		} else {
+			this.targets.addAll(parseTargets(targets));
+		}
+	}
+
+	/**
+	 * Parses the targets in the format of {@link SettingLoader#TARGETS}.
+	 * The targets with unsupported protocols or malformed fields are skipped.
+	 * @param targets list of targets
+	 * @return parsed targets
+	 */
+	static List<Target> parseTargets(String targets) {
+		assert targets != null;
+
+		List<Target> parsed = new ArrayList<>();
+		for (String target: targets.split(";")) {
+			String[] fields = target.split(",", 3);
+			try {
+				long delay = fields.length > 1 && !fields[1].isEmpty() ? Long.parseLong(fields[1]) : -1;
+				URI uri = fields.length > 2 && !fields[2].isEmpty() ? URI.create(fields[2]) : null;
+				DownloadTest test = DefaultFloodScheduler.newDownloadTest(fields[0], uri);
+				if (test != null && delay >= -1) parsed.add(new Target(test, delay));
+			} catch (IllegalArgumentException ignored) {}
+		}
+		return parsed;
+	}
+
+	@Override
+	public synchronized void execute() throws IllegalStateException {
+		if (executor != null) throw new IllegalStateException("The scheduler has been started already");
+
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+			Math.max(targets.size(), 1),
+			Thread.ofVirtual().name("flood-target-", 0).factory()
+		);
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.executor = executor;
+		adaptiveIdleTimes.clear();
+		tag(targets);
+		DefaultFloodScheduler.restore(
+			dataBudget,
+			targets.stream().map(Target::test).filter(DownloadTest::supportsTransferLimit).toList()
+		);
+		for (Target target: targets) {
+			long pause = Math.max(target.delay() == -1 ? delay : target.delay(), 1);
+			long jitter = ThreadLocalRandom.current().nextLong(Math.min(pause, MAX_START_JITTER) + 1);
+			DownloadTest test = DefaultFloodScheduler.budgeted(target.test(), dataBudget);
+			if (target.delay() == -1 && (minDelay != -1 || maxDelay != -1)) {
+				AdaptiveIdleTime policy = DefaultFloodScheduler.newAdaptiveIdleTime(
+					target.test(),
+					pause,
+					minDelay,
+					maxDelay
+				);
+				adaptiveIdleTimes.put(target.test(), policy);
+				executor.schedule(() -> adaptiveRun(executor, test, policy), jitter, TimeUnit.MILLISECONDS);
+				continue;
+			}
+			Runnable run = test.toTimerTask();
+			executor.scheduleWithFixedDelay(() -> {
+				try {
+					run.run();
+				} catch (RuntimeException ignored) {
+					// a failed run mustn't cancel the next ones
+				}
+			}, jitter, pause, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Tags the records of every target with its host through {@link TaggedBandwidthStatus}, so the results of
+	 * the targets of the same kind can be told apart. The targets of the same kind and host are numbered in their order,
+	 * e.g. "example.com#2". A single target isn't tagged.
+	 */
+	static void tag(List<Target> targets) {
+		Map<String, Integer> used = new HashMap<>();
+		for (Target target: targets) {
+			DownloadTest test = target.test();
+			BandwidthStatus bandwidthStatus = test.getBandwidthStatus();
+			if (bandwidthStatus instanceof TaggedBandwidthStatus tagged) bandwidthStatus = tagged.getBandwidthStatus();
+			if (targets.size() == 1) {
+				test.setBandwidthStatus(bandwidthStatus);
+				continue;
+			}
+
+			URI uri = switch (test) {
+				case HTTPDownloadTest downloadTest -> downloadTest.getUri();
+				case HTTPUploadTest uploadTest -> uploadTest.getUri();
+				case LatencyProbe probe -> probe.getUri();
+				default -> null;
+			};
+			String host = uri != null && uri.getHost() != null ? uri.getHost() : "target";
+			if (uri != null && uri.getPort() != -1) host += ":" + uri.getPort();
+			int number = used.merge(test.getClass().getName() + " " + host, 1, Integer::sum);
+			String tag = number == 1 ? host : host + "#" + number;
+			test.setBandwidthStatus(new TaggedBandwidthStatus(bandwidthStatus, tag));
+		}
+	}
+
+	/**
+	 * Runs the test once and schedules the next run after the pause chosen by the policy.
+	 */
+	private static void adaptiveRun(ScheduledThreadPoolExecutor executor, DownloadTest test, AdaptiveIdleTime policy) {
+		long start = System.currentTimeMillis();
+		try {
+			test.toTimerTask().run();
+		} catch (RuntimeException ignored) {
+			// a failed run mustn't cancel the next ones
+		}
+		long pause = DefaultFloodScheduler.nextPause(test, policy, start);
+		try {
+			executor.schedule(() -> adaptiveRun(executor, test, policy), pause, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ignored) {
+			// the scheduler has been stopped
+		}
+	}
+
+	/**
+	 * Stops execution of the targets, waiting up to {@link MultiTargetFloodScheduler#STOP_TIMEOUT} for the running tests
+	 * to finish. The scheduler can be started again afterwards.
+	 */
+	@Override
+	public void stopExecution() {
+		ScheduledThreadPoolExecutor executor;
+		synchronized (this) {
+			executor = this.executor;
+			this.executor = null;
+		}
+		if (executor == null) return;
+
+		executor.shutdown();
+		try {
+			executor.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sets the default pause between the runs of a target, used by the targets without their own pause.
+	 * The change is applied on the next start of the scheduler.
+	 * @param delay time in milliseconds
+	 */
+	@Override
+	public void setDelay(long delay) {
+		assert delay >= 0;
+		this.delay = delay;
+	}
+
+	@Override
+	public long getDelay() {
+		return delay;
+	}
+
+	/**
+	 * Sets the bounds of the pause, which make the pause of the targets without their own pause adapt to their results.
+	 * The change is applied on the next start of the scheduler.
+	 * @param min minimum pause in milliseconds, or -1 to use the default pause of the scheduler
+	 * @param max maximum pause in milliseconds, or -1 to use the default pause of the scheduler; if both are -1,
+	 *            the pause doesn't adapt
+	 */
+	public void setDelayBounds(long min, long max) {
+		assert min >= -1 && max >= -1;
+
+		minDelay = min;
+		maxDelay = max;
+	}
+
+	/**
+	 * Returns the policy choosing the pauses of the test, which keeps the decisions it has made.
+	 * @param test test of a target
+	 * @return instance of {@link AdaptiveIdleTime}, or null if the pause of the test doesn't adapt or the scheduler
+	 * hasn't been started
+	 */
+	public AdaptiveIdleTime getAdaptiveIdleTime(DownloadTest test) {
+		assert test != null;
+
+		return adaptiveIdleTimes.get(test);
+	}
+
+	/**
+	 * Sets the budget shared by the targets.
+	 * The change is applied on the next start of the scheduler.
+	 * @param dataBudget instance of {@link DataBudget}, or null to run the targets without a budget
+	 */
+	public synchronized void setDataBudget(DataBudget dataBudget) {
+		this.dataBudget = dataBudget;
+	}
+
+	/**
+	 * Returns the budget shared by the targets.
+	 * @return instance of {@link DataBudget}, or null if the targets run without a budget
+	 */
+	public synchronized DataBudget getDataBudget() {
+		return dataBudget;
+	}
+
+	@Override
+	public synchronized DownloadTest getDownloadTest() {
+		return targets.isEmpty() ? null : targets.getFirst().test();
+	}
+
+	@Override
+	public synchronized void setDownloadTest(DownloadTest downloadTest) {
+		assert downloadTest != null;
+
+		targets.clear();
+		targets.add(new Target(downloadTest, -1));
+	}
+
+	/**
+	 * Adds the target, which is run on the next start of the scheduler.
+	 * @param target target to run
+	 */
+	public synchronized void addTarget(Target target) {
+		assert target != null;
+
+		targets.add(target);
+	}
+
+	/**
+	 * Returns the targets of the scheduler.
+	 * @return unmodifiable list of the targets
+	 */
+	public synchronized List<Target> getTargets() {
+		return List.copyOf(targets);
+	}
+
+	/**
+	 * Sets the {@link BandwidthStatus} of all the targets.
+	 * If there are several targets, the records of every target are tagged with its host on the start of the scheduler.
+	 * @param bandwidthStatus an implementation of {@link BandwidthStatus}
+	 */
+	public synchronized void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		assert bandwidthStatus != null;
+
+		for (Target target: targets) target.test().setBandwidthStatus(bandwidthStatus);
+	}
+}
@@ -0,0 +1,141 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ObservableBandwidthStatus is a {@link BandwidthStatus} that passes all the operations to another
+ * {@link BandwidthStatus} and notifies the registered {@link BandwidthStatusListener}s about the saved records and
+ * the changes of the output destination.
+ * The listeners are notified in the thread that performed the operation, after the operation has completed.
+ * The changes made to the underlying {@link BandwidthStatus} bypassing ObservableBandwidthStatus are not noticed.
+ */
+public class ObservableBandwidthStatus implements BandwidthStatus {
+	private final BandwidthStatus bs;
+	private final CopyOnWriteArrayList<BandwidthStatusListener> listeners = new CopyOnWriteArrayList<>();
+
+	public ObservableBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		assert bandwidthStatus != null;
+
+		bs = bandwidthStatus;
+	}
+
+	/**
+	 * Registers the listener.
+	 * @param listener listener to notify
+	 */
+	public void addListener(BandwidthStatusListener listener) {
+		assert listener != null;
+
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters the listener.
+	 * @param listener registered listener
+	 */
+	public void removeListener(BandwidthStatusListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public void log(long speed, String additionalInfo) throws IOException {
+		long time;
+		synchronized (this) {
+			time = System.currentTimeMillis();
+			bs.log(time, speed, additionalInfo);
+		}
+		for (BandwidthStatusListener listener: listeners) {
+			listener.logged(time, speed, additionalInfo);
+		}
+	}
+
+	@Override
+	public void log(long time, long speed, String additionalInfo) throws IOException {
+		bs.log(time, speed, additionalInfo);
+		for (BandwidthStatusListener listener: listeners) {
+			listener.logged(time, speed, additionalInfo);
+		}
+	}
+
+	@Override
+	public void setOutputDestination(String destination) {
+		bs.setOutputDestination(destination);
+		for (BandwidthStatusListener listener: listeners) {
+			listener.outputDestinationChanged(destination);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		bs.flush();
+	}
+
+	@Override
+	public String getOutputDestination() {
+		return bs.getOutputDestination();
+	}
+
+	/**
+	 * Returns the underlying {@link BandwidthStatus}.
+	 * @return underlying {@link BandwidthStatus}
+	 */
+	public BandwidthStatus getBandwidthStatus() {
+		return bs;
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from) throws IOException {
+		return bs.collect(from);
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from, long to) throws IOException {
+		return bs.collect(from, to);
+	}
+
+	@Override
+	public BandwidthRecords collectRecords(long from, long to) throws IOException {
+		return bs.collectRecords(from, to);
+	}
+
+	@Override
+	public BandwidthRollups collectRollups(
+		long from,
+		long to,
+		BandwidthRollups.Resolution resolution
+	) throws IOException {
+		return bs.collectRollups(from, to, resolution);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof ObservableBandwidthStatus obs) {
+			return bs.equals(obs.getBandwidthStatus());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return bs.hashCode();
+	}
+}
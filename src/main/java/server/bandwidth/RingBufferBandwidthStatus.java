@@ -0,0 +1,223 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.LinkedList;
+
+/**
+ * RingBufferBandwidthStatus is a {@link BandwidthStatus} that keeps the most recent records of another
+ * {@link BandwidthStatus} in memory.
+ * The records are stored in a bounded ring buffer, which is filled with the latest stored records on the first access
+ * or by {@link RingBufferBandwidthStatus#warmUp()}, and extended on every {@link RingBufferBandwidthStatus#log(long, String)}.
+ * The records older than {@link SettingLoader#LOG_LIMIT} are evicted as the new ones are logged, the same way
+ * the underlying {@link BandwidthStatus} expires them.
+ * The requests for the periods that are fully covered by the ring buffer are answered from memory, the other requests
+ * are passed to the underlying {@link BandwidthStatus}.
+ * The records are kept in memory with the same dates as they are stored with, and the logging is serialized, so they
+ * are kept in the same order as they are stored even if they are logged by several threads at once.
+ * The records written to the underlying {@link BandwidthStatus} bypassing RingBufferBandwidthStatus are not seen
+ * until the next {@link RingBufferBandwidthStatus#warmUp()}.
+ */
+public class RingBufferBandwidthStatus implements BandwidthStatus {
+	/**
+	 * DEFAULT_CAPACITY is the default amount of records kept in memory
+	 */
+	public final static int DEFAULT_CAPACITY = 4096;
+
+	private final BandwidthStatus bs;
+	private final long[] times;
+	private final long[] speeds;
+	private final String[] infos;
+	private int head = 0;
+	private int size = 0;
+	private long coveredFrom = Long.MAX_VALUE;
+	private boolean warmedUp = false;
+
+	public RingBufferBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		this(bandwidthStatus, DEFAULT_CAPACITY);
+	}
+
+	public RingBufferBandwidthStatus(BandwidthStatus bandwidthStatus, int capacity) {
+		assert bandwidthStatus != null && capacity > 0;
+
+		bs = bandwidthStatus;
+		times = new long[capacity];
+		speeds = new long[capacity];
+		infos = new String[capacity];
+	}
+
+	/**
+	 * Fills the ring buffer with the latest records of the underlying {@link BandwidthStatus}.
+	 * @throws IOException if an I/O error occurred
+	 */
+	public synchronized void warmUp() throws IOException {
+		head = 0;
+		size = 0;
+		coveredFrom = expiry(System.currentTimeMillis());
+		try {
+			BandwidthRecords records = bs.collectRecords(coveredFrom, Long.MAX_VALUE);
+			int first = Math.max(0, records.size() - times.length);
+			if (first > 0) coveredFrom = records.getTime(first - 1) + 1;
+			for (int i = first; i < records.size(); i++) {
+				add(records.getTime(i), records.getSpeed(i), records.getInfo(i));
+			}
+		} catch (FileNotFoundException | NoSuchFileException ignored) {}
+		warmedUp = true;
+	}
+
+	/**
+	 * Evicts the records which have expired by the given date.
+	 */
+	private void evict(long time) {
+		long expiry = expiry(time);
+		while (size > 0 && times[head] < expiry) {
+			head = (head + 1) % times.length;
+			size--;
+		}
+		coveredFrom = Math.max(coveredFrom, expiry);
+	}
+
+	/**
+	 * Returns the date before which the records are expired by the given date.
+	 */
+	private static long expiry(long time) {
+		long limit = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.LOG_LIMIT));
+		return time < Long.MIN_VALUE + limit ? Long.MIN_VALUE : time - limit;
+	}
+
+	private void add(long time, long speed, String info) {
+		int tail = (head + size) % times.length;
+		if (size == times.length) {
+			coveredFrom = Math.max(coveredFrom, times[head] + 1);
+			head = (head + 1) % times.length;
+		} else {
+			size++;
+		}
+		times[tail] = time;
+		speeds[tail] = speed;
+		infos[tail] = info.intern();
+	}
+
+	@Override
+	public synchronized void log(long speed, String additionalInfo) throws IOException {
+		log(System.currentTimeMillis(), speed, additionalInfo);
+	}
+
+	@Override
+	public synchronized void log(long time, long speed, String additionalInfo) throws IOException {
+		if (!warmedUp) warmUp();
+		bs.log(time, speed, additionalInfo);
+		evict(time);
+		add(time, speed, additionalInfo.replace(System.lineSeparator(), " "));
+	}
+
+	@Override
+	public synchronized void setOutputDestination(String destination) {
+		bs.setOutputDestination(destination);
+		head = 0;
+		size = 0;
+		coveredFrom = Long.MAX_VALUE;
+		warmedUp = false;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		bs.flush();
+	}
+
+	@Override
+	public String getOutputDestination() {
+		return bs.getOutputDestination();
+	}
+
+	/**
+	 * Returns the underlying {@link BandwidthStatus}.
+	 * @return underlying {@link BandwidthStatus}
+	 */
+	public BandwidthStatus getBandwidthStatus() {
+		return bs;
+	}
+
+	/**
+	 * Returns the amount of records the ring buffer can hold.
+	 * @return amount of records
+	 */
+	public int getCapacity() {
+		return times.length;
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from) throws IOException {
+		return collect(from, System.currentTimeMillis());
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from, long to) throws IOException {
+		return collectRecords(from, to).toList();
+	}
+
+	@Override
+	public BandwidthRecords collectRecords(long from, long to) throws IOException {
+		synchronized (this) {
+			if (!warmedUp) warmUp();
+			if (from >= coveredFrom) {
+				BandwidthRecords records = new BandwidthRecords();
+				for (int i = lowerBound(from); i < size; i++) {
+					int index = (head + i) % times.length;
+					if (times[index] > to) break;
+					records.add(times[index], speeds[index], infos[index]);
+				}
+				return records;
+			}
+		}
+
+		return bs.collectRecords(from, to);
+	}
+
+	/**
+	 * Returns the logical position of the first record in the ring buffer which date is not lower than the given date.
+	 */
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (times[(head + middle) % times.length] < time) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof RingBufferBandwidthStatus rbbs) {
+			return bs.equals(rbbs.getBandwidthStatus());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return bs.hashCode();
+	}
+}
@@ -0,0 +1,208 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.LinkedList;
+
+/**
+ * RollupBandwidthStatus is a {@link BandwidthStatus} that maintains the records of another {@link BandwidthStatus}
+ * aggregated into minute, hour, and day buckets, the rollup tiers.
+ * The tiers are kept in memory: they are built from the stored records on the first access or by
+ * {@link RollupBandwidthStatus#warmUp()}, and every {@link RollupBandwidthStatus#log(long, String)} folds the record
+ * into the last bucket of every tier, so {@link RollupBandwidthStatus#collectRollups(long, long, BandwidthRollups.Resolution)}
+ * reads the buckets instead of the records. The minute tier keeps the buckets of the last
+ * {@link RollupBandwidthStatus#MINUTE_RETENTION} milliseconds and the hour tier of the last
+ * {@link RollupBandwidthStatus#HOUR_RETENTION} milliseconds, and no tier keeps the buckets longer than the records
+ * they aggregate are kept, i.e. {@link SettingLoader#LOG_LIMIT}; the requests for the older buckets are aggregated from
+ * the records of the underlying {@link BandwidthStatus}.
+ * The other requests are passed to the underlying {@link BandwidthStatus}.
+ * As with {@link RingBufferBandwidthStatus}, the dates of the folded records are taken right after the underlying
+ * {@link BandwidthStatus} has stored them, and the records written bypassing RollupBandwidthStatus are not seen until
+ * the next {@link RollupBandwidthStatus#warmUp()}.
+ */
+public class RollupBandwidthStatus implements BandwidthStatus {
+	/**
+	 * MINUTE_RETENTION is the time in milliseconds the minute buckets are kept for
+	 */
+	public final static long MINUTE_RETENTION = 7L * 24 * 60 * 60 * 1000; // 7 days
+	/**
+	 * HOUR_RETENTION is the time in milliseconds the hour buckets are kept for
+	 */
+	public final static long HOUR_RETENTION = 366L * 24 * 60 * 60 * 1000; // 366 days
+
+	private final BandwidthStatus bs;
+	private final BandwidthRollups.Resolution[] resolutions = BandwidthRollups.Resolution.values();
+	private final BandwidthRollups[] tiers = new BandwidthRollups[resolutions.length];
+	private final long[] coveredFrom = new long[resolutions.length];
+	private boolean warmedUp = false;
+
+	public RollupBandwidthStatus(BandwidthStatus bandwidthStatus) {
+		assert bandwidthStatus != null;
+
+		bs = bandwidthStatus;
+		clear();
+	}
+
+	/**
+	 * Builds the tiers from the records of the underlying {@link BandwidthStatus}.
+	 * @throws IOException if an I/O error occurred
+	 */
+	public synchronized void warmUp() throws IOException {
+		clear();
+		try {
+			BandwidthRecords records = bs.collectRecords(Long.MIN_VALUE, Long.MAX_VALUE);
+			for (int i = 0; i < records.size(); i++) {
+				for (BandwidthRollups tier: tiers) tier.fold(records.getTime(i), records.getSpeed(i), records.getInfo(i));
+			}
+			for (int i = 0; i < tiers.length; i++) coveredFrom[i] = Long.MIN_VALUE;
+			if (records.size() > 0) prune(records.getTime(records.size() - 1));
+		} catch (FileNotFoundException | NoSuchFileException ignored) {
+			for (int i = 0; i < tiers.length; i++) coveredFrom[i] = Long.MIN_VALUE;
+		}
+		warmedUp = true;
+	}
+
+	private void clear() {
+		for (int i = 0; i < tiers.length; i++) {
+			tiers[i] = new BandwidthRollups(resolutions[i]);
+			coveredFrom[i] = Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Removes the buckets which are older than the retention of their tier.
+	 * The buckets are removed once they exceed the retention by half of it, so the removal is amortized; until then,
+	 * {@link RollupBandwidthStatus#collectRollups(long, long, BandwidthRollups.Resolution)} passes the requests for them
+	 * to the underlying {@link BandwidthStatus}.
+	 */
+	private void prune(long time) {
+		for (int i = 0; i < tiers.length; i++) {
+			long retention = retention(resolutions[i]);
+			if (tiers[i].size() == 0) continue;
+			long age = time - tiers[i].getStart(0);
+			if (age <= retention || age - retention <= retention / 2) continue;
+
+			long cutoff = resolutions[i].bucket(time - retention);
+			tiers[i].removeBefore(cutoff);
+			coveredFrom[i] = Math.max(coveredFrom[i], cutoff);
+		}
+	}
+
+	/**
+	 * Returns the time in milliseconds the buckets of the resolution are kept for.
+	 */
+	private static long retention(BandwidthRollups.Resolution resolution) {
+		long limit = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.LOG_LIMIT));
+		return switch (resolution) {
+			case MINUTE -> Math.min(MINUTE_RETENTION, limit);
+			case HOUR -> Math.min(HOUR_RETENTION, limit);
+			case DAY -> limit;
+		};
+	}
+
+	@Override
+	public synchronized void log(long speed, String additionalInfo) throws IOException {
+		log(System.currentTimeMillis(), speed, additionalInfo);
+	}
+
+	@Override
+	public synchronized void log(long time, long speed, String additionalInfo) throws IOException {
+		if (!warmedUp) warmUp();
+		bs.log(time, speed, additionalInfo);
+		String info = additionalInfo.replace(System.lineSeparator(), " ");
+		for (BandwidthRollups tier: tiers) tier.fold(time, speed, info);
+		prune(time);
+	}
+
+	@Override
+	public synchronized void setOutputDestination(String destination) {
+		bs.setOutputDestination(destination);
+		clear();
+		warmedUp = false;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		bs.flush();
+	}
+
+	@Override
+	public String getOutputDestination() {
+		return bs.getOutputDestination();
+	}
+
+	/**
+	 * Returns the underlying {@link BandwidthStatus}.
+	 * @return underlying {@link BandwidthStatus}
+	 */
+	public BandwidthStatus getBandwidthStatus() {
+		return bs;
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from) throws IOException {
+		return bs.collect(from);
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from, long to) throws IOException {
+		return bs.collect(from, to);
+	}
+
+	@Override
+	public BandwidthRecords collectRecords(long from, long to) throws IOException {
+		return bs.collectRecords(from, to);
+	}
+
+	@Override
+	public BandwidthRollups collectRollups(
+		long from,
+		long to,
+		BandwidthRollups.Resolution resolution
+	) throws IOException {
+		synchronized (this) {
+			if (!warmedUp) warmUp();
+			int tier = resolution.ordinal();
+			long now = System.currentTimeMillis();
+			long retention = retention(resolution);
+			long expiry = resolution.bucket(now < Long.MIN_VALUE + retention ? Long.MIN_VALUE : now - retention);
+			// the buckets past the retention may be left until the next amortized removal, so they aren't trusted
+			if (resolution.bucket(from) >= Math.max(coveredFrom[tier], expiry)) return tiers[tier].range(from, to);
+		}
+
+		return bs.collectRollups(from, to, resolution);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof RollupBandwidthStatus rbs) {
+			return bs.equals(rbs.getBandwidthStatus());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return bs.hashCode();
+	}
+}
@@ -0,0 +1,193 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import global.SettingLoader;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * SegmentedBandwidthStatus is an implementation of {@link BandwidthStatus} that keeps the records in append-only
+ * segment files, each of them covering a fixed period of time.
+ * The output destination is a directory, where every segment is named after the beginning of its period
+ * in milliseconds since Jan. 1st 1970. The records inside the segments use the same format as {@link DefaultBandwidthStatus}.
+ * Logging a record appends a single line to the current segment, and the capacity is limited by deleting the whole
+ * segments that are older than {@link SettingLoader#LOG_LIMIT}, which is checked every time a new segment is started.
+ * The destination of the segments is acquired through {@link SettingLoader#OUTPUT_DESTINATION} by default.
+ */
+public class SegmentedBandwidthStatus implements BandwidthStatus {
+	/**
+	 * DEFAULT_SEGMENT_LENGTH is the default period of time in milliseconds a single segment covers
+	 */
+	public final static long DEFAULT_SEGMENT_LENGTH = 24L * 60 * 60 * 1000; // 1 day
+	private final static String SEGMENT_SUFFIX = ".log";
+
+	private String outputDst = SettingLoader.getValue(SettingLoader.Parameter.OUTPUT_DESTINATION);
+	private long segmentLength = DEFAULT_SEGMENT_LENGTH;
+	private long currentSegment = Long.MIN_VALUE;
+
+	@Override
+	public synchronized void log(long speed, String additionalInfo) throws IOException {
+		log(System.currentTimeMillis(), speed, additionalInfo);
+	}
+
+	@Override
+	public synchronized void log(long time, long speed, String additionalInfo) throws IOException {
+		additionalInfo = additionalInfo.replace(System.lineSeparator(), " ");
+
+		long segment = Math.floorDiv(time, segmentLength) * segmentLength;
+		Path segmentPath = Path.of(outputDst, segment + SEGMENT_SUFFIX);
+		if (segment != currentSegment) {
+			Files.createDirectories(Path.of(outputDst));
+			purge(time);
+			currentSegment = segment;
+		}
+
+		Files.writeString(
+			segmentPath,
+			time + " " + speed + " " + additionalInfo + System.lineSeparator(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.APPEND
+		);
+	}
+
+	private void purge(long time) throws IOException {
+		long limit = Long.parseLong(SettingLoader.getValue(SettingLoader.Parameter.LOG_LIMIT));
+		for (long segment: listSegments()) {
+			if (time - (segment + segmentLength) > limit) {
+				Files.deleteIfExists(Path.of(outputDst, segment + SEGMENT_SUFFIX));
+			}
+		}
+	}
+
+	private long[] listSegments() {
+		String[] names = new File(outputDst).list((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+		if (names == null) return new long[0];
+
+		long[] segments = new long[names.length];
+		int size = 0;
+		for (String name: names) {
+			try {
+				segments[size] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+				size++;
+			} catch (NumberFormatException ignored) {}
+		}
+		segments = Arrays.copyOf(segments, size);
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	@Override
+	public synchronized void setOutputDestination(String destination) {
+		assert destination != null;
+
+		outputDst = destination;
+		currentSegment = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Forces the current segment to the storage device, since it's the only segment records are appended to.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (currentSegment == Long.MIN_VALUE) return;
+		Path segmentPath = Path.of(outputDst, currentSegment + SEGMENT_SUFFIX);
+		if (!Files.isRegularFile(segmentPath)) return;
+		try (FileChannel fc = FileChannel.open(segmentPath, StandardOpenOption.WRITE)) {
+			fc.force(true);
+		}
+	}
+
+	@Override
+	public String getOutputDestination() {
+		return outputDst;
+	}
+
+	/**
+	 * Sets the period of time in milliseconds a single segment covers.
+	 * The segments that have already been written keep their original boundaries, so the value is expected to be
+	 * changed only before the first record is logged.
+	 * @param segmentLength period of time in milliseconds
+	 */
+	public synchronized void setSegmentLength(long segmentLength) {
+		assert segmentLength > 0;
+
+		this.segmentLength = segmentLength;
+		currentSegment = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Returns the period of time in milliseconds a single segment covers.
+	 * @return period of time in milliseconds
+	 */
+	public long getSegmentLength() {
+		return segmentLength;
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from) throws IOException {
+		return collect(from, System.currentTimeMillis());
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from, long to) throws IOException {
+		return collectRecords(from, to).toList();
+	}
+
+	@Override
+	public BandwidthRecords collectRecords(long from, long to) throws IOException {
+		BandwidthRecords records = new BandwidthRecords();
+		for (long segment: listSegments()) {
+			if (segment > to) break;
+			if (segment + segmentLength <= from) continue;
+
+			String recordString;
+			try (BufferedReader br = new BufferedReader(new FileReader(Path.of(outputDst, segment + SEGMENT_SUFFIX).toFile()))) {
+				while ((recordString = br.readLine()) != null && !recordString.isEmpty()) {
+					long date = Long.parseLong(recordString, 0, recordString.indexOf(' '), 10);
+					if (date > to) {
+						return records;
+					} else if (date >= from) {
+						records.addLine(recordString);
+					}
+				}
+			} catch (FileNotFoundException ignored) {}
+		}
+
+		return records;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof SegmentedBandwidthStatus sbs) {
+			return outputDst.equals(sbs.getOutputDestination());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return outputDst.hashCode();
+	}
+}
@@ -0,0 +1,150 @@
+/* Flood is a network inspection tool
+ * Copyright (C) 2024 Yegore Vlussove
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package server.bandwidth;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * TaggedBandwidthStatus is a {@link BandwidthStatus} that appends a constant tag to the additional information of every
+ * logged record and passes all the operations to another {@link BandwidthStatus}, so the records of several tests of
+ * the same kind sharing a {@link BandwidthStatus} can be told apart.
+ * The tag follows the additional information after {@link TaggedBandwidthStatus#SEPARATOR}, e.g.
+ * "download_speed@example.com"; {@link TaggedBandwidthStatus#baseInfo(String)} returns the additional information
+ * without the tag. The collected records are the records of all the tags.
+ */
+public class TaggedBandwidthStatus implements BandwidthStatus {
+	/**
+	 * SEPARATOR separates the tag from the additional information
+	 */
+	public final static String SEPARATOR = "@";
+
+	private final BandwidthStatus bs;
+	private final String tag;
+
+	/**
+	 * Creates the status.
+	 * @param bandwidthStatus underlying {@link BandwidthStatus}
+	 * @param tag tag of the records, which contains neither whitespace nor {@link TaggedBandwidthStatus#SEPARATOR}
+	 */
+	public TaggedBandwidthStatus(BandwidthStatus bandwidthStatus, String tag) {
+		assert bandwidthStatus != null && tag != null && !tag.isEmpty() && !tag.contains(SEPARATOR)
+			&& tag.chars().noneMatch(Character::isWhitespace);
+
+		bs = bandwidthStatus;
+		this.tag = tag;
+	}
+
+	/**
+	 * Returns the additional information without the tag.
+	 * @param info additional information of a record
+	 * @return the additional information before {@link TaggedBandwidthStatus#SEPARATOR}, or the whole of it if it isn't
+	 * tagged
+	 */
+	public static String baseInfo(String info) {
+		int separator = info.indexOf(SEPARATOR);
+		return separator == -1 ? info : info.substring(0, separator);
+	}
+
+	/**
+	 * Returns the additional information tagged with the tag of the status.
+	 * @param info additional information
+	 * @return tagged additional information
+	 */
+	public String tagged(String info) {
+		return info + SEPARATOR + tag;
+	}
+
+	@Override
+	public void log(long speed, String additionalInfo) throws IOException {
+		bs.log(speed, tagged(additionalInfo));
+	}
+
+	@Override
+	public void log(long time, long speed, String additionalInfo) throws IOException {
+		bs.log(time, speed, tagged(additionalInfo));
+	}
+
+	@Override
+	public void setOutputDestination(String destination) {
+		bs.setOutputDestination(destination);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		bs.flush();
+	}
+
+	@Override
+	public String getOutputDestination() {
+		return bs.getOutputDestination();
+	}
+
+	/**
+	 * Returns the tag of the records.
+	 * @return tag
+	 */
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * Returns the underlying {@link BandwidthStatus}.
+	 * @return underlying {@link BandwidthStatus}
+	 */
+	public BandwidthStatus getBandwidthStatus() {
+		return bs;
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from) throws IOException {
+		return bs.collect(from);
+	}
+
+	@Override
+	public LinkedList<String[]> collect(long from, long to) throws IOException {
+		return bs.collect(from, to);
+	}
+
+	@Override
+	public BandwidthRecords collectRecords(long from, long to) throws IOException {
+		return bs.collectRecords(from, to);
+	}
+
+	@Override
+	public BandwidthRollups collectRollups(
+		long from,
+		long to,
+		BandwidthRollups.Resolution resolution
+	) throws IOException {
+		return bs.collectRollups(from, to, resolution);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof TaggedBandwidthStatus tbs) {
+			return bs.equals(tbs.getBandwidthStatus()) && tag.equals(tbs.getTag());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * bs.hashCode() + tag.hashCode();
+	}
+}
@@ -69,5 +69,27 @@ public class SettingLoaderTests {
 			assertEquals("socks.example.com", SettingLoader.getValue(SettingLoader.PROXY_URL).get());
 			assertEquals("69", SettingLoader.getValue(SettingLoader.PROXY_PORT).get());
 		}
+
+		@Test
+		void reloadModifiedConfig() throws IOException, InterruptedException {
+			Files.writeString(newConfigFile, SettingLoader.PORT + " 20\n");
+			assertEquals("20", SettingLoader.getValue(SettingLoader.PORT).get());
+
+			Files.writeString(newConfigFile, SettingLoader.PORT + " 2000\n");
+			String port = "";
+			for (int attempt = 0; attempt < 50 && !port.equals("2000"); attempt++) {
+				Thread.sleep(100);
+				port = SettingLoader.getValue(SettingLoader.PORT).get();
+			}
+			assertEquals("2000", port, "The modification is expected to be noticed");
+
+			Files.delete(newConfigFile);
+			for (int attempt = 0; attempt < 50 && !port.equals(String.valueOf(DefaultSettings.PORT)); attempt++) {
+				Thread.sleep(100);
+				port = SettingLoader.getValue(SettingLoader.PORT).get();
+			}
+			assertEquals(String.valueOf(DefaultSettings.PORT), port, "The deletion is expected to be noticed");
+			Files.createFile(newConfigFile);
+		}
 	}
 }
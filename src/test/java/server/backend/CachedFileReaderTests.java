@@ -0,0 +1,76 @@
+package server.backend;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachedFileReaderTests {
+	Path directory;
+
+	@BeforeEach
+	void beforeEach() throws IOException {
+		directory = Files.createTempDirectory(null);
+	}
+
+	@AfterEach
+	void afterEach() throws IOException {
+		try (var files = Files.list(directory)) {
+			for (Path file: files.toList()) Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	void sharedInstance() {
+		assertNotNull(CachedFileReader.getCachedFileReader());
+		assertSame(CachedFileReader.getCachedFileReader(), CachedFileReader.getCachedFileReader());
+	}
+
+	@Test
+	void readOnlyContent() throws IOException {
+		Path file = Files.writeString(directory.resolve("file"), "content");
+		CachedFileReader reader = new CachedFileReader(1024);
+
+		ByteBuffer content = reader.read(file);
+		assertEquals("content", StandardCharsets.UTF_8.decode(content).toString());
+		assertThrows(ReadOnlyBufferException.class, () -> reader.read(file).put((byte) 0));
+		assertEquals(7, reader.read(file).remaining(), "Every read is expected to get its own view");
+	}
+
+	@Test
+	void modifiedFileReloaded() throws IOException, InterruptedException {
+		Path file = Files.writeString(directory.resolve("file"), "old");
+		CachedFileReader reader = new CachedFileReader(1024);
+		reader.read(file);
+
+		Files.writeString(file, "new content");
+		String content = "";
+		for (int attempt = 0; attempt < 100 && !content.equals("new content"); attempt++) {
+			Thread.sleep(50);
+			content = StandardCharsets.UTF_8.decode(reader.read(file)).toString();
+		}
+		assertEquals("new content", content, "The modification is expected to be noticed");
+	}
+
+	@Test
+	void capacityRespected() throws IOException {
+		CachedFileReader reader = new CachedFileReader(1024);
+		for (int i = 0; i < 8; i++) {
+			reader.read(Files.write(directory.resolve("file" + i), new byte[300]));
+		}
+		assertTrue(reader.size() <= 1024);
+
+		Path big = Files.write(directory.resolve("big"), new byte[2048]);
+		assertEquals(2048, reader.read(big).remaining(), "A file that doesn't fit is still expected to be read");
+		assertTrue(reader.size() <= 1024);
+	}
+}
@@ -0,0 +1,47 @@
+package server.backend;
+
+import org.junit.jupiter.api.Test;
+import server.bandwidth.BandwidthRecords;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownsamplerTests {
+	@Test
+	void fewRecords() {
+		BandwidthRecords records = new BandwidthRecords();
+		records.add(0, 1, "a");
+		records.add(1, 2, "a");
+		assertSame(records, Downsampler.downsample(records, 2));
+	}
+
+	@Test
+	void keepPeaks() {
+		BandwidthRecords records = new BandwidthRecords();
+		for (int i = 0; i < 1000; i++) records.add(i * 1000L, i == 500 ? 1_000_000 : 1000 + i % 3, "download_speed");
+
+		BandwidthRecords downsampled = Downsampler.downsample(records, 20);
+		assertEquals(20, downsampled.size());
+		assertEquals(0, downsampled.getTime(0), "The first record is expected to be kept");
+		assertEquals(999_000, downsampled.getTime(19), "The last record is expected to be kept");
+		boolean peak = false;
+		for (int i = 0; i < downsampled.size(); i++) {
+			if (i > 0) assertTrue(downsampled.getTime(i - 1) < downsampled.getTime(i), "The order is expected to be kept");
+			peak |= downsampled.getSpeed(i) == 1_000_000;
+		}
+		assertTrue(peak, "The peak is expected to be kept");
+	}
+
+	@Test
+	void splitBetweenSeries() {
+		BandwidthRecords records = new BandwidthRecords();
+		for (int i = 0; i < 400; i++) records.add(i, i, i % 4 == 0 ? "upload_speed" : "download_speed");
+
+		BandwidthRecords downsampled = Downsampler.downsample(records, 41);
+		assertEquals(41, downsampled.size());
+		int uploads = 0;
+		for (int i = 0; i < downsampled.size(); i++) {
+			if (downsampled.getInfo(i).equals("upload_speed")) uploads++;
+		}
+		assertEquals(10, uploads, "The records are expected to be split in proportion to the series sizes");
+	}
+}
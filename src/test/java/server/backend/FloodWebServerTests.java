@@ -1,8 +1,106 @@
 package server.backend;
 
+import global.RequestType;
+import global.SettingLoader;
+import org.junit.jupiter.api.*;
+import server.bandwidth.BandwidthStatus;
+import server.bandwidth.DefaultBandwidthStatus;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class FloodWebServerTests extends WebServerTests {
 	@Override
 	WebServer getInstance() {
 		return new FloodWebServer();
 	}
+
+	@Nested
+	class SaturatedPool {
+		Path output;
+		Path newConfigFile;
+		String oldConfigFile;
+		Field configField;
+
+		@BeforeEach
+		void beforeEach() throws IOException, NoSuchFieldException, IllegalAccessException {
+			output = Files.createTempFile(null, null);
+			newConfigFile = Files.createTempFile(null, null);
+
+			configField = SettingLoader.class.getDeclaredField("configPath");
+			configField.trySetAccessible();
+			oldConfigFile = (String) configField.get(null);
+			configField.set(null, newConfigFile.toString());
+
+			try (FileWriter fw = new FileWriter(newConfigFile.toString())) {
+				fw.write(SettingLoader.MAX_THREADS + " 1\n");
+				fw.write(SettingLoader.KEEP_ALIVE_TIMEOUT + " 5000\n");
+				fw.write(SettingLoader.PORT + " 54231");
+			}
+		}
+
+		@AfterEach
+		void afterEach() throws IOException, IllegalAccessException {
+			Files.delete(output);
+			Files.delete(newConfigFile);
+
+			configField.set(null, oldConfigFile);
+		}
+
+		@Test
+		void closeIdleConnection() throws IOException, InterruptedException {
+			FloodWebServer ws = new FloodWebServer();
+			BandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			bandwidthStatus.log(1000, "data");
+			ws.setBandwidthStatus(bandwidthStatus);
+
+			String request = "GET /%s?u=%d&t=5 HTTP/1.1\r\nHost: localhost\r\n%s\r\n"
+				.formatted(RequestType.retrieve_last, GregorianCalendar.SECOND, "%s");
+			ws.start();
+			assertTrue(ws.awaitReady(5000));
+			try (Socket idle = new Socket("localhost", ws.getPort())) {
+				idle.setSoTimeout(5000);
+				idle.getOutputStream().write(request.formatted("").getBytes(StandardCharsets.US_ASCII));
+				readResponse(idle.getInputStream());
+
+				try (Socket waiting = new Socket("localhost", ws.getPort())) {
+					waiting.setSoTimeout(5000);
+					waiting.getOutputStream().write(
+						request.formatted("Connection: close\r\n").getBytes(StandardCharsets.US_ASCII)
+					);
+					String response = assertTimeout(
+						Duration.ofMillis(2000),
+						() -> new String(waiting.getInputStream().readAllBytes(), StandardCharsets.US_ASCII),
+						"The idle connection isn't expected to hold the only thread for the whole keep-alive timeout"
+					);
+					assertTrue(response.startsWith("HTTP/1.1 200"));
+				}
+				assertEquals(-1, idle.getInputStream().read(), "The idle connection is expected to be closed");
+			} finally {
+				ws.interrupt();
+			}
+		}
+
+		void readResponse(InputStream is) throws IOException {
+			StringBuilder head = new StringBuilder();
+			while (!head.toString().endsWith("\n\n")) {
+				int b = is.read();
+				if (b == -1) fail("The response is expected to be complete");
+				if (b != '\r') head.append((char) b);
+			}
+			String length = head.substring(head.indexOf("Content-Length: ") + "Content-Length: ".length());
+			is.readNBytes(Integer.parseInt(length.substring(0, length.indexOf('\n'))));
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package server.backend;
+
+import global.RequestType;
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HTTPRequestParserTests {
+	@Test
+	void parseParameters() throws ProtocolException {
+		HTTPRequestParser parser = new HTTPRequestParser();
+		ByteBuffer buffer = buffer("GET /retrieve_range?s=100&e=200&x=abc HTTP/1.1\r\nHost: localhost\r\n\r\n");
+		assertTrue(parser.parse(buffer));
+		assertFalse(buffer.hasRemaining());
+		assertEquals(RequestType.retrieve_range, parser.getRequestType());
+		assertEquals(100, parser.getParameter('s'));
+		assertEquals(200, parser.getParameter('e'));
+		assertFalse(parser.hasParameter('x'));
+		assertThrows(NoSuchElementException.class, () -> parser.getParameter('t'));
+	}
+
+	@Test
+	void parseUnknownType() throws ProtocolException {
+		HTTPRequestParser parser = new HTTPRequestParser();
+		assertTrue(parser.parse(buffer("GET /retrieve_nothing?u=deeznuts&t=-69 HTTP/1.1\n\n")));
+		assertNull(parser.getRequestType());
+		assertFalse(parser.hasParameter('u'));
+		assertFalse(parser.hasParameter('t'));
+	}
+
+	@Test
+	void parseSplitRequest() throws ProtocolException {
+		String request = "POST /retrieve_last?u=13&t=5 HTTP/1.1\r\nContent-Length: 4\r\n\r\nbody";
+		HTTPRequestParser parser = new HTTPRequestParser();
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		for (int i = 0; i < request.length() - 1; i++) {
+			buffer.put((byte) request.charAt(i));
+			assertFalse(parser.parse(buffer.flip()), "Incomplete request parsed");
+			buffer.compact();
+		}
+		buffer.put((byte) request.charAt(request.length() - 1));
+		assertTrue(parser.parse(buffer.flip()));
+		assertEquals(RequestType.retrieve_last, parser.getRequestType());
+		assertEquals(4, parser.getContentLength());
+		assertEquals(13, parser.getParameter('u'));
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	void parsePipelinedRequests() throws ProtocolException {
+		HTTPRequestParser parser = new HTTPRequestParser();
+		ByteBuffer buffer = buffer(
+			"GET /retrieve_last?u=13&t=5 HTTP/1.1\nContent-Length: 2\n\nab" +
+			"GET /retrieve_range?s=1&e=2 HTTP/1.1\nConnection: close\n\n" +
+			"GET /retrieve_last"
+		);
+		assertTrue(parser.parse(buffer));
+		assertEquals(RequestType.retrieve_last, parser.getRequestType());
+		assertTrue(parser.isKeepAlive());
+		assertTrue(parser.parse(buffer));
+		assertEquals(RequestType.retrieve_range, parser.getRequestType());
+		assertFalse(parser.hasParameter('u'));
+		assertFalse(parser.isKeepAlive());
+		assertFalse(parser.parse(buffer));
+		assertEquals("GET /retrieve_last".length(), buffer.remaining());
+	}
+
+	@Test
+	void keepAlive() throws ProtocolException {
+		HTTPRequestParser parser = new HTTPRequestParser();
+		assertTrue(parser.parse(buffer("GET / HTTP/1.0\n\n")));
+		assertFalse(parser.isKeepAlive());
+		assertTrue(parser.parse(buffer("GET / HTTP/1.0\nconnection: Keep-Alive\n\n")));
+		assertTrue(parser.isKeepAlive());
+		assertTrue(parser.parse(buffer("GET / HTTP/1.1\nConnection: upgrade, close\n\n")));
+		assertFalse(parser.isKeepAlive());
+	}
+
+	@Test
+	void malformedContentLength() {
+		HTTPRequestParser parser = new HTTPRequestParser();
+		assertThrows(ProtocolException.class, () -> parser.parse(buffer("POST / HTTP/1.1\nContent-Length: -1\n\n")));
+	}
+
+	private static ByteBuffer buffer(String data) {
+		return ByteBuffer.wrap(data.getBytes(StandardCharsets.US_ASCII));
+	}
+}
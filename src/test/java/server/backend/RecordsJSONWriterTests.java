@@ -0,0 +1,47 @@
+package server.backend;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import server.bandwidth.BandwidthRecords;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RecordsJSONWriterTests {
+	@Test
+	void emptyRecords() throws IOException {
+		RecordsJSONWriter writer = new RecordsJSONWriter(new BandwidthRecords());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		writer.write(os);
+
+		assertEquals("{\"records\":[]}", os.toString(StandardCharsets.UTF_8));
+		assertEquals(os.size(), writer.length(), "The precomputed length doesn't match");
+	}
+
+	@Test
+	void serialization() throws IOException {
+		BandwidthRecords records = new BandwidthRecords();
+		records.add(0, -1, "");
+		records.add(1718000000000L, Long.MAX_VALUE, "download_speed");
+		records.add(Long.MIN_VALUE, 10, "quote \" backslash \\ tab \t bell \u0007 unicode é中");
+		records.add(1718000000001L, 1000, "download_speed");
+
+		RecordsJSONWriter writer = new RecordsJSONWriter(records);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		writer.write(os);
+		assertEquals(os.size(), writer.length(), "The precomputed length doesn't match");
+
+		JSONArray array = new JSONObject(os.toString(StandardCharsets.UTF_8)).getJSONArray("records");
+		assertEquals(records.size(), array.length(), "The amount of records doesn't match");
+		for (int i = 0; i < records.size(); i++) {
+			JSONArray record = array.getJSONArray(i);
+			assertEquals(Long.toString(records.getTime(i)), record.getString(0));
+			assertEquals(Long.toString(records.getSpeed(i)), record.getString(1));
+			assertEquals(records.getInfo(i), record.getString(2));
+		}
+	}
+}
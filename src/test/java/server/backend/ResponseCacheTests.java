@@ -0,0 +1,67 @@
+package server.backend;
+
+import global.RequestType;
+import org.junit.jupiter.api.Test;
+import server.bandwidth.DefaultBandwidthStatus;
+import server.bandwidth.ObservableBandwidthStatus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCacheTests {
+	@Test
+	void hitsAndMisses() {
+		ResponseCache cache = new ResponseCache(new ObservableBandwidthStatus(new DefaultBandwidthStatus()), 1024);
+		ResponseCache.Key key = new ResponseCache.Key(RequestType.retrieve_last, 10, 24);
+		assertNull(cache.get(key, 0));
+		cache.put(key, new ResponseCache.Entry(new byte[16], 100), cache.generation());
+		assertNotNull(cache.get(key, 50));
+		assertNull(cache.get(key, 150), "The first record has left the period");
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	void invalidateOnLog() {
+		ObservableBandwidthStatus bandwidthStatus = new ObservableBandwidthStatus(new DefaultBandwidthStatus());
+		ResponseCache cache = new ResponseCache(bandwidthStatus, 1024);
+		long now = System.currentTimeMillis();
+		ResponseCache.Key last = new ResponseCache.Key(RequestType.retrieve_last, 10, 24);
+		ResponseCache.Key past = new ResponseCache.Key(RequestType.retrieve_range, now - 2000, now - 1000);
+		ResponseCache.Key current = new ResponseCache.Key(RequestType.retrieve_range, now - 2000, now + 1000);
+		long generation = cache.generation();
+		for (ResponseCache.Key key: new ResponseCache.Key[] {last, past, current}) {
+			cache.put(key, new ResponseCache.Entry(new byte[16], Long.MAX_VALUE), generation);
+		}
+
+		cache.logged(now, 1000, "data");
+		assertNull(cache.get(last, 0));
+		assertNotNull(cache.get(past, 0), "A saved record can't fall into the past period");
+		assertNull(cache.get(current, 0));
+
+		cache.put(last, new ResponseCache.Entry(new byte[16], Long.MAX_VALUE), generation);
+		assertNull(cache.get(last, 0), "A response built before the invalidation must not be cached");
+
+		cache.release();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void evictLeastRecentlyUsed() {
+		ResponseCache cache = new ResponseCache(new ObservableBandwidthStatus(new DefaultBandwidthStatus()), 1024);
+		ResponseCache.Key first = new ResponseCache.Key(RequestType.retrieve_range, 0, 1);
+		ResponseCache.Key second = new ResponseCache.Key(RequestType.retrieve_range, 0, 2);
+		ResponseCache.Key third = new ResponseCache.Key(RequestType.retrieve_range, 0, 3);
+		cache.put(first, new ResponseCache.Entry(new byte[300], Long.MAX_VALUE), cache.generation());
+		cache.put(second, new ResponseCache.Entry(new byte[300], Long.MAX_VALUE), cache.generation());
+		cache.get(first, 0);
+		cache.put(third, new ResponseCache.Entry(new byte[300], Long.MAX_VALUE), cache.generation());
+
+		assertNotNull(cache.get(first, 0));
+		assertNull(cache.get(second, 0), "The least recently used response is expected to be evicted");
+		assertNotNull(cache.get(third, 0));
+		assertTrue(cache.size() <= 1024);
+
+		cache.put(second, new ResponseCache.Entry(new byte[2048], Long.MAX_VALUE), cache.generation());
+		assertNull(cache.get(second, 0), "A response bigger than the capacity is not expected to be cached");
+	}
+}
@@ -0,0 +1,39 @@
+package server.backend;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import server.bandwidth.BandwidthRollups;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RollupsJSONWriterTests {
+	@Test
+	void serialization() throws IOException {
+		BandwidthRollups rollups = new BandwidthRollups(BandwidthRollups.Resolution.HOUR);
+		rollups.add(0, 1, -1, -1, -1, -1, "");
+		rollups.add(1717999200000L, 4, 10, Long.MAX_VALUE, 400, 100, "quote \" é");
+
+		RollupsJSONWriter writer = new RollupsJSONWriter(rollups);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		writer.write(os);
+		assertEquals(os.size(), writer.length(), "The precomputed length doesn't match");
+
+		JSONArray array = new JSONObject(os.toString(StandardCharsets.UTF_8)).getJSONArray("records");
+		assertEquals(rollups.size(), array.length(), "The amount of buckets doesn't match");
+		for (int i = 0; i < rollups.size(); i++) {
+			JSONArray bucket = array.getJSONArray(i);
+			assertEquals(Long.toString(rollups.getStart(i)), bucket.getString(0));
+			assertEquals(Long.toString(rollups.getAverage(i)), bucket.getString(1));
+			assertEquals(rollups.getInfo(i), bucket.getString(2));
+			assertEquals(Integer.toString(rollups.getCount(i)), bucket.getString(3));
+			assertEquals(Long.toString(rollups.getMin(i)), bucket.getString(4));
+			assertEquals(Long.toString(rollups.getMax(i)), bucket.getString(5));
+			assertEquals(Long.toString(rollups.getLast(i)), bucket.getString(6));
+		}
+	}
+}
@@ -0,0 +1,8 @@
+package server.backend;
+
+public class SelectorWebServerTests extends WebServerTests {
+	@Override
+	WebServer getInstance() {
+		return new SelectorWebServer();
+	}
+}
@@ -0,0 +1,149 @@
+package server.backend;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StaticFilesTests {
+	Path root;
+	StaticFiles staticFiles;
+
+	@BeforeEach
+	void beforeEach() throws IOException {
+		root = Files.createTempDirectory(null);
+		Files.createDirectory(root.resolve("dashboard"));
+		Files.writeString(root.resolve("dashboard").resolve("index.html"), "<html></html>");
+		Files.writeString(root.resolve("app.js"), "console.log(1)");
+		Files.write(root.resolve("app.js.gz"), new byte[] {0x1f, (byte) 0x8b, 8, 0});
+		staticFiles = new StaticFiles(root);
+	}
+
+	@AfterEach
+	void afterEach() throws IOException {
+		try (var files = Files.walk(root)) {
+			for (Path file: files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+		}
+	}
+
+	@Test
+	void serveFile() throws IOException {
+		StaticFiles.Response response = staticFiles.respond(request("GET /dashboard/ HTTP/1.1\n\n"), true);
+		String head = head(response);
+		assertTrue(head.startsWith("HTTP/1.1 200 OK\n"), head);
+		assertTrue(head.contains("Content-Type: text/html; charset=utf-8\n"), head);
+		assertTrue(head.contains("Content-Length: 13\n"), head);
+		assertTrue(head.contains("Connection: keep-alive\n"), head);
+		assertNotNull(header(head, "ETag"));
+		assertNotNull(header(head, "Last-Modified"));
+		assertEquals("<html></html>", body(response));
+	}
+
+	@Test
+	void revalidateFile() throws IOException {
+		String head = head(staticFiles.respond(request("GET /app.js HTTP/1.1\n\n"), true));
+		String eTag = header(head, "ETag");
+		String lastModified = header(head, "Last-Modified");
+
+		StaticFiles.Response response =
+			staticFiles.respond(request("GET /app.js HTTP/1.1\nIf-None-Match: \"0-0\", " + eTag + "\n\n"), false);
+		assertTrue(head(response).startsWith("HTTP/1.1 304 Not Modified\n"), head(response));
+		assertTrue(head(response).contains("Connection: close\n"));
+		assertEquals("", body(response));
+
+		response = staticFiles.respond(request("GET /app.js HTTP/1.1\nIf-Modified-Since: " + lastModified + "\n\n"), true);
+		assertTrue(head(response).startsWith("HTTP/1.1 304 Not Modified\n"), head(response));
+
+		response = staticFiles.respond(request("GET /app.js HTTP/1.1\nIf-None-Match: \"0-0\"\n\n"), true);
+		assertTrue(head(response).startsWith("HTTP/1.1 200 OK\n"), head(response));
+	}
+
+	@Test
+	void serveCompressedVariant() throws IOException {
+		StaticFiles.Response response =
+			staticFiles.respond(request("GET /app.js HTTP/1.1\nAccept-Encoding: deflate, gzip\n\n"), true);
+		String head = head(response);
+		assertTrue(head.contains("Content-Encoding: gzip\n"), head);
+		assertTrue(head.contains("Content-Type: text/javascript; charset=utf-8\n"), head);
+		assertTrue(head.contains("Content-Length: 4\n"), head);
+		assertTrue(head.contains("Vary: Accept-Encoding\n"), head);
+
+		response = staticFiles.respond(request("GET /app.js HTTP/1.1\nAccept-Encoding: gzip;q=0\n\n"), true);
+		assertFalse(head(response).contains("Content-Encoding"), head(response));
+		assertEquals("console.log(1)", body(response));
+	}
+
+	@Test
+	void serveHead() throws IOException {
+		StaticFiles.Response response = staticFiles.respond(request("HEAD /app.js HTTP/1.1\n\n"), true);
+		assertTrue(head(response).contains("Content-Length: 14\n"), head(response));
+		assertEquals("", body(response));
+	}
+
+	@Test
+	void serveBigFile() throws IOException {
+		byte[] content = new byte[(int) CachedFileReader.MAPPING_THRESHOLD + 1];
+		content[content.length - 1] = 1;
+		Files.write(root.resolve("big.bin"), content);
+
+		long cached = CachedFileReader.getCachedFileReader().size();
+		StaticFiles.Response response = staticFiles.respond(request("GET /big.bin HTTP/1.1\n\n"), true);
+		assertNotNull(response.file(), "A big file is expected to be transferred from the file");
+		assertEquals(cached, CachedFileReader.getCachedFileReader().size(), "A big file isn't expected to be cached");
+		String eTag = "ETag: \"%x-%x\"\n".formatted(
+			Files.getLastModifiedTime(root.resolve("big.bin")).toMillis(),
+			content.length
+		);
+		assertTrue(head(response).contains(eTag), head(response));
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		response.writeBody(Channels.newChannel(body));
+		assertArrayEquals(content, body.toByteArray());
+	}
+
+	@Test
+	void rejectMissingFiles() throws IOException {
+		Files.writeString(root.resolveSibling(root.getFileName() + ".secret"), "secret");
+		try {
+			for (String path: new String[] {"/missing.js", "/../" + root.getFileName() + ".secret", "/%2e%2e/etc/passwd"}) {
+				StaticFiles.Response response = staticFiles.respond(request("GET " + path + " HTTP/1.1\n\n"), true);
+				assertTrue(head(response).startsWith("HTTP/1.1 404 Not Found\n"), path);
+				assertEquals("", body(response));
+			}
+		} finally {
+			Files.delete(root.resolveSibling(root.getFileName() + ".secret"));
+		}
+	}
+
+	private static HTTPRequestParser request(String request) throws IOException {
+		HTTPRequestParser parser = new HTTPRequestParser();
+		assertTrue(parser.parse(ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII))));
+		return parser;
+	}
+
+	private static String head(StaticFiles.Response response) {
+		return new String(response.head(), StandardCharsets.US_ASCII);
+	}
+
+	private static String body(StaticFiles.Response response) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		response.writeBody(Channels.newChannel(body));
+		return body.toString(StandardCharsets.UTF_8);
+	}
+
+	private static String header(String head, String name) {
+		Matcher matcher = Pattern.compile("^" + name + ": (.*)$", Pattern.MULTILINE).matcher(head);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+}
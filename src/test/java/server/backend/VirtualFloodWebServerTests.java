@@ -0,0 +1,8 @@
+package server.backend;
+
+public class VirtualFloodWebServerTests extends WebServerTests {
+	@Override
+	WebServer getInstance() {
+		return new FloodWebServer(true);
+	}
+}
@@ -0,0 +1,120 @@
+package server.backend;
+
+import global.RequestType;
+import server.bandwidth.BandwidthStatus;
+import server.bandwidth.DefaultBandwidthStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Compares the throughput and the tail latency of the web server modes under many concurrent connections.
+ * Every client opens a connection, waits for the given delay to imitate a slow client, sends a request asking to close
+ * the connection, and reads the whole response.
+ * Usage: WebServerBenchmark [connections] [requests per connection] [client delay in milliseconds]
+ */
+public class WebServerBenchmark {
+	private final static int PORT = 54232;
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		long delay = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+		Path output = Files.createTempFile(null, null);
+		try {
+			BandwidthStatus bs = new DefaultBandwidthStatus();
+			bs.setOutputDestination(output.toString());
+			for (int i = 0; i < 100; i++) bs.log(1000 + i, "data" + i);
+
+			run("pool", FloodWebServer::new, bs, connections, requests, delay);
+			run("virtual", () -> new FloodWebServer(true), bs, connections, requests, delay);
+			run("selector", SelectorWebServer::new, bs, connections, requests, delay);
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	private static void run(
+		String name,
+		Supplier<WebServer> serverSupplier,
+		BandwidthStatus bs,
+		int connections,
+		int requests,
+		long delay
+	) throws InterruptedException {
+		WebServer ws = serverSupplier.get();
+		ws.setBandwidthStatus(bs);
+		ws.setPort(PORT);
+		ws.start();
+		Thread.sleep(200);
+
+		long[] latencies = new long[connections * requests];
+		CountDownLatch done = new CountDownLatch(connections);
+		long start = System.nanoTime();
+		try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int c = 0; c < connections; c++) {
+				int client = c;
+				clients.execute(() -> {
+					try {
+						for (int r = 0; r < requests; r++) {
+							latencies[client * requests + r] = request(delay);
+						}
+					} catch (IOException | InterruptedException exception) {
+						Arrays.fill(latencies, client * requests, (client + 1) * requests, -1);
+					} finally {
+						done.countDown();
+					}
+				});
+			}
+			done.await();
+		}
+		long elapsed = System.nanoTime() - start;
+		ws.interrupt();
+
+		long failed = Arrays.stream(latencies).filter(l -> l < 0).count();
+		long[] sorted = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+		System.out.printf(
+			"%-8s %8.1f req/s  p50 %7.2f ms  p99 %7.2f ms  failed %d%n",
+			name,
+			sorted.length / (elapsed / 1e9),
+			percentile(sorted, 0.5) / 1e6,
+			percentile(sorted, 0.99) / 1e6,
+			failed
+		);
+	}
+
+	private static long request(long delay) throws IOException, InterruptedException {
+		// the connection is closed after the response, so reading until the end of the stream doesn't wait for
+		// the keep-alive timeout
+		String request = "GET /%s?u=%d&t=1 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+			.formatted(RequestType.retrieve_last, GregorianCalendar.HOUR);
+		long start = System.nanoTime();
+		try (Socket socket = new Socket("localhost", PORT)) {
+			Thread.sleep(delay);
+			OutputStream os = socket.getOutputStream();
+			os.write(request.getBytes(StandardCharsets.US_ASCII));
+			os.flush();
+			InputStream is = socket.getInputStream();
+			byte[] buffer = new byte[8 * 1024];
+			while (is.read(buffer) != -1);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) return 0;
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+	}
+}
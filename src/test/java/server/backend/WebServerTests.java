@@ -9,17 +9,23 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import server.bandwidth.BandwidthStatus;
 import server.bandwidth.DefaultBandwidthStatus;
+import server.bandwidth.ObservableBandwidthStatus;
 
 import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -49,6 +55,23 @@ public abstract class WebServerTests {
 		assertTimeout(Duration.of(1, ChronoUnit.SECONDS), ws::interrupt);
 	}
 
+	@Test
+	void becomeReady() throws InterruptedException, IOException {
+		WebServer ws = getInstance();
+		ws.start();
+		assertTrue(ws.awaitReady(5000), "The server is expected to accept connections");
+		new Socket("localhost", ws.getPort()).close();
+		ws.interrupt();
+
+		try (ServerSocket occupied = new ServerSocket(0)) {
+			WebServer another = getInstance();
+			another.setPort(occupied.getLocalPort());
+			another.start();
+			assertFalse(another.awaitReady(5000), "The server isn't expected to listen on an occupied port");
+			another.interrupt();
+		}
+	}
+
 	@Nested
 	class RequestLast {
 		Path output;
@@ -101,6 +124,37 @@ public abstract class WebServerTests {
 			}
 		}
 
+		@Test
+		void sendCachedRequest() throws IOException, InterruptedException {
+			ObservableBandwidthStatus bandwidthStatus = new ObservableBandwidthStatus(ws.getBandwidthStatus());
+			ws.setBandwidthStatus(bandwidthStatus);
+			URI uri = URI.create(
+				"http://localhost:54231/%s?u=%d&t=5".formatted(RequestType.retrieve_last, GregorianCalendar.SECOND)
+			);
+			HttpRequest request =
+				HttpRequest
+					.newBuilder()
+					.timeout(Duration.of(1, ChronoUnit.SECONDS))
+					.uri(uri)
+					.build();
+			ws.start();
+			try (HttpClient client = HttpClient.newHttpClient()) {
+				for (int i = 0; i < 2; i++) {
+					HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+					assertEquals(3, new JSONObject(response.body()).getJSONArray("records").length());
+				}
+				bandwidthStatus.log(1300, "data4");
+				HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+				assertEquals(
+					4,
+					new JSONObject(response.body()).getJSONArray("records").length(),
+					"The cached response is expected to be invalidated by the new record"
+				);
+			} finally {
+				ws.interrupt();
+			}
+		}
+
 		@Test
 		void sendCorruptedRequest() throws IOException, InterruptedException {
 			URI uri = URI.create(
@@ -140,6 +194,10 @@ public abstract class WebServerTests {
 			bandwidthStatus.log(1000, "data1");
 			bandwidthStatus.log(1100, "data2");
 			bandwidthStatus.log(1200, "data3");
+			bandwidthStatus.log(2500, "latency_p50");
+			bandwidthStatus.log(1150, "download_percentile_p50");
+			bandwidthStatus.log(60_000, "idle_stable");
+			bandwidthStatus.log(500, "upload_speed@example.com");
 			rangeEndTime = System.currentTimeMillis();
 
 			ws.setBandwidthStatus(bandwidthStatus);
@@ -179,6 +237,111 @@ public abstract class WebServerTests {
 			}
 		}
 
+		@Test
+		void sendDownsampledRequest() throws IOException, InterruptedException {
+			URI uri = URI.create(
+				"http://localhost:54231/%s?s=%d&e=%d&n=2"
+					.formatted(RequestType.retrieve_downsampled, rangeStartTime, rangeEndTime)
+			);
+			HttpRequest request =
+				HttpRequest
+					.newBuilder()
+					.timeout(Duration.of(1, ChronoUnit.SECONDS))
+					.uri(uri)
+					.build();
+			ws.start();
+			try (HttpClient client = HttpClient.newHttpClient()) {
+				HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+				JSONArray records = new JSONObject(response.body()).getJSONArray("records");
+				assertEquals(2, records.length(), "No more records than requested are expected");
+				for (Object o: records) {
+					String[] record = new JSONArray(o.toString()).toList().toArray(new String[0]);
+					assertTrue(record[2].matches("data[123]"), "Additional info expected");
+				}
+			} finally {
+				ws.interrupt();
+			}
+		}
+
+		@Test
+		void sendRollupRequest() throws IOException, InterruptedException {
+			URI uri = URI.create(
+				"http://localhost:54231/%s?s=%d&e=%d&r=%d"
+					.formatted(RequestType.retrieve_rollup, rangeStartTime, rangeEndTime, Calendar.DATE)
+			);
+			HttpRequest request =
+				HttpRequest
+					.newBuilder()
+					.timeout(Duration.of(1, ChronoUnit.SECONDS))
+					.uri(uri)
+					.build();
+			ws.start();
+			try (HttpClient client = HttpClient.newHttpClient()) {
+				HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+				JSONArray buckets = new JSONObject(response.body()).getJSONArray("records");
+				assertEquals(3, buckets.length(), "A bucket per additional information is expected");
+				for (Object o: buckets) {
+					String[] bucket = new JSONArray(o.toString()).toList().toArray(new String[0]);
+					assertEquals(7, bucket.length);
+					assertTrue(bucket[1].matches("1[012]00"), "Average speed expected");
+					assertTrue(bucket[2].matches("data[123]"), "Additional info expected");
+					assertEquals("1", bucket[3], "Amount of records expected");
+				}
+			} finally {
+				ws.interrupt();
+			}
+		}
+
+		@Test
+		void sendLatencyRequest() throws IOException, InterruptedException {
+			URI uri = URI.create(
+				"http://localhost:54231/%s?s=%d&e=%d"
+					.formatted(RequestType.retrieve_latency_range, rangeStartTime, rangeEndTime)
+			);
+			HttpRequest request =
+				HttpRequest
+					.newBuilder()
+					.timeout(Duration.of(1, ChronoUnit.SECONDS))
+					.uri(uri)
+					.build();
+			ws.start();
+			try (HttpClient client = HttpClient.newHttpClient()) {
+				HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+				JSONArray records = new JSONObject(response.body()).getJSONArray("records");
+				assertEquals(1, records.length(), "Only the latency records are expected");
+				String[] record = new JSONArray(records.get(0).toString()).toList().toArray(new String[0]);
+				assertEquals("2500", record[1]);
+				assertEquals("latency_p50", record[2]);
+			} finally {
+				ws.interrupt();
+			}
+		}
+
+		@Test
+		void sendUploadRequest() throws IOException, InterruptedException {
+			URI uri = URI.create(
+				"http://localhost:54231/%s?s=%d&e=%d"
+					.formatted(RequestType.retrieve_upload_range, rangeStartTime, rangeEndTime)
+			);
+			HttpRequest request =
+				HttpRequest
+					.newBuilder()
+					.timeout(Duration.of(1, ChronoUnit.SECONDS))
+					.uri(uri)
+					.build();
+			ws.start();
+			try (HttpClient client = HttpClient.newHttpClient()) {
+				HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+				JSONArray records = new JSONObject(response.body()).getJSONArray("records");
+				assertEquals(1, records.length(), "Only the upload records are expected");
+				String[] record = new JSONArray(records.get(0).toString()).toList().toArray(new String[0]);
+				assertEquals("500", record[1]);
+				assertEquals("upload_speed@example.com", record[2], "The tag of the target is expected to be kept");
+			} finally {
+				ws.interrupt();
+			}
+		}
+
 		@Test
 		void sendCorruptedRequest() throws IOException, InterruptedException {
 			URI uri = URI.create(
@@ -199,4 +362,95 @@ public abstract class WebServerTests {
 			}
 		}
 	}
+
+	@Nested
+	class PersistentConnection {
+		Path output;
+		WebServer ws;
+
+		@BeforeEach
+		void beforeEach() throws IOException {
+			output = Files.createTempFile(null, null);
+			ws = getInstance();
+
+			BandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			bandwidthStatus.log(1000, "data1");
+
+			ws.setBandwidthStatus(bandwidthStatus);
+			ws.setPort(54231);
+		}
+
+		@AfterEach
+		void afterEach() throws IOException {
+			Files.delete(output);
+		}
+
+		@Test
+		void sendPipelinedRequests() throws IOException, InterruptedException {
+			String request = "GET /%s HTTP/1.1\r\nHost: localhost\r\n%s\r\n";
+			String last = "%s?u=%d&t=5".formatted(RequestType.retrieve_last, GregorianCalendar.SECOND);
+			String requests =
+				request.formatted(last, "") +
+				request.formatted(RequestType.retrieve_last + "?u=x&t=5", "") +
+				request.formatted(last, "Connection: close\r\n");
+			ws.start();
+			try (Socket socket = connect()) {
+				socket.setSoTimeout(1000);
+				socket.getOutputStream().write(requests.getBytes(StandardCharsets.US_ASCII));
+				String responses = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+				String[] statuses = Pattern.compile("HTTP/1\\.1 \\d{3}")
+					.matcher(responses)
+					.results()
+					.map(MatchResult::group)
+					.toArray(String[]::new);
+				assertArrayEquals(new String[] {"HTTP/1.1 200", "HTTP/1.1 400", "HTTP/1.1 200"}, statuses);
+				assertTrue(responses.contains("Connection: keep-alive"));
+				assertTrue(responses.contains("Connection: close"));
+			} finally {
+				ws.interrupt();
+			}
+		}
+
+		@Test
+		void sendLargeResponses() throws IOException, InterruptedException {
+			long time = System.currentTimeMillis() - 1000;
+			StringBuilder records = new StringBuilder();
+			for (int i = 0; i < 5000; i++) {
+				records.append(time).append(' ').append(i).append(" large").append(System.lineSeparator());
+			}
+			Files.writeString(output, records);
+
+			String request = "GET /%s HTTP/1.1\r\nHost: localhost\r\n%s\r\n";
+			String last = "%s?u=%d&t=5".formatted(RequestType.retrieve_last, GregorianCalendar.SECOND);
+			ws.start();
+			try (Socket socket = connect()) {
+				socket.setSoTimeout(5000);
+				socket.getOutputStream().write(
+					(request.formatted(last, "") + request.formatted(last, "Connection: close\r\n"))
+						.getBytes(StandardCharsets.US_ASCII)
+				);
+				String responses = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+				assertEquals(2, Pattern.compile("HTTP/1\\.1 200").matcher(responses).results().count());
+				assertEquals(
+					2 * 5000,
+					Pattern.compile("\"large\"").matcher(responses).results().count(),
+					"The responses bigger than a chunk are expected to be sent whole"
+				);
+			} finally {
+				ws.interrupt();
+			}
+		}
+
+		Socket connect() throws IOException, InterruptedException {
+			for (int attempt = 0; ; attempt++) {
+				try {
+					return new Socket("localhost", 54231);
+				} catch (IOException exception) {
+					if (attempt == 10) throw exception;
+					Thread.sleep(50);
+				}
+			}
+		}
+	}
 }
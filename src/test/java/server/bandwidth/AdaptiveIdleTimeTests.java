@@ -0,0 +1,82 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveIdleTimeTests {
+	@Test
+	void backOffWhenStable() {
+		AdaptiveIdleTime policy = new AdaptiveIdleTime(1_000, 100, 5_000, null);
+		for (int i = 0; i < AdaptiveIdleTime.WARM_UP; i++) {
+			assertEquals(1_000, policy.next(1_000_000 + i), "The pause isn't expected to change during the warm-up");
+		}
+		assertEquals(2_000, policy.next(1_000_000));
+		assertEquals(4_000, policy.next(1_001_000));
+		assertEquals(5_000, policy.next(999_000), "The pause isn't expected to exceed the maximum");
+		assertEquals(5_000, policy.next(1_000_000));
+	}
+
+	@Test
+	void shortenOnDeviation() {
+		AdaptiveIdleTime policy = new AdaptiveIdleTime(1_000, 100, 5_000, null);
+		for (int i = 0; i < AdaptiveIdleTime.WARM_UP + 2; i++) policy.next(1_000_000);
+		assertEquals(4_000, policy.getDelay());
+
+		assertEquals(100, policy.next(200_000), "A degradation is expected to shorten the pause to the minimum");
+		assertEquals(200, policy.next(1_000_000));
+		assertEquals(100, policy.next(-1), "A run without a result is expected to shorten the pause to the minimum");
+	}
+
+	@Test
+	void backOffWhenSkipped() {
+		AdaptiveIdleTime policy = new AdaptiveIdleTime(1_000, 100, 5_000, null);
+		for (int i = 0; i < AdaptiveIdleTime.WARM_UP; i++) policy.next(1_000_000);
+		assertEquals(100, policy.next(200_000));
+		assertEquals(5_000, policy.skip(), "A skipped run is expected to back the pause off to the maximum");
+		assertEquals(AdaptiveIdleTime.Reason.SKIPPED, policy.getDecisions().getLast().reason());
+		assertEquals(5_000, policy.next(1_000_000), "A skipped run isn't expected to change the baseline");
+	}
+
+	@Test
+	void decisions() {
+		AdaptiveIdleTime policy = new AdaptiveIdleTime(10_000, 100, 5_000, null);
+		assertEquals(5_000, policy.getDelay(), "The initial pause is expected to be brought within the bounds");
+		for (int i = 0; i < AdaptiveIdleTime.MAX_DECISIONS + 10; i++) policy.next(1_000);
+		policy.next(-1);
+
+		List<AdaptiveIdleTime.Decision> decisions = policy.getDecisions();
+		assertEquals(AdaptiveIdleTime.MAX_DECISIONS, decisions.size());
+		assertEquals(AdaptiveIdleTime.Reason.STABLE, decisions.getFirst().reason());
+		AdaptiveIdleTime.Decision last = decisions.getLast();
+		assertEquals(AdaptiveIdleTime.Reason.NO_RESULT, last.reason());
+		assertEquals(-1, last.result());
+		assertEquals(1_000, last.average());
+		assertEquals(100, last.delay());
+		assertEquals(AdaptiveIdleTime.INFO_PREFIX + "no_result", last.info());
+	}
+
+	@Test
+	void resultsFromBandwidthStatus() throws IOException {
+		Path output = Files.createTempFile(null, null);
+		try {
+			DefaultBandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			long start = System.currentTimeMillis();
+			bandwidthStatus.log(5, "other");
+			bandwidthStatus.log(7, "download_speed");
+
+			AdaptiveIdleTime policy = new AdaptiveIdleTime(1_000, 100, 5_000, "download_speed");
+			policy.next(bandwidthStatus, start);
+			assertEquals(7, policy.getDecisions().getLast().result());
+			policy.next(bandwidthStatus, System.currentTimeMillis() + 1_000);
+			assertEquals(AdaptiveIdleTime.Reason.NO_RESULT, policy.getDecisions().getLast().reason());
+		} finally {
+			Files.delete(output);
+		}
+	}
+}
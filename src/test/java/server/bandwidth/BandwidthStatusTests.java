@@ -9,6 +9,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,6 +17,14 @@ abstract public class BandwidthStatusTests {
 
 	abstract BandwidthStatus getInstance();
 
+	Path createOutputDestination() throws IOException {
+		return Files.createTempFile(null, null);
+	}
+
+	void deleteOutputDestination(Path destination) throws IOException {
+		Files.delete(destination);
+	}
+
 	@Test
 	final void changeOutputFile() {
 		BandwidthStatus bs = getInstance();
@@ -30,13 +39,13 @@ abstract public class BandwidthStatusTests {
 
 		@BeforeEach
 		void beforeEach() throws IOException {
-			outputFile = Files.createTempFile(null, null);
+			outputFile = createOutputDestination();
 			bs.setOutputDestination(outputFile.toString());
 		}
 
 		@AfterEach
 		void afterEach() throws IOException{
-			Files.delete(outputFile);
+			deleteOutputDestination(outputFile);
 		}
 
 		@Test
@@ -92,5 +101,53 @@ abstract public class BandwidthStatusTests {
 			assertEquals(1, secondRecord.size(), "Only the second record is expected");
 			assertEquals("9", secondRecord.getFirst()[1], "The second record is expected");
 		}
+
+		@Test
+		void collectRecords() throws IOException {
+			bs.log(42, "same");
+			bs.log(43, "same");
+			bs.log(44, "other");
+
+			BandwidthRecords records = bs.collectRecords(Long.MIN_VALUE, Long.MAX_VALUE);
+			LinkedList<String[]> list = bs.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(3, records.size(), "The amount of records doesn't match");
+			assertEquals(2, records.getDictionarySize(), "The additional information is expected to be deduplicated");
+			for (int i = 0; i < records.size(); i++) {
+				String[] record = list.get(i);
+				assertEquals(record[0], Long.toString(records.getTime(i)), "The dates don't match");
+				assertEquals(record[1], Long.toString(records.getSpeed(i)), "The speeds don't match");
+				assertEquals(record[2], records.getInfo(i), "The additional information doesn't match");
+			}
+		}
+
+		@Test
+		void concurrentLog() throws IOException, InterruptedException {
+			int threadAmount = 4;
+			int recordAmount = 25;
+			ConcurrentLinkedQueue<IOException> exceptions = new ConcurrentLinkedQueue<>();
+			Thread[] threads = new Thread[threadAmount];
+			for (int i = 0; i < threadAmount; i++) {
+				String info = "thread " + i;
+				threads[i] = new Thread(() -> {
+					try {
+						for (int j = 0; j < recordAmount; j++) bs.log(j, info);
+					} catch (IOException e) {
+						exceptions.add(e);
+					}
+				});
+				threads[i].start();
+			}
+			for (Thread thread: threads) thread.join();
+			assertTrue(exceptions.isEmpty(), "No exception is expected during the logging");
+
+			BandwidthRecords records = bs.collectRecords(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(threadAmount * recordAmount, records.size(), "Every logged record is expected to be kept");
+			long[] nextSpeeds = new long[threadAmount];
+			for (int i = 0; i < records.size(); i++) {
+				if (i > 0) assertTrue(records.getTime(i - 1) <= records.getTime(i), "The records are expected to be in order");
+				int thread = Integer.parseInt(records.getInfo(i).substring("thread ".length()));
+				assertEquals(nextSpeeds[thread]++, records.getSpeed(i), "The records of a thread are expected to be in order");
+			}
+		}
 	}
 }
@@ -0,0 +1,150 @@
+package server.bandwidth;
+
+import global.SettingLoader;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.LinkedList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryBandwidthStatusTests extends BandwidthStatusTests {
+	@Override
+	BandwidthStatus getInstance() {
+		return new BinaryBandwidthStatus();
+	}
+
+	@Override
+	void deleteOutputDestination(Path destination) throws IOException {
+		Files.delete(destination);
+		Files.deleteIfExists(Path.of(destination + BinaryBandwidthStatus.DICTIONARY_SUFFIX));
+	}
+
+	@Nested
+	class ContentManagement {
+		Path outputFile;
+		Path newConfigFile;
+		String oldConfigFile;
+		Field configField;
+
+		@BeforeEach
+		void beforeEach() throws IOException, NoSuchFieldException, IllegalAccessException {
+			outputFile = Files.createTempFile(null, null);
+			newConfigFile = Files.createTempFile(null, null);
+
+			configField = SettingLoader.class.getDeclaredField("configPath");
+			configField.trySetAccessible();
+			oldConfigFile = (String) configField.get(null);
+			configField.set(null, newConfigFile.toString());
+
+			try (FileWriter fw = new FileWriter(newConfigFile.toString())) {
+				fw.write(SettingLoader.LOG_LIMIT + " 2000");
+			}
+		}
+
+		@AfterEach
+		void afterEach() throws IOException, IllegalAccessException {
+			deleteOutputDestination(outputFile);
+			Files.delete(newConfigFile);
+
+			configField.set(null, oldConfigFile);
+		}
+
+		@Test
+		void fixedWidthRecords() throws IOException {
+			BinaryBandwidthStatus bandwidthStatus = new BinaryBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+
+			bandwidthStatus.log(1, "same");
+			bandwidthStatus.log(2, "same");
+			bandwidthStatus.log(3, "other");
+
+			assertEquals(3L * BinaryBandwidthStatus.RECORD_SIZE, Files.size(outputFile));
+			assertEquals(
+				2,
+				Files.readAllLines(Path.of(outputFile + BinaryBandwidthStatus.DICTIONARY_SUFFIX)).size(),
+				"The additional information is expected to be stored once"
+			);
+			BinaryBandwidthStatus reopened = new BinaryBandwidthStatus();
+			reopened.setOutputDestination(outputFile.toString());
+			LinkedList<String[]> records = reopened.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(3, records.size());
+			assertEquals("same", records.get(1)[2]);
+			assertEquals("other", records.get(2)[2]);
+		}
+
+		@Test
+		void oldRecordsPurge() throws IOException, InterruptedException {
+			BinaryBandwidthStatus bandwidthStatus = new BinaryBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+
+			bandwidthStatus.log(0xff0000, "red");
+			Thread.sleep(3000);
+			bandwidthStatus.log(0x00ff00, "green");
+
+			LinkedList<String[]> records = bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(1, records.size(), "The expired record is expected to be deleted");
+			assertEquals("green", records.getFirst()[2]);
+			assertFalse(
+				Files.readString(Path.of(outputFile + BinaryBandwidthStatus.DICTIONARY_SUFFIX)).contains("red"),
+				"The unused additional information is expected to be deleted"
+			);
+		}
+
+		@Test
+		void carriageReturn() throws IOException {
+			BinaryBandwidthStatus bandwidthStatus = new BinaryBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.log(1, "carriage\rreturn");
+			bandwidthStatus.log(2, "next");
+
+			BinaryBandwidthStatus reopened = new BinaryBandwidthStatus();
+			reopened.setOutputDestination(outputFile.toString());
+			LinkedList<String[]> records = reopened.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals("carriage return", records.get(0)[2]);
+			assertEquals("next", records.get(1)[2], "The dictionary is expected to keep one line per identifier");
+		}
+
+		@Test
+		void interruptedPurge() throws IOException {
+			Path dictionary = Path.of(outputFile + BinaryBandwidthStatus.DICTIONARY_SUFFIX);
+			Path tmpDictionary = Path.of(dictionary + ".tmp");
+			Path tmpStatus = Path.of(outputFile + ".tmp");
+			long time = System.currentTimeMillis();
+
+			writeRecord(outputFile, time, 1);
+			Files.writeString(dictionary, "old0\nold1\n");
+			writeRecord(tmpStatus, time, 0);
+			Files.writeString(tmpDictionary, "new0\n");
+			BinaryBandwidthStatus bandwidthStatus = new BinaryBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			assertEquals(
+				"old1",
+				bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE).getFirst()[2],
+				"The removal is expected to be discarded if the status file hasn't been replaced"
+			);
+			assertFalse(Files.exists(tmpStatus));
+			assertFalse(Files.exists(tmpDictionary));
+
+			writeRecord(outputFile, time, 0);
+			Files.writeString(tmpDictionary, "new0\n");
+			bandwidthStatus = new BinaryBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			assertEquals(
+				"new0",
+				bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE).getFirst()[2],
+				"The removal is expected to be completed if the status file has been replaced"
+			);
+			assertFalse(Files.exists(tmpDictionary));
+		}
+
+		void writeRecord(Path path, long time, int infoId) throws IOException {
+			ByteBuffer record = ByteBuffer.allocate(BinaryBandwidthStatus.RECORD_SIZE);
+			record.putLong(time).putLong(1).putInt(infoId);
+			Files.write(path, record.array());
+		}
+	}
+}
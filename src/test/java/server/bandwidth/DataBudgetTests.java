@@ -0,0 +1,235 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.*;
+import java.util.List;
+import java.util.TimerTask;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataBudgetTests {
+	final static long MiB = 1024 * 1024;
+
+	@Test
+	void acquire() {
+		DataBudget budget = new DataBudget(100 * MiB);
+		DataBudget.Allowance allowance = budget.acquire(10 * MiB);
+		assertEquals(DataBudget.State.FULL, allowance.state());
+		assertEquals(100 * MiB, allowance.limit());
+		assertEquals(90 * MiB, budget.getRemaining(), "The expected bytes are expected to be reserved");
+		budget.release(allowance, 70 * MiB);
+		assertEquals(70 * MiB, budget.getUsed());
+		assertEquals(30 * MiB, budget.getRemaining());
+
+		allowance = budget.acquire(40 * MiB);
+		assertEquals(DataBudget.State.REDUCED, allowance.state(), "A run exceeding the budget is expected to be reduced");
+		assertEquals(DataBudget.MIN_RUN_BYTES, allowance.limit());
+		budget.release(allowance, allowance.limit());
+
+		allowance = budget.acquire(0);
+		assertEquals(DataBudget.State.FULL, allowance.state());
+		budget.release(allowance, 10 * MiB);
+		allowance = budget.acquire(0);
+		assertEquals(DataBudget.State.REDUCED, allowance.state(), "A tight budget is expected to reduce the runs");
+		budget.release(allowance, budget.getRemaining() + allowance.reserved());
+
+		assertEquals(0, budget.getRemaining());
+		assertEquals(DataBudget.State.SKIPPED, budget.acquire(0).state());
+	}
+
+	@Test
+	void renewDaily() {
+		MutableClock clock = new MutableClock(Instant.parse("2024-05-01T12:00:00Z"));
+		DataBudget budget = new DataBudget(10 * MiB, clock);
+		budget.release(budget.acquire(0), 10 * MiB);
+		assertEquals(DataBudget.State.SKIPPED, budget.acquire(0).state());
+
+		clock.instant = clock.instant.plus(Duration.ofDays(1));
+		assertEquals(0, budget.getUsed());
+		assertEquals(DataBudget.State.FULL, budget.acquire(0).state());
+	}
+
+	@Test
+	void budgetedTest() throws IOException {
+		Path output = Files.createTempFile(null, null);
+		try {
+			DefaultBandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			TransferringTest test = new TransferringTest(6 * MiB);
+			test.setBandwidthStatus(bandwidthStatus);
+			BudgetedDownloadTest budgetedTest = new BudgetedDownloadTest(test, new DataBudget(10 * MiB));
+
+			assertNull(budgetedTest.getState());
+			budgetedTest.run();
+			assertEquals(6 * MiB, budgetedTest.getTransferredBytes());
+			assertEquals(DataBudget.State.FULL, budgetedTest.getState());
+			budgetedTest.run();
+			assertEquals(
+				DataBudget.MIN_RUN_BYTES,
+				budgetedTest.getTransferredBytes(),
+				"The second run is expected to be reduced"
+			);
+			assertEquals(-1, test.getTransferLimit(), "The limit of the test is expected to be restored");
+			for (int i = 0; i < 4; i++) budgetedTest.run();
+			assertEquals(0, budgetedTest.getTransferredBytes(), "The runs over the budget are expected to be skipped");
+			assertEquals(DataBudget.State.SKIPPED, budgetedTest.getState());
+			assertEquals(10 * MiB, budgetedTest.getTotalTransferredBytes());
+
+			BandwidthRecords records = bandwidthStatus.collectRecords(Long.MIN_VALUE);
+			assertEquals(BudgetedDownloadTest.INFO_PREFIX + "full", records.getInfo(0));
+			assertEquals(6 * MiB, records.getSpeed(0));
+			assertEquals(BudgetedDownloadTest.INFO_PREFIX + "reduced", records.getInfo(1));
+			assertEquals(BudgetedDownloadTest.INFO_PREFIX + "skipped", records.getInfo(records.size() - 1));
+			assertEquals(0, records.getSpeed(records.size() - 1));
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	@Test
+	void restore() throws IOException {
+		Path output = Files.createTempFile(null, null);
+		try {
+			DefaultBandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			TransferringTest test = new TransferringTest(6 * MiB);
+			test.setBandwidthStatus(bandwidthStatus);
+			bandwidthStatus.log(System.currentTimeMillis() - 2L * 24 * 60 * 60 * 1000, 3 * MiB, "budget_full");
+			new BudgetedDownloadTest(test, new DataBudget(10 * MiB)).run();
+			bandwidthStatus.log(3 * MiB, "download_speed");
+
+			DataBudget budget = new DataBudget(10 * MiB);
+			DefaultBandwidthStatus sameDestination = new DefaultBandwidthStatus();
+			sameDestination.setOutputDestination(output.toString());
+			budget.restore(List.of(bandwidthStatus, sameDestination));
+			assertEquals(
+				6 * MiB,
+				budget.getUsed(),
+				"Only the bytes transferred today are expected to be counted, and the same destination once"
+			);
+			budget.restore(List.of(bandwidthStatus));
+			assertEquals(6 * MiB, budget.getUsed(), "The restoration is expected to recount the bytes");
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	@Test
+	void skippedRunBacksOff() throws IOException {
+		Path output = Files.createTempFile(null, null);
+		try {
+			DefaultBandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			TransferringTest test = new TransferringTest(MiB);
+			test.setBandwidthStatus(bandwidthStatus);
+			BudgetedDownloadTest budgetedTest = new BudgetedDownloadTest(test, new DataBudget(0));
+			long start = System.currentTimeMillis();
+			budgetedTest.run();
+			AdaptiveIdleTime policy = new AdaptiveIdleTime(1_000, 100, 5_000, null);
+			assertEquals(5_000, DefaultFloodScheduler.nextPause(budgetedTest, policy, start));
+			assertEquals(AdaptiveIdleTime.Reason.SKIPPED, policy.getDecisions().getLast().reason());
+
+			BandwidthRecords records = bandwidthStatus.collectRecords(start);
+			assertEquals(AdaptiveIdleTime.INFO_PREFIX + "skipped", records.getInfo(records.size() - 1));
+			assertEquals(5_000, records.getSpeed(records.size() - 1), "The decision is expected to be logged");
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	@Test
+	void budgetedOnlyWithLimit() {
+		DataBudget budget = new DataBudget(10 * MiB);
+		assertInstanceOf(BudgetedDownloadTest.class, DefaultFloodScheduler.budgeted(new HTTPDownloadTest(), budget));
+		LatencyProbe probe = new LatencyProbe();
+		assertSame(
+			probe,
+			DefaultFloodScheduler.budgeted(probe, budget),
+			"A test without the transfer limit isn't expected to be budgeted"
+		);
+		HTTPDownloadTest test = new HTTPDownloadTest();
+		assertSame(test, DefaultFloodScheduler.budgeted(test, null));
+	}
+
+	private static class MutableClock extends Clock {
+		Instant instant;
+
+		MutableClock(Instant instant) {
+			this.instant = instant;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return instant;
+		}
+	}
+
+	private static class TransferringTest extends TimerTask implements DownloadTest {
+		private final long size;
+		private long limit = -1;
+		private long transferred = 0;
+		private BandwidthStatus bs = new DefaultBandwidthStatus();
+
+		TransferringTest(long size) {
+			this.size = size;
+		}
+
+		@Override
+		public void run() {
+			transferred = limit == -1 ? size : Math.min(size, limit);
+		}
+
+		@Override
+		public long getTransferredBytes() {
+			return transferred;
+		}
+
+		@Override
+		public void setTransferLimit(long limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public long getTransferLimit() {
+			return limit;
+		}
+
+		@Override
+		public boolean supportsTransferLimit() {
+			return true;
+		}
+
+		@Override
+		public void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
+			bs = bandwidthStatus;
+		}
+
+		@Override
+		public BandwidthStatus getBandwidthStatus() {
+			return bs;
+		}
+
+		@Override
+		public Exception getException() {
+			return null;
+		}
+
+		@Override
+		public TimerTask toTimerTask() {
+			return this;
+		}
+	}
+}
@@ -1,11 +1,14 @@
 package server.bandwidth;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.*;
+import java.util.concurrent.CountDownLatch;
 
 public class HTTP200Response extends Thread{
 	private final int port;
 	private final String payload;
+	private final CountDownLatch bound = new CountDownLatch(1);
 	private boolean interrupted = false;
 	private int acceptCount = 0;
 
@@ -17,13 +20,23 @@ public class HTTP200Response extends Thread{
 
 	}
 
+	@Override
+	public synchronized void start() {
+		super.start();
+		try {
+			bound.await();
+		} catch (InterruptedException ignored) {}
+	}
+
 	@Override
 	public void run() {
 		try (ServerSocket serverSocket = new ServerSocket(port)) {
 			serverSocket.setSoTimeout(100);
+			bound.countDown();
 			while (!interrupted) {
 				try (Socket clientSocket = serverSocket.accept()) {
 					acceptCount++;
+					readRequestHead(clientSocket.getInputStream());
 					String mes =
 						"HTTP/1.1 200 OK\n" +
 							"Content-Length: " + payload.length() + "\n" +
@@ -32,7 +45,27 @@ public class HTTP200Response extends Thread{
 					clientSocket.getOutputStream().write(mes.getBytes());
 				} catch (Exception ignored) {}
 			}
-		} catch (IOException ignored) {}
+		} catch (IOException ignored) {
+		} finally {
+			bound.countDown();
+		}
+	}
+
+	/**
+	 * Reads the request up to the empty line, so closing the socket doesn't reset the connection
+	 * before the client has read the response.
+	 */
+	private static void readRequestHead(InputStream is) throws IOException {
+		int lineLength = 0;
+		for (int c; (c = is.read()) != -1; ) {
+			if (c == '\r') continue;
+			if (c == '\n') {
+				if (lineLength == 0) return;
+				lineLength = 0;
+			} else {
+				lineLength++;
+			}
+		}
 	}
 
 	@Override
@@ -2,9 +2,12 @@ package server.bandwidth;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class HTTPDownloadTestTests extends DownloadTestTests {
 	@Override
@@ -19,4 +22,136 @@ public class HTTPDownloadTestTests extends DownloadTestTests {
 		downloadTest.setUri(uri);
 		assertSame(uri, downloadTest.getUri());
 	}
+
+	@Test
+	void measureDownload() throws InterruptedException {
+		String payload = "a".repeat(200_000);
+		HTTP200Response webServer = new HTTP200Response(54232, payload);
+		webServer.start();
+
+		HTTPDownloadTest downloadTest = new HTTPDownloadTest();
+		downloadTest.setUri(URI.create("http://localhost:54232/file"));
+		// no interval is sampled, so the speed is the one over the whole duration however fast the machine is
+		downloadTest.setSampleInterval(60_000);
+		downloadTest.run();
+		webServer.interrupt();
+		webServer.join();
+
+		assertNull(downloadTest.getException());
+		Measurement measurement = downloadTest.getLastMeasurement();
+		assertNotNull(measurement);
+		assertEquals(payload.length(), measurement.bytes(), "The received bytes are expected to be counted");
+		assertTrue(measurement.timeToFirstByte() <= measurement.duration());
+		assertEquals(0, measurement.intervalSpeeds().length);
+		assertEquals(
+			(long) (payload.length() * 8 * 1e9 / measurement.duration()),
+			measurement.getAverageSpeed(),
+			"The speed isn't expected to be rounded to seconds"
+		);
+		assertEquals(measurement.getAverageSpeed(), measurement.getSpeed());
+	}
+
+	@Test
+	void failedStream() throws InterruptedException {
+		HTTPDownloadTest downloadTest = new HTTPDownloadTest();
+		// a relative URI can't be turned into a URL, which fails the stream with an unchecked exception
+		downloadTest.setUri(URI.create("file"));
+		downloadTest.run();
+		assertInstanceOf(IOException.class, downloadTest.getException());
+		assertNull(downloadTest.getLastMeasurement(), "The failed stream isn't expected to pass for a successful one");
+
+		HTTP200Response webServer = new HTTP200Response(54232, "a".repeat(1000));
+		webServer.start();
+		downloadTest.setUri(URI.create("http://localhost:54232/file"));
+		downloadTest.run();
+		webServer.interrupt();
+		webServer.join();
+
+		assertNull(downloadTest.getException(), "The exception of the previous run isn't expected to be kept");
+		assertNotNull(downloadTest.getLastMeasurement());
+	}
+
+	@Test
+	void logPercentiles() throws InterruptedException, IOException {
+		HTTP200Response webServer = new HTTP200Response(54232, "d".repeat(200_000));
+		webServer.start();
+
+		Path output = Files.createTempFile(null, null);
+		try {
+			BandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			HTTPDownloadTest downloadTest = new HTTPDownloadTest();
+			downloadTest.setBandwidthStatus(bandwidthStatus);
+			downloadTest.setUri(URI.create("http://localhost:54232/file"));
+			downloadTest.run();
+			webServer.interrupt();
+			webServer.join();
+
+			assertNull(downloadTest.getException());
+			Measurement measurement = downloadTest.getLastMeasurement();
+			BandwidthRecords records = bandwidthStatus.collectRecords(Long.MIN_VALUE);
+			assertEquals(4, records.size(), "The speed and three percentiles are expected to be logged");
+			assertEquals("download_speed", records.getInfo(0));
+			int i = 1;
+			for (int percentile: new int[] {10, 50, 90}) {
+				assertEquals(HTTPDownloadTest.INFO_PREFIX + "p" + percentile, records.getInfo(i));
+				assertEquals(measurement.getPercentile(percentile), records.getSpeed(i));
+				i++;
+			}
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	@Test
+	void measureParallelDownload() throws InterruptedException {
+		String payload = "b".repeat(100_000);
+		HTTP200Response webServer = new HTTP200Response(54232, payload);
+		webServer.start();
+
+		HTTPDownloadTest downloadTest = new HTTPDownloadTest();
+		downloadTest.setUri(URI.create("http://localhost:54232/file"));
+		downloadTest.setStreams(4);
+		assertEquals(4, downloadTest.getStreams());
+		downloadTest.run();
+		webServer.interrupt();
+		webServer.join();
+
+		assertNull(downloadTest.getException());
+		assertEquals(4, webServer.getAcceptedConnections(), "Every stream is expected to connect");
+		Measurement measurement = downloadTest.getLastMeasurement();
+		assertNotNull(measurement);
+		assertEquals(4L * payload.length(), measurement.bytes(), "The bytes of all the streams are expected to be added");
+	}
+
+	@Test
+	void transferLimit() throws InterruptedException {
+		String payload = "c".repeat(1_000_000);
+		HTTP200Response webServer = new HTTP200Response(54232, payload);
+		webServer.start();
+
+		HTTPDownloadTest downloadTest = new HTTPDownloadTest();
+		downloadTest.setUri(URI.create("http://localhost:54232/file"));
+		downloadTest.setTransferLimit(100_000);
+		assertEquals(100_000, downloadTest.getTransferLimit());
+		downloadTest.run();
+		webServer.interrupt();
+		webServer.join();
+
+		assertNull(downloadTest.getException());
+		assertNotNull(downloadTest.getLastMeasurement());
+		assertTrue(downloadTest.getTransferredBytes() >= 100_000);
+		assertTrue(
+			downloadTest.getTransferredBytes() < payload.length(),
+			"The download is expected to stop at the limit: " + downloadTest.getTransferredBytes()
+		);
+		assertEquals(downloadTest.getTransferredBytes(), downloadTest.getLastMeasurement().bytes());
+	}
+
+	@Test
+	void sampleIntervals() {
+		HTTPDownloadTest downloadTest = new HTTPDownloadTest();
+		downloadTest.setSampleInterval(250);
+		assertEquals(250, downloadTest.getSampleInterval());
+	}
 }
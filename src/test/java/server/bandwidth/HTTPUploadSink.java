@@ -0,0 +1,90 @@
+package server.bandwidth;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+
+public class HTTPUploadSink extends Thread {
+	private final int port;
+	private final CountDownLatch bound = new CountDownLatch(1);
+	private volatile boolean interrupted = false;
+	private volatile long receivedBytes = 0;
+	private volatile boolean chunked = false;
+
+	public HTTPUploadSink(int port) {
+		assert port >= 0 && port < Math.pow(2, 16);
+
+		this.port = port;
+	}
+
+	@Override
+	public synchronized void start() {
+		super.start();
+		try {
+			bound.await();
+		} catch (InterruptedException ignored) {}
+	}
+
+	@Override
+	public void run() {
+		try (ServerSocket serverSocket = new ServerSocket(port)) {
+			serverSocket.setSoTimeout(100);
+			bound.countDown();
+			while (!interrupted) {
+				try (Socket client = serverSocket.accept()) {
+					InputStream is = new BufferedInputStream(client.getInputStream());
+					long contentLength = 0;
+					for (String line = readLine(is); !line.isEmpty(); line = readLine(is)) {
+						String lowerCase = line.toLowerCase();
+						if (lowerCase.startsWith("transfer-encoding:") && lowerCase.contains("chunked")) chunked = true;
+						if (lowerCase.startsWith("content-length:")) {
+							contentLength = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+						}
+					}
+					long received = 0;
+					if (chunked) {
+						for (long chunk; (chunk = Long.parseLong(readLine(is).split(";")[0].trim(), 16)) > 0; ) {
+							is.skipNBytes(chunk);
+							received += chunk;
+							readLine(is);
+						}
+						readLine(is);
+					} else {
+						is.skipNBytes(contentLength);
+						received = contentLength;
+					}
+					receivedBytes = received;
+					client.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes());
+				} catch (Exception ignored) {}
+			}
+		} catch (IOException ignored) {
+		} finally {
+			bound.countDown();
+		}
+	}
+
+	private static String readLine(InputStream is) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int c; (c = is.read()) != '\n'; ) {
+			if (c == -1) throw new IOException("The stream has ended");
+			if (c != '\r') line.append((char) c);
+		}
+		return line.toString();
+	}
+
+	@Override
+	public void interrupt() {
+		interrupted = true;
+	}
+
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+
+	public boolean isChunked() {
+		return chunked;
+	}
+}
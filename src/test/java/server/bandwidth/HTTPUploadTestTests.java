@@ -0,0 +1,67 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HTTPUploadTestTests {
+	@Test
+	void timerTaskCast() {
+		assertNotNull(new HTTPUploadTest().toTimerTask());
+	}
+
+	@Test
+	void propertySetter() {
+		HTTPUploadTest uploadTest = new HTTPUploadTest();
+		BandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+		uploadTest.setBandwidthStatus(bandwidthStatus);
+		assertSame(bandwidthStatus, uploadTest.getBandwidthStatus());
+		URI uri = URI.create("http://example.com/upload");
+		uploadTest.setUri(uri);
+		assertSame(uri, uploadTest.getUri());
+		uploadTest.setSize(1000);
+		assertEquals(1000, uploadTest.getSize());
+	}
+
+	@Test
+	void missingUri() {
+		HTTPUploadTest uploadTest = new HTTPUploadTest();
+		assertNull(uploadTest.getUri(), "The upload endpoint isn't expected to fall back to HTTP_URI");
+		uploadTest.run();
+		assertInstanceOf(IllegalStateException.class, uploadTest.getException());
+		assertNull(DefaultFloodScheduler.newDownloadTest("http_upload", null));
+		assertNotNull(DefaultFloodScheduler.newDownloadTest("http_upload", URI.create("http://localhost/upload")));
+	}
+
+	@Test
+	void upload() throws InterruptedException, IOException {
+		HTTPUploadSink sink = new HTTPUploadSink(54233);
+		sink.start();
+
+		Path output = Files.createTempFile(null, null);
+		HTTPUploadTest uploadTest = new HTTPUploadTest();
+		BandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+		bandwidthStatus.setOutputDestination(output.toString());
+		uploadTest.setBandwidthStatus(bandwidthStatus);
+		uploadTest.setUri(URI.create("http://localhost:54233/upload"));
+		uploadTest.setSize(1_000_000);
+		uploadTest.run();
+		sink.interrupt();
+		sink.join();
+
+		assertNull(uploadTest.getException());
+		assertTrue(sink.isChunked(), "The body is expected to be streamed in chunks");
+		assertEquals(1_000_000, sink.getReceivedBytes(), "The whole body is expected to reach the server");
+		assertEquals(1_000_000, uploadTest.getLastMeasurement().bytes());
+		LinkedList<String[]> records = bandwidthStatus.collect(0);
+		Files.delete(output);
+		assertEquals(1, records.size());
+		assertEquals("upload_speed", records.getFirst()[2], "The speed is expected to be tagged as upload");
+	}
+}
@@ -27,9 +27,11 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
 
 public class HttpProxy extends Thread {
 	private final int port;
+	private final CountDownLatch bound = new CountDownLatch(1);
 	private boolean interrupted = false;
 	private int acceptCount = 0;
 
@@ -39,10 +41,19 @@ public class HttpProxy extends Thread {
 		this.port = port;
 	}
 
+	@Override
+	public synchronized void start() {
+		super.start();
+		try {
+			bound.await();
+		} catch (InterruptedException ignored) {}
+	}
+
 	@Override
 	public void run() {
 		try (ServerSocket serverSocket = new ServerSocket(port)) {
 			serverSocket.setSoTimeout(100);
+			bound.countDown();
 			while (!interrupted) {
 				try (Socket client = serverSocket.accept()) {
 					acceptCount++;
@@ -62,7 +73,10 @@ public class HttpProxy extends Thread {
 					}
 				} catch (Exception ignored) {}
 			}
-		} catch (IOException ignored) {}
+		} catch (IOException ignored) {
+		} finally {
+			bound.countDown();
+		}
 	}
 
 	@Override
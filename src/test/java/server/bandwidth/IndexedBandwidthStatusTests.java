@@ -0,0 +1,142 @@
+package server.bandwidth;
+
+import global.SettingLoader;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.file.*;
+import java.util.LinkedList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedBandwidthStatusTests extends BandwidthStatusTests {
+	@Override
+	BandwidthStatus getInstance() {
+		return new IndexedBandwidthStatus();
+	}
+
+	@Override
+	void deleteOutputDestination(Path destination) throws IOException {
+		Files.delete(destination);
+		Files.deleteIfExists(Path.of(destination + IndexedBandwidthStatus.INDEX_SUFFIX));
+	}
+
+	@Nested
+	class ContentManagement {
+		Path outputFile;
+		Path newConfigFile;
+		String oldConfigFile;
+		Field configField;
+
+		@BeforeEach
+		void beforeEach() throws IOException, NoSuchFieldException, IllegalAccessException {
+			outputFile = Files.createTempFile(null, null);
+			newConfigFile = Files.createTempFile(null, null);
+
+			configField = SettingLoader.class.getDeclaredField("configPath");
+			configField.trySetAccessible();
+			oldConfigFile = (String) configField.get(null);
+			configField.set(null, newConfigFile.toString());
+
+			try (FileWriter fw = new FileWriter(newConfigFile.toString())) {
+				fw.write(SettingLoader.LOG_LIMIT + " 2000");
+			}
+		}
+
+		@AfterEach
+		void afterEach() throws IOException, IllegalAccessException {
+			deleteOutputDestination(outputFile);
+			Files.delete(newConfigFile);
+
+			configField.set(null, oldConfigFile);
+		}
+
+		@Test
+		void sparseIndex() throws IOException, InterruptedException {
+			IndexedBandwidthStatus bandwidthStatus = new IndexedBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.setIndexInterval(2);
+
+			long[] times = new long[5];
+			for (int i = 0; i < times.length; i++) {
+				times[i] = System.currentTimeMillis();
+				bandwidthStatus.log(i, "record" + i);
+				Thread.sleep(5);
+			}
+
+			assertEquals(
+				3 * 2 * Long.BYTES,
+				Files.size(Path.of(outputFile + IndexedBandwidthStatus.INDEX_SUFFIX)),
+				"Every second record is expected to be indexed"
+			);
+			for (int i = 0; i < times.length; i++) {
+				long next = i + 1 < times.length ? times[i + 1] - 1 : Long.MAX_VALUE;
+				LinkedList<String[]> records = bandwidthStatus.collect(times[i], next);
+				assertEquals(1, records.size(), "Only one record is expected");
+				assertEquals("record" + i, records.getFirst()[2]);
+			}
+			assertEquals(3, bandwidthStatus.collect(times[2]).size());
+		}
+
+		@Test
+		void rewrittenStatusFile() throws IOException {
+			IndexedBandwidthStatus bandwidthStatus = new IndexedBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.setIndexInterval(1);
+			long time = System.currentTimeMillis();
+			bandwidthStatus.log(time, 1, "old");
+			bandwidthStatus.log(time + 5, 2, "old");
+			assertEquals(2, bandwidthStatus.collect(time, Long.MAX_VALUE).size());
+
+			Files.writeString(
+				outputFile,
+				(time + 10) + " 3 newer" + System.lineSeparator() +
+				(time + 20) + " 4 newer" + System.lineSeparator() +
+				(time + 30) + " 5 newer" + System.lineSeparator()
+			);
+			LinkedList<String[]> records = bandwidthStatus.collect(time + 10, time + 10);
+			assertEquals(1, records.size(), "A rewritten status file is expected to be reindexed even if it hasn't shrunk");
+			assertEquals("3", records.getFirst()[1]);
+			assertEquals(3, bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		}
+
+		@Test
+		void defaultFormatCompatibility() throws IOException, InterruptedException {
+			DefaultBandwidthStatus defaultBandwidthStatus = new DefaultBandwidthStatus();
+			defaultBandwidthStatus.setOutputDestination(outputFile.toString());
+			defaultBandwidthStatus.log(1, "written by default");
+
+			IndexedBandwidthStatus bandwidthStatus = new IndexedBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.setIndexInterval(1);
+			Thread.sleep(5);
+			bandwidthStatus.log(2, "written by indexed");
+			Thread.sleep(5);
+			defaultBandwidthStatus.log(3, "written by default again");
+
+			LinkedList<String[]> records = bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(3, records.size(), "The amount of records doesn't match");
+			assertEquals("written by default", records.get(0)[2]);
+			assertEquals("written by indexed", records.get(1)[2]);
+			assertEquals("written by default again", records.get(2)[2]);
+			assertEquals(1, bandwidthStatus.collect(Long.parseLong(records.get(2)[0])).size());
+		}
+
+		@Test
+		void oldRecordsPurge() throws IOException, InterruptedException {
+			IndexedBandwidthStatus bandwidthStatus = new IndexedBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.setIndexInterval(1);
+
+			bandwidthStatus.log(0xff0000, "red");
+			Thread.sleep(3000);
+			bandwidthStatus.log(0x00ff00, "green");
+
+			assertFalse(Files.readString(outputFile).contains("red"), "The expired record is expected to be deleted");
+			LinkedList<String[]> records = bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(1, records.size());
+			assertEquals("green", records.getFirst()[2]);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTests {
+	@Test
+	void exactValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 50; value++) histogram.record(value);
+		assertEquals(50, histogram.getCount());
+		assertEquals(1, histogram.getMin());
+		assertEquals(50, histogram.getMax());
+		assertEquals(25, histogram.getAverage());
+		assertEquals(25, histogram.getPercentile(50));
+		assertEquals(50, histogram.getPercentile(99));
+		assertEquals(1, histogram.getPercentile(0));
+	}
+
+	@Test
+	void boundedError() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1_000; value <= 1_000_000; value += 1_000) histogram.record(value);
+		for (double percentile: new double[] {1, 25, 50, 90, 99}) {
+			long expected = (long) (percentile * 10_000);
+			long actual = histogram.getPercentile(percentile);
+			assertTrue(actual >= expected, "The percentile isn't expected to be underestimated");
+			assertTrue(
+				actual - expected <= expected / LatencyHistogram.SUB_BUCKETS,
+				"The error is expected to be bounded: " + actual + " for " + expected
+			);
+		}
+		assertEquals(1_000_000, histogram.getPercentile(100));
+	}
+
+	@Test
+	void hugeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE / 2);
+		histogram.record(0);
+		assertEquals(0, histogram.getPercentile(50));
+		assertEquals(Long.MAX_VALUE / 2, histogram.getPercentile(100));
+	}
+
+	@Test
+	void reset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(100);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getAverage());
+		assertEquals(0, histogram.getPercentile(50));
+		histogram.record(7);
+		assertEquals(7, histogram.getPercentile(50));
+	}
+}
@@ -0,0 +1,94 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyProbeTests {
+	@Test
+	void timerTaskCast() {
+		assertNotNull(new LatencyProbe().toTimerTask());
+	}
+
+	@Test
+	void propertySetter() {
+		LatencyProbe probe = new LatencyProbe();
+		BandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+		probe.setBandwidthStatus(bandwidthStatus);
+		assertSame(bandwidthStatus, probe.getBandwidthStatus());
+		URI uri = URI.create("http://example.com:8080/");
+		probe.setUri(uri);
+		assertSame(uri, probe.getUri());
+		probe.setProbes(5);
+		assertEquals(5, probe.getProbes());
+		probe.setProbeInterval(10);
+		assertEquals(10, probe.getProbeInterval());
+	}
+
+	@Test
+	void probe() throws IOException, InterruptedException {
+		AtomicInteger accepted = new AtomicInteger();
+		try (ServerSocket server = new ServerSocket(0)) {
+			Thread acceptor = new Thread(() -> {
+				try {
+					while (true) {
+						try (Socket ignored = server.accept()) {
+							accepted.incrementAndGet();
+						}
+					}
+				} catch (IOException ignored) {}
+			});
+			acceptor.start();
+
+			Path output = Files.createTempFile(null, null);
+			LatencyProbe probe = new LatencyProbe();
+			BandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			probe.setBandwidthStatus(bandwidthStatus);
+			probe.setUri(URI.create("http://localhost:" + server.getLocalPort() + "/"));
+			probe.setProbes(10);
+			probe.setProbeInterval(1);
+			probe.run();
+			server.close();
+			acceptor.join();
+
+			assertNull(probe.getException());
+			LatencyProbe.Result result = probe.getLastResult();
+			assertEquals(10, result.received());
+			assertEquals(0, result.lost());
+			assertTrue(result.min() <= result.p50() && result.p50() <= result.p99());
+			assertTrue(result.jitter() >= 0);
+			LinkedList<String[]> records = bandwidthStatus.collect(0);
+			Files.delete(output);
+			assertArrayEquals(
+				new String[] {"latency_min", "latency_avg", "latency_p50", "latency_p99", "latency_jitter"},
+				records.stream().map(record -> record[2]).toArray(),
+				"Every metric is expected to be logged as a separate record"
+			);
+		}
+	}
+
+	@Test
+	void unreachableHost() throws IOException {
+		int port;
+		try (ServerSocket server = new ServerSocket(0)) {
+			port = server.getLocalPort();
+		}
+		LatencyProbe probe = new LatencyProbe();
+		probe.setUri(URI.create("http://localhost:" + port + "/"));
+		probe.setProbes(2);
+		probe.setProbeInterval(0);
+		probe.run();
+		assertNotNull(probe.getException(), "The failure of all the probes is expected to be reported");
+		assertNull(probe.getLastResult());
+	}
+}
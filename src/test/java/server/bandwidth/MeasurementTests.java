@@ -0,0 +1,43 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MeasurementTests {
+	@Test
+	void averageSpeed() {
+		Measurement measurement = new Measurement(1_000, 100_000, 500_000_000);
+		assertEquals(16_000, measurement.getAverageSpeed());
+		assertEquals(16_000, measurement.getSpeed(), "Without intervals the average speed is expected");
+		assertEquals(16_000, measurement.getPercentile(50));
+		assertEquals(0, measurement.getRampUpIntervals());
+	}
+
+	@Test
+	void discardRampUp() {
+		long[] intervals = {0, 100, 400, 900, 1_000, 1_100, 1_000, 1_000, 900, 1_100};
+		Measurement measurement = new Measurement(1_000, 100_000, 1_000_000_000, intervals);
+		assertEquals(3, measurement.getRampUpIntervals());
+		assertEquals(1_000, measurement.getSpeed());
+		assertEquals(900, measurement.getPercentile(0));
+		assertEquals(1_000, measurement.getPercentile(50));
+		assertEquals(1_100, measurement.getPercentile(100));
+	}
+
+	@Test
+	void emptyIntervals() {
+		Measurement measurement = new Measurement(1_000, 100_000, 1_000_000_000, new long[] {0, 0});
+		assertEquals(2, measurement.getRampUpIntervals());
+		assertEquals(8_000, measurement.getSpeed(), "The data of the unsampled tail isn't expected to be lost");
+	}
+
+	@Test
+	void immutableIntervals() {
+		long[] intervals = {1, 2, 3};
+		Measurement measurement = new Measurement(1, 0, 1, intervals);
+		intervals[0] = 100;
+		measurement.intervalSpeeds()[1] = 100;
+		assertArrayEquals(new long[] {1, 2, 3}, measurement.intervalSpeeds());
+	}
+}
@@ -0,0 +1,156 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiTargetFloodSchedulerTests extends FloodSchedulerTests {
+	@Override
+	FloodScheduler getInstance() {
+		return new MultiTargetFloodScheduler();
+	}
+
+	@Test
+	void parseTargets() {
+		List<MultiTargetFloodScheduler.Target> targets = MultiTargetFloodScheduler.parseTargets(
+			"http,1000,http://localhost:1/a?x=1,2;latency,,;ftp,1,ftp://localhost;http_upload,x,"
+		);
+		assertEquals(2, targets.size(), "The unsupported and malformed targets are expected to be skipped");
+		assertTrue(targets.get(0).test() instanceof HTTPDownloadTest);
+		assertEquals(1000, targets.get(0).delay());
+		assertEquals(URI.create("http://localhost:1/a?x=1,2"), ((HTTPDownloadTest) targets.get(0).test()).getUri());
+		assertTrue(targets.get(1).test() instanceof LatencyProbe);
+		assertEquals(-1, targets.get(1).delay());
+	}
+
+	@Test
+	void independentTargets() throws InterruptedException {
+		AtomicInteger fastRuns = new AtomicInteger();
+		AtomicInteger slowRuns = new AtomicInteger();
+		MultiTargetFloodScheduler scheduler = new MultiTargetFloodScheduler();
+		scheduler.setDownloadTest(new CountingTest(slowRuns, 2000));
+		scheduler.addTarget(new MultiTargetFloodScheduler.Target(new CountingTest(fastRuns, 0), 10));
+		scheduler.execute();
+		assertThrows(IllegalStateException.class, scheduler::execute);
+		Thread.sleep(500);
+		scheduler.stopExecution();
+
+		assertEquals(1, slowRuns.get(), "The slow target is expected to run once");
+		assertTrue(fastRuns.get() > 5, "The fast target isn't expected to wait for the slow one: " + fastRuns.get());
+	}
+
+	@Test
+	void fixedDelay() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		MultiTargetFloodScheduler scheduler = new MultiTargetFloodScheduler();
+		scheduler.setDownloadTest(new CountingTest(runs, 100));
+		scheduler.setDelay(100);
+		scheduler.execute();
+		Thread.sleep(1000);
+		scheduler.stopExecution();
+
+		assertTrue(runs.get() <= 6, "The pause is expected to be counted from the end of a run: " + runs.get());
+	}
+
+	@Test
+	void restart() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		MultiTargetFloodScheduler scheduler = new MultiTargetFloodScheduler();
+		scheduler.setDownloadTest(new CountingTest(runs, 0));
+		scheduler.setDelay(10);
+		scheduler.execute();
+		scheduler.stopExecution();
+		int stoppedRuns = runs.get();
+
+		scheduler.execute();
+		Thread.sleep(200);
+		scheduler.stopExecution();
+
+		assertTrue(runs.get() > stoppedRuns, "The scheduler is expected to run again after being stopped");
+	}
+
+	@Test
+	void tagTargets() throws IOException {
+		Path output = Files.createTempFile(null, null);
+		try {
+			DefaultBandwidthStatus bandwidthStatus = new DefaultBandwidthStatus();
+			bandwidthStatus.setOutputDestination(output.toString());
+			List<MultiTargetFloodScheduler.Target> targets = MultiTargetFloodScheduler.parseTargets(
+				"http,,http://a.example:8080/file;http,,http://b.example/file;"
+					+ "http,,http://b.example/other;latency,,http://a.example"
+			);
+			for (MultiTargetFloodScheduler.Target target: targets) target.test().setBandwidthStatus(bandwidthStatus);
+			MultiTargetFloodScheduler.tag(targets);
+			MultiTargetFloodScheduler.tag(targets);
+
+			String[] tags = {"a.example:8080", "b.example", "b.example#2", "a.example"};
+			for (int i = 0; i < tags.length; i++) {
+				BandwidthStatus status = targets.get(i).test().getBandwidthStatus();
+				TaggedBandwidthStatus tagged = assertInstanceOf(TaggedBandwidthStatus.class, status);
+				assertEquals(tags[i], tagged.getTag(), "A restart isn't expected to tag the records twice");
+				assertSame(bandwidthStatus, tagged.getBandwidthStatus());
+			}
+
+			long start = System.currentTimeMillis();
+			targets.get(1).test().getBandwidthStatus().log(7, "download_speed");
+			targets.get(0).test().getBandwidthStatus().log(5, "download_speed");
+			AdaptiveIdleTime policy = DefaultFloodScheduler.newAdaptiveIdleTime(targets.get(0).test(), 1_000, 100, 5_000);
+			policy.next(targets.get(0).test().getBandwidthStatus(), start);
+			assertEquals(5, policy.getDecisions().getLast().result(), "The result of the other target isn't expected");
+			assertEquals("download_speed@b.example", bandwidthStatus.collectRecords(start).getInfo(0));
+			assertEquals("download_speed", TaggedBandwidthStatus.baseInfo("download_speed@b.example"));
+
+			MultiTargetFloodScheduler.tag(targets.subList(0, 1));
+			assertSame(bandwidthStatus, targets.getFirst().test().getBandwidthStatus(), "A single target isn't tagged");
+		} finally {
+			Files.delete(output);
+		}
+	}
+
+	private static class CountingTest extends TimerTask implements DownloadTest {
+		private final AtomicInteger runs;
+		private final long duration;
+		private BandwidthStatus bs = new DefaultBandwidthStatus();
+
+		CountingTest(AtomicInteger runs, long duration) {
+			this.runs = runs;
+			this.duration = duration;
+		}
+
+		@Override
+		public void run() {
+			runs.incrementAndGet();
+			try {
+				Thread.sleep(duration);
+			} catch (InterruptedException ignored) {}
+		}
+
+		@Override
+		public void setBandwidthStatus(BandwidthStatus bandwidthStatus) {
+			bs = bandwidthStatus;
+		}
+
+		@Override
+		public BandwidthStatus getBandwidthStatus() {
+			return bs;
+		}
+
+		@Override
+		public Exception getException() {
+			return null;
+		}
+
+		@Override
+		public TimerTask toTimerTask() {
+			return this;
+		}
+	}
+}
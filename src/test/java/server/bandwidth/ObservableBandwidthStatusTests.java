@@ -0,0 +1,61 @@
+package server.bandwidth;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObservableBandwidthStatusTests extends BandwidthStatusTests {
+	@Override
+	BandwidthStatus getInstance() {
+		return new ObservableBandwidthStatus(new DefaultBandwidthStatus());
+	}
+
+	@Nested
+	class Notifications {
+		Path outputFile;
+
+		@BeforeEach
+		void beforeEach() throws IOException {
+			outputFile = Files.createTempFile(null, null);
+		}
+
+		@AfterEach
+		void afterEach() throws IOException {
+			Files.delete(outputFile);
+		}
+
+		@Test
+		void notifyListeners() throws IOException {
+			ArrayList<String> events = new ArrayList<>();
+			BandwidthStatusListener listener = new BandwidthStatusListener() {
+				@Override
+				public void logged(long time, long speed, String additionalInfo) {
+					events.add(speed + " " + additionalInfo);
+				}
+
+				@Override
+				public void outputDestinationChanged(String destination) {
+					events.add(destination);
+				}
+			};
+			ObservableBandwidthStatus bandwidthStatus = new ObservableBandwidthStatus(new DefaultBandwidthStatus());
+			bandwidthStatus.addListener(listener);
+
+			long before = System.currentTimeMillis();
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.log(1000, "data");
+			bandwidthStatus.removeListener(listener);
+			bandwidthStatus.log(2000, "ignored");
+
+			assertEquals(2, events.size());
+			assertEquals(outputFile.toString(), events.get(0));
+			assertEquals("1000 data", events.get(1));
+			assertTrue(Long.parseLong(bandwidthStatus.collect(before).getFirst()[0]) >= before);
+		}
+	}
+}
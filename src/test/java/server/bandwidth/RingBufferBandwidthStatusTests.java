@@ -0,0 +1,140 @@
+package server.bandwidth;
+
+import global.SettingLoader;
+import org.junit.jupiter.api.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.*;
+import java.util.LinkedList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RingBufferBandwidthStatusTests extends BandwidthStatusTests {
+	@Override
+	BandwidthStatus getInstance() {
+		return new RingBufferBandwidthStatus(new DefaultBandwidthStatus());
+	}
+
+	@Nested
+	class MemoryTier {
+		Path outputFile;
+		Path newConfigFile;
+		String oldConfigFile;
+		Field configField;
+
+		@BeforeEach
+		void beforeEach() throws IOException, NoSuchFieldException, IllegalAccessException {
+			outputFile = Files.createTempFile(null, null);
+			newConfigFile = Files.createTempFile(null, null);
+
+			configField = SettingLoader.class.getDeclaredField("configPath");
+			configField.trySetAccessible();
+			oldConfigFile = (String) configField.get(null);
+			configField.set(null, newConfigFile.toString());
+
+			try (FileWriter fw = new FileWriter(newConfigFile.toString())) {
+				fw.write(SettingLoader.LOG_LIMIT + " 2000");
+			}
+		}
+
+		@AfterEach
+		void afterEach() throws IOException, IllegalAccessException {
+			Files.delete(outputFile);
+			Files.delete(newConfigFile);
+
+			configField.set(null, oldConfigFile);
+		}
+
+		@Test
+		void warmUp() throws IOException {
+			long time = System.currentTimeMillis();
+			DefaultBandwidthStatus defaultBandwidthStatus = new DefaultBandwidthStatus();
+			defaultBandwidthStatus.setOutputDestination(outputFile.toString());
+			defaultBandwidthStatus.log(1, "one");
+			defaultBandwidthStatus.log(2, "two");
+
+			RingBufferBandwidthStatus bandwidthStatus = new RingBufferBandwidthStatus(defaultBandwidthStatus, 4);
+			bandwidthStatus.warmUp();
+			Files.writeString(outputFile, "");
+
+			LinkedList<String[]> records = bandwidthStatus.collect(time, Long.MAX_VALUE);
+			assertEquals(2, records.size(), "The stored records are expected to be kept in memory");
+			assertEquals("one", records.get(0)[2]);
+			assertEquals("two", records.get(1)[2]);
+		}
+
+		@Test
+		void olderRecordsFallThrough() throws IOException, InterruptedException {
+			DefaultBandwidthStatus defaultBandwidthStatus = new DefaultBandwidthStatus();
+			defaultBandwidthStatus.setOutputDestination(outputFile.toString());
+			RingBufferBandwidthStatus bandwidthStatus = new RingBufferBandwidthStatus(defaultBandwidthStatus, 2);
+
+			bandwidthStatus.log(1, "one");
+			Thread.sleep(5);
+			long time = System.currentTimeMillis();
+			bandwidthStatus.log(2, "two");
+			bandwidthStatus.log(3, "three");
+
+			assertEquals(3, bandwidthStatus.collect(Long.MIN_VALUE).size(), "The whole history is expected");
+
+			Files.writeString(outputFile, "");
+			LinkedList<String[]> records = bandwidthStatus.collect(time);
+			assertEquals(2, records.size(), "The recent records are expected to be answered from memory");
+			assertEquals("two", records.get(0)[2]);
+			assertEquals("three", records.get(1)[2]);
+			assertEquals(
+				0,
+				bandwidthStatus.collect(Long.MIN_VALUE).size(),
+				"The evicted records are expected to be read from the underlying storage"
+			);
+		}
+
+		@Test
+		void sameDates() throws IOException {
+			long time = System.currentTimeMillis();
+			DefaultBandwidthStatus defaultBandwidthStatus = new DefaultBandwidthStatus();
+			defaultBandwidthStatus.setOutputDestination(outputFile.toString());
+			RingBufferBandwidthStatus bandwidthStatus = new RingBufferBandwidthStatus(defaultBandwidthStatus, 4);
+			for (int i = 0; i < 3; i++) bandwidthStatus.log(i, "record" + i);
+
+			BandwidthRecords stored = defaultBandwidthStatus.collectRecords(time, Long.MAX_VALUE);
+			BandwidthRecords kept = bandwidthStatus.collectRecords(time, Long.MAX_VALUE);
+			assertEquals(stored.size(), kept.size());
+			for (int i = 0; i < stored.size(); i++) {
+				assertEquals(stored.getTime(i), kept.getTime(i), "The records are expected to be kept with the stored dates");
+				assertEquals(stored.getSpeed(i), kept.getSpeed(i));
+				assertEquals(stored.getInfo(i), kept.getInfo(i));
+			}
+		}
+
+		@Test
+		void expiredRecords() throws IOException {
+			long time = System.currentTimeMillis();
+			Files.writeString(
+				outputFile,
+				(time - 3000) + " 1 expired" + System.lineSeparator() + (time - 1000) + " 2 kept" + System.lineSeparator()
+			);
+			DefaultBandwidthStatus defaultBandwidthStatus = new DefaultBandwidthStatus();
+			defaultBandwidthStatus.setOutputDestination(outputFile.toString());
+			RingBufferBandwidthStatus bandwidthStatus = new RingBufferBandwidthStatus(defaultBandwidthStatus, 4);
+			bandwidthStatus.warmUp();
+
+			assertEquals(
+				2,
+				bandwidthStatus.collect(Long.MIN_VALUE).size(),
+				"The periods before the expiry are expected to be read from the underlying storage"
+			);
+			Files.writeString(outputFile, "");
+			LinkedList<String[]> records = bandwidthStatus.collect(time - 1500);
+			assertEquals(1, records.size(), "The expired records aren't expected to be kept in memory");
+			assertEquals("kept", records.getFirst()[2]);
+
+			bandwidthStatus.log(time + 1500, 3, "new");
+			records = bandwidthStatus.collect(time - 500, Long.MAX_VALUE);
+			assertEquals(1, records.size(), "The records are expected to be evicted as they expire");
+			assertEquals("new", records.getFirst()[2]);
+		}
+	}
+}
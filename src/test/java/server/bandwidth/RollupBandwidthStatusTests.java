@@ -0,0 +1,161 @@
+package server.bandwidth;
+
+import global.SettingLoader;
+import org.junit.jupiter.api.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RollupBandwidthStatusTests extends BandwidthStatusTests {
+	@Override
+	BandwidthStatus getInstance() {
+		return new RollupBandwidthStatus(new DefaultBandwidthStatus());
+	}
+
+	@Test
+	void foldRecords() {
+		BandwidthRollups rollups = new BandwidthRollups(BandwidthRollups.Resolution.MINUTE);
+		rollups.fold(60_000, 10, "a");
+		rollups.fold(61_000, 30, "b");
+		rollups.fold(119_999, 20, "a");
+		rollups.fold(120_000, 5, "a");
+		rollups.fold(90_000, 7, "a");
+
+		assertEquals(3, rollups.size());
+		assertEquals(60_000, rollups.getStart(0));
+		assertEquals("a", rollups.getInfo(0));
+		assertEquals(2, rollups.getCount(0));
+		assertEquals(10, rollups.getMin(0));
+		assertEquals(20, rollups.getMax(0));
+		assertEquals(15, rollups.getAverage(0));
+		assertEquals(20, rollups.getLast(0));
+		assertEquals("b", rollups.getInfo(1));
+		assertEquals(2, rollups.getCount(2), "A late record is expected to be folded into the last bucket");
+		assertEquals(7, rollups.getLast(2));
+
+		assertEquals(2, rollups.range(119_000, 119_500).size(), "The overlapping buckets are expected");
+		assertEquals(1, rollups.filter("b"::equals).size());
+		rollups.removeBefore(120_000);
+		assertEquals(1, rollups.size());
+		rollups.fold(150_000, 1, "a");
+		rollups.fold(150_000, 1, "b");
+		assertEquals(3, rollups.getCount(0));
+		assertEquals(2, rollups.size());
+	}
+
+	@Nested
+	class Tiers {
+		final static long DAY = 24 * 60 * 60 * 1000;
+		Path outputFile;
+		Path newConfigFile;
+		String oldConfigFile;
+		Field configField;
+
+		@BeforeEach
+		void beforeEach() throws IOException, NoSuchFieldException, IllegalAccessException {
+			outputFile = Files.createTempFile(null, null);
+			newConfigFile = Files.createTempFile(null, null);
+
+			configField = SettingLoader.class.getDeclaredField("configPath");
+			configField.trySetAccessible();
+			oldConfigFile = (String) configField.get(null);
+			configField.set(null, newConfigFile.toString());
+
+			try (FileWriter fw = new FileWriter(newConfigFile.toString())) {
+				fw.write(SettingLoader.LOG_LIMIT + " " + 2 * DAY);
+			}
+		}
+
+		@AfterEach
+		void afterEach() throws IOException, IllegalAccessException {
+			Files.delete(outputFile);
+			Files.delete(newConfigFile);
+
+			configField.set(null, oldConfigFile);
+		}
+
+		@Test
+		void expireWithRecords() throws IOException {
+			long now = System.currentTimeMillis();
+			RollupBandwidthStatus bandwidthStatus = new RollupBandwidthStatus(new BinaryBandwidthStatus());
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.warmUp();
+			bandwidthStatus.log(now - 30 * DAY, 100, "download_speed");
+			bandwidthStatus.log(now, 300, "download_speed");
+			Files.writeString(outputFile, "");
+			Files.delete(Path.of(outputFile + BinaryBandwidthStatus.DICTIONARY_SUFFIX));
+
+			for (BandwidthRollups.Resolution resolution: BandwidthRollups.Resolution.values()) {
+				BandwidthRollups rollups = bandwidthStatus.collectRollups(now - 40 * DAY, now, resolution);
+				for (int i = 0; i < rollups.size(); i++) {
+					assertTrue(
+						rollups.getStart(i) >= resolution.bucket(now - 2 * DAY),
+						"The buckets aren't expected to outlive the records in the " + resolution + " tier"
+					);
+				}
+			}
+			assertEquals(
+				1,
+				bandwidthStatus.collectRollups(now - DAY, now, BandwidthRollups.Resolution.DAY).size(),
+				"The recent bucket is expected to be answered from memory"
+			);
+		}
+
+		@Test
+		void fallBackPastRetention() throws IOException {
+			try (FileWriter fw = new FileWriter(newConfigFile.toString())) {
+				fw.write(SettingLoader.LOG_LIMIT + " " + 400 * DAY);
+			}
+
+			long now = System.currentTimeMillis();
+			RollupBandwidthStatus bandwidthStatus = new RollupBandwidthStatus(new BinaryBandwidthStatus());
+			bandwidthStatus.setOutputDestination(outputFile.toString());
+			bandwidthStatus.warmUp();
+			bandwidthStatus.log(now - 370 * DAY, 100, "download_speed");
+			bandwidthStatus.log(now, 300, "download_speed");
+
+			BandwidthRollups rollups = bandwidthStatus.collectRollups(
+				now - 380 * DAY, now, BandwidthRollups.Resolution.HOUR
+			);
+			assertEquals(2, rollups.size(), "The buckets past the hour retention are expected from the records");
+			assertEquals(BandwidthRollups.Resolution.HOUR.bucket(now - 370 * DAY), rollups.getStart(0));
+		}
+
+		@Test
+		void maintainTiers() throws IOException {
+			DefaultBandwidthStatus defaultBandwidthStatus = new DefaultBandwidthStatus();
+			defaultBandwidthStatus.setOutputDestination(outputFile.toString());
+			defaultBandwidthStatus.log(100, "download_speed");
+
+			RollupBandwidthStatus bandwidthStatus = new RollupBandwidthStatus(defaultBandwidthStatus);
+			bandwidthStatus.warmUp();
+			bandwidthStatus.log(300, "download_speed");
+			bandwidthStatus.log(5, "latency_p50");
+			long now = System.currentTimeMillis();
+
+			BandwidthRollups rollups = bandwidthStatus.collectRollups(now, now, BandwidthRollups.Resolution.DAY);
+			BandwidthRollups speeds = rollups.filter("download_speed"::equals);
+			assertEquals(2, rollups.size());
+			assertEquals(1, speeds.size(), "The records of a day are expected to be aggregated together");
+			assertEquals(2, speeds.getCount(0));
+			assertEquals(200, speeds.getAverage(0));
+			assertEquals(300, speeds.getLast(0));
+
+			Files.writeString(outputFile, "");
+			assertEquals(
+				2,
+				bandwidthStatus.collectRollups(now, now, BandwidthRollups.Resolution.HOUR).size(),
+				"The buckets are expected to be answered from memory"
+			);
+			assertEquals(
+				0,
+				defaultBandwidthStatus.collectRollups(now, now, BandwidthRollups.Resolution.HOUR).size(),
+				"The default implementation is expected to aggregate the stored records"
+			);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package server.bandwidth;
+
+import global.SettingLoader;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentedBandwidthStatusTests extends BandwidthStatusTests {
+	@Override
+	BandwidthStatus getInstance() {
+		return new SegmentedBandwidthStatus();
+	}
+
+	@Override
+	Path createOutputDestination() throws IOException {
+		return Files.createTempDirectory(null);
+	}
+
+	@Override
+	void deleteOutputDestination(Path destination) throws IOException {
+		try (Stream<Path> paths = Files.walk(destination)) {
+			for (Path path: paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Nested
+	class ContentManagement {
+		Path outputDir;
+		Path newConfigFile;
+		String oldConfigFile;
+		Field configField;
+
+		@BeforeEach
+		void beforeEach() throws IOException, NoSuchFieldException, IllegalAccessException {
+			outputDir = createOutputDestination();
+			newConfigFile = Files.createTempFile(null, null);
+
+			configField = SettingLoader.class.getDeclaredField("configPath");
+			configField.trySetAccessible();
+			oldConfigFile = (String) configField.get(null);
+			configField.set(null, newConfigFile.toString());
+
+			try (FileWriter fw = new FileWriter(newConfigFile.toString())) {
+				fw.write(SettingLoader.LOG_LIMIT + " 2000");
+			}
+		}
+
+		@AfterEach
+		void afterEach() throws IOException, IllegalAccessException {
+			deleteOutputDestination(outputDir);
+			Files.delete(newConfigFile);
+
+			configField.set(null, oldConfigFile);
+		}
+
+		@Test
+		void recordsSpanSegments() throws IOException, InterruptedException {
+			SegmentedBandwidthStatus bandwidthStatus = new SegmentedBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputDir.toString());
+			bandwidthStatus.setSegmentLength(10);
+
+			bandwidthStatus.log(1, "first");
+			Thread.sleep(20);
+			bandwidthStatus.log(2, "second");
+			Thread.sleep(20);
+			bandwidthStatus.log(3, "third");
+
+			try (Stream<Path> segments = Files.list(outputDir)) {
+				assertEquals(3, segments.count(), "Every record is expected to start a new segment");
+			}
+			LinkedList<String[]> records = bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(3, records.size(), "The amount of records doesn't match");
+			assertEquals("first", records.get(0)[2]);
+			assertEquals("second", records.get(1)[2]);
+			assertEquals("third", records.get(2)[2]);
+		}
+
+		@Test
+		void oldSegmentsPurge() throws IOException, InterruptedException {
+			SegmentedBandwidthStatus bandwidthStatus = new SegmentedBandwidthStatus();
+			bandwidthStatus.setOutputDestination(outputDir.toString());
+			bandwidthStatus.setSegmentLength(1000);
+
+			bandwidthStatus.log(0xff0000, "red");
+			Thread.sleep(4000);
+			bandwidthStatus.log(0x00ff00, "green");
+
+			LinkedList<String[]> records = bandwidthStatus.collect(Long.MIN_VALUE, Long.MAX_VALUE);
+			assertEquals(1, records.size(), "The expired segment is expected to be deleted");
+			assertEquals("green", records.getFirst()[2]);
+			try (Stream<Path> segments = Files.list(outputDir)) {
+				assertEquals(1, segments.count(), "Only the current segment is expected to remain");
+			}
+		}
+	}
+}